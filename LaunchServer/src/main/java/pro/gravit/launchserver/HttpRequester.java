@@ -10,11 +10,36 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 public class HttpRequester {
-    private transient final HttpClient httpClient = HttpClient.newBuilder().build();
+    public static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+    private static final long RETRY_DELAY_MILLIS = 100;
+    private transient final HttpClient httpClient;
+    private transient final int maxRetries;
+    private transient final RetryBudget retryBudget;
 
     public HttpRequester() {
+        this.httpClient = HttpClient.newBuilder().build();
+        this.maxRetries = 0;
+        this.retryBudget = null;
+    }
+
+    /**
+     * @param maxRetries  retries of one request on connection errors and 502, 503, 504 responses
+     * @param retryBudget limits retries of all requests, may be null
+     */
+    public HttpRequester(HttpClient.Version version, Duration connectTimeout, int maxRetries, RetryBudget retryBudget) {
+        // HTTP/2 multiplexes concurrent requests to one host over a single connection, falls back to HTTP/1.1 if not supported
+        this.httpClient = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.maxRetries = maxRetries;
+        this.retryBudget = retryBudget;
     }
 
     public static class SimpleErrorHandler<T> implements HttpHelper.HttpJsonErrorHandler<T, SimpleError> {
@@ -38,13 +63,17 @@ public class HttpRequester {
     }
 
     public <T> HttpRequest get(String url, String token) {
+        return get(url, token, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public <T> HttpRequest get(String url, String token, int timeoutMillis) {
         try {
             var requestBuilder = HttpRequest.newBuilder()
                     .method("GET", HttpRequest.BodyPublishers.noBody())
                     .uri(new URI(url))
                     .header("Content-Type", "application/json; charset=UTF-8")
                     .header("Accept", "application/json")
-                    .timeout(Duration.ofMillis(10000));
+                    .timeout(Duration.ofMillis(timeoutMillis));
             if(token != null) {
                 requestBuilder.header("Authorization", "Bearer ".concat(token));
             }
@@ -55,13 +84,17 @@ public class HttpRequester {
     }
 
     public <T> HttpRequest post(String url, T request, String token) {
+        return post(url, request, token, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public <T> HttpRequest post(String url, T request, String token, int timeoutMillis) {
         try {
             var requestBuilder = HttpRequest.newBuilder()
                     .method("POST", HttpRequest.BodyPublishers.ofString(Launcher.gsonManager.gson.toJson(request)))
                     .uri(new URI(url))
                     .header("Content-Type", "application/json; charset=UTF-8")
                     .header("Accept", "application/json")
-                    .timeout(Duration.ofMillis(10000));
+                    .timeout(Duration.ofMillis(timeoutMillis));
             if(token != null) {
                 requestBuilder.header("Authorization", "Bearer ".concat(token));
             }
@@ -75,6 +108,84 @@ public class HttpRequester {
         return HttpHelper.send(httpClient, request, makeEH(clazz));
     }
 
+    /**
+     * Send request without blocking the caller thread
+     *
+     * @param retry request is idempotent and may be sent again on connection error or 502, 503, 504 response
+     */
+    public <T> CompletableFuture<HttpHelper.HttpOptional<T, SimpleError>> sendAsync(HttpRequest request, Class<T> clazz, boolean retry) {
+        if (retryBudget != null) {
+            retryBudget.onRequest();
+        }
+        return sendAsync(request, makeEH(clazz), retry ? maxRetries : 0);
+    }
+
+    private <T> CompletableFuture<HttpHelper.HttpOptional<T, SimpleError>> sendAsync(HttpRequest request, SimpleErrorHandler<T> handler, int retries) {
+        CompletableFuture<HttpHelper.HttpOptional<T, SimpleError>> future;
+        try {
+            future = HttpHelper.sendAsync(httpClient, request, handler);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (retries <= 0) {
+            return future;
+        }
+        return future.handle((result, error) -> {
+            boolean failed = error != null ? isRetryable(error) : isRetryable(result.statusCode());
+            if (!failed || (retryBudget != null && !retryBudget.tryRetry())) {
+                return error != null ? CompletableFuture.<HttpHelper.HttpOptional<T, SimpleError>>failedFuture(error) : CompletableFuture.completedFuture(result);
+            }
+            long delay = RETRY_DELAY_MILLIS * (maxRetries - retries + 1) + ThreadLocalRandom.current().nextLong(RETRY_DELAY_MILLIS);
+            return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> sendAsync(request, handler, retries - 1));
+        }).thenCompose(f -> f);
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof IOException;
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * Retries are allowed while they make less than ratio of all requests, plus minRetriesPerSecond for low traffic
+     * Stops retry storms when backend is down
+     */
+    public static final class RetryBudget {
+        private final double ratio;
+        private final int minRetriesPerSecond;
+        private final double maxBalance;
+        private double balance;
+        private long lastRefill = System.nanoTime();
+
+        public RetryBudget(double ratio, int minRetriesPerSecond) {
+            this.ratio = ratio;
+            this.minRetriesPerSecond = minRetriesPerSecond;
+            this.maxBalance = Math.max(1, minRetriesPerSecond) * 10;
+            this.balance = minRetriesPerSecond;
+        }
+
+        private synchronized void onRequest() {
+            balance = Math.min(maxBalance, balance + ratio);
+        }
+
+        private synchronized boolean tryRetry() {
+            long now = System.nanoTime();
+            balance = Math.min(maxBalance, balance + minRetriesPerSecond * ((now - lastRefill) / 1e9));
+            lastRefill = now;
+            if (balance < 1) {
+                return false;
+            }
+            balance -= 1;
+            return true;
+        }
+    }
+
     public static class SimpleError {
         public String error;
         public int code;
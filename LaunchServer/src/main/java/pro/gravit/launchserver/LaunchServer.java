@@ -284,8 +284,10 @@ public final class LaunchServer implements Runnable, AutoCloseable, Reconfigurab
 
     public void close() throws Exception {
         service.shutdownNow();
+        updatesManager.stopWatcher();
         logger.info("Close server socket");
         nettyServerSocketHandler.close();
+        authManager.close();
         // Close handlers & providers
         config.close(ReloadType.FULL);
         modulesManager.invokeEvent(new ClosePhase());
@@ -328,6 +330,8 @@ public final class LaunchServer implements Runnable, AutoCloseable, Reconfigurab
                 try {
                     if (!IOHelper.isDir(updatesDir))
                         Files.createDirectory(updatesDir);
+                    if (config.watchUpdates)
+                        updatesManager.startWatcher(config.watchUpdatesDelayMillis);
                     updatesManager.readUpdatesDir();
 
                     // Sync profiles dir
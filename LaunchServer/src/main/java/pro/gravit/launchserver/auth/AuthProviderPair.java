@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pro.gravit.launchserver.LaunchServer;
 import pro.gravit.launchserver.auth.core.AuthCoreProvider;
+import pro.gravit.launchserver.auth.core.CachingAuthCoreProvider;
 import pro.gravit.launchserver.auth.core.MySQLCoreProvider;
 import pro.gravit.launchserver.auth.core.PostgresSQLCoreProvider;
 import pro.gravit.launchserver.auth.texture.TextureProvider;
@@ -40,8 +41,9 @@ public final class AuthProviderPair {
 
     public void internalShowOAuthWarnMessage() {
         if(!warnOAuthShow) {
-            if(!(core instanceof MySQLCoreProvider) && !(core instanceof PostgresSQLCoreProvider)) { // MySQL and PostgreSQL upgraded later
-                logger.warn("AuthCoreProvider {} ({}) not supported OAuth. Legacy session system may be removed in next release", name, core.getClass().getName());
+            AuthCoreProvider provider = getBaseCore();
+            if(!(provider instanceof MySQLCoreProvider) && !(provider instanceof PostgresSQLCoreProvider)) { // MySQL and PostgreSQL upgraded later
+                logger.warn("AuthCoreProvider {} ({}) not supported OAuth. Legacy session system may be removed in next release", name, provider.getClass().getName());
             }
             warnOAuthShow = true;
         }
@@ -76,7 +78,18 @@ public final class AuthProviderPair {
         if (links != null) link(srv);
         core.init(srv);
         features = new HashSet<>();
-        getFeatures(core.getClass(), features);
+        getFeatures(getBaseCore().getClass(), features);
+    }
+
+    /**
+     * @return core or provider wrapped by caching core
+     */
+    public final AuthCoreProvider getBaseCore() {
+        AuthCoreProvider provider = core;
+        while (provider instanceof CachingAuthCoreProvider caching) {
+            provider = caching.provider;
+        }
+        return provider;
     }
 
     public final void link(LaunchServer srv) {
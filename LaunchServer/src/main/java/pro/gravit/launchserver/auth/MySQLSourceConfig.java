@@ -20,9 +20,10 @@ public final class MySQLSourceConfig implements AutoCloseable {
             Integer.parseUnsignedInt(System.getProperty("launcher.mysql.maxPoolSize", Integer.toString(3))),
             VerifyHelper.POSITIVE, "launcher.mysql.maxPoolSize can't be <= 0");
 
+    private static final Logger logger = LogManager.getLogger();
+
     // Instance
     private transient final String poolName;
-    private transient final Logger logger = LogManager.getLogger();
 
     // Config
     private String address;
@@ -34,10 +35,27 @@ public final class MySQLSourceConfig implements AutoCloseable {
     private String database;
     private String timezone;
     private boolean useHikari;
+    // Pool, 0 - default value. Config is created without constructor, so field initializers are not used
+    private int maxPoolSize; // launcher.mysql.maxPoolSize by default
+    private Integer minIdle; // 1
+    private long connectionTimeout; // 1000 ms
+    private long idleTimeout; // HikariCP default
+    private long maxLifetime; // HikariCP default
+    private long leakDetectionThreshold; // 2000 ms
+    private int prepStmtCacheSize; // 250
+    private int prepStmtCacheSqlLimit; // 2048
+    // Read replica used for profile lookups only, auth and server checks always use primary
+    private String readAddress;
+    private int readPort;
 
     // Cache
+    // Written under lock before metrics, volatile metrics read publishes them
     private transient DataSource source;
+    private transient DataSource readSource;
     private transient boolean hikari;
+    private transient boolean readHikari;
+    private transient volatile SQLPoolMetrics metrics;
+    private transient volatile SQLPoolMetrics readMetrics;
 
 
     public MySQLSourceConfig(String poolName) {
@@ -63,62 +81,106 @@ public final class MySQLSourceConfig implements AutoCloseable {
     public synchronized void close() {
         if (hikari)
             ((HikariDataSource) source).close();
+        if (readHikari)
+            ((HikariDataSource) readSource).close();
     }
 
+    public Connection getConnection() throws SQLException {
+        SQLPoolMetrics current = metrics;
+        if (current == null) { // Only first checkout takes the lock
+            synchronized (this) {
+                if (source == null) {
+                    source = makeSource(address, port, poolName, false);
+                }
+                if (metrics == null) {
+                    metrics = new SQLPoolMetrics();
+                }
+                current = metrics;
+            }
+        }
+        return current.getConnection(source);
+    }
 
-    public synchronized Connection getConnection() throws SQLException {
-        if (source == null) { // New data source
-            MysqlDataSource mysqlSource = new MysqlDataSource();
-            mysqlSource.setCharacterEncoding("UTF-8");
-
-            // Prep statements cache
-            mysqlSource.setPrepStmtCacheSize(250);
-            mysqlSource.setPrepStmtCacheSqlLimit(2048);
-            mysqlSource.setCachePrepStmts(true);
-            mysqlSource.setUseServerPrepStmts(true);
-
-            // General optimizations
-            mysqlSource.setCacheServerConfiguration(true);
-            mysqlSource.setUseLocalSessionState(true);
-            mysqlSource.setRewriteBatchedStatements(true);
-            mysqlSource.setMaintainTimeStats(false);
-            mysqlSource.setUseUnbufferedInput(false);
-            mysqlSource.setUseReadAheadInput(false);
-            mysqlSource.setUseSSL(useSSL);
-            mysqlSource.setVerifyServerCertificate(verifyCertificates);
-            // Set credentials
-            mysqlSource.setServerName(address);
-            mysqlSource.setPortNumber(port);
-            mysqlSource.setUser(username);
-            mysqlSource.setPassword(password);
-            mysqlSource.setDatabaseName(database);
-            mysqlSource.setTcpNoDelay(true);
-            if (timezone != null) mysqlSource.setServerTimezone(timezone);
-            hikari = false;
-            // Try using HikariCP
-            source = mysqlSource;
-            if (useHikari) {
-                try {
-                    Class.forName("com.zaxxer.hikari.HikariDataSource");
-                    hikari = true; // Used for shutdown. Not instanceof because of possible classpath error
-                    HikariConfig hikariConfig = new HikariConfig();
-                    hikariConfig.setDataSource(mysqlSource);
-                    hikariConfig.setPoolName(poolName);
-                    hikariConfig.setMinimumIdle(1);
-                    hikariConfig.setMaximumPoolSize(MAX_POOL_SIZE);
-                    hikariConfig.setConnectionTestQuery("SELECT 1");
-                    hikariConfig.setConnectionTimeout(1000);
-                    hikariConfig.setAutoCommit(true);
-                    hikariConfig.setLeakDetectionThreshold(2000);
-                    // Set HikariCP pool
-                    // Replace source with hds
-                    source = new HikariDataSource(hikariConfig);
-                } catch (ClassNotFoundException ignored) {
-                    logger.debug("HikariCP isn't in classpath for '{}'", poolName);
+    /**
+     * @return connection to read replica or to primary if replica is not configured
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (readAddress == null) {
+            return getConnection();
+        }
+        SQLPoolMetrics current = readMetrics;
+        if (current == null) {
+            synchronized (this) {
+                if (readMetrics == null) {
+                    readSource = makeSource(readAddress, readPort > 0 ? readPort : port, poolName == null ? null : poolName.concat("-read"), true);
+                    readMetrics = new SQLPoolMetrics();
                 }
+                current = readMetrics;
             }
+        }
+        return current.getConnection(readSource);
+    }
+
+    public synchronized SQLPoolMetrics.Snapshot getMetrics() {
+        return metrics == null ? null : metrics.snapshot(source, hikari);
+    }
 
+    public synchronized SQLPoolMetrics.Snapshot getReadMetrics() {
+        return readMetrics == null ? null : readMetrics.snapshot(readSource, readHikari);
+    }
+
+    private DataSource makeSource(String address, int port, String poolName, boolean read) {
+        MysqlDataSource mysqlSource = new MysqlDataSource();
+        mysqlSource.setCharacterEncoding("UTF-8");
+
+        // Prep statements cache, statements are reused when closed
+        mysqlSource.setPrepStmtCacheSize(prepStmtCacheSize > 0 ? prepStmtCacheSize : 250);
+        mysqlSource.setPrepStmtCacheSqlLimit(prepStmtCacheSqlLimit > 0 ? prepStmtCacheSqlLimit : 2048);
+        mysqlSource.setCachePrepStmts(true);
+        mysqlSource.setUseServerPrepStmts(true);
+
+        // General optimizations
+        mysqlSource.setCacheServerConfiguration(true);
+        mysqlSource.setUseLocalSessionState(true);
+        mysqlSource.setRewriteBatchedStatements(true);
+        mysqlSource.setMaintainTimeStats(false);
+        mysqlSource.setUseUnbufferedInput(false);
+        mysqlSource.setUseReadAheadInput(false);
+        mysqlSource.setUseSSL(useSSL);
+        mysqlSource.setVerifyServerCertificate(verifyCertificates);
+        // Set credentials
+        mysqlSource.setServerName(address);
+        mysqlSource.setPortNumber(port);
+        mysqlSource.setUser(username);
+        mysqlSource.setPassword(password);
+        mysqlSource.setDatabaseName(database);
+        mysqlSource.setTcpNoDelay(true);
+        if (timezone != null) mysqlSource.setServerTimezone(timezone);
+        // Try using HikariCP
+        if (useHikari) {
+            try {
+                Class.forName("com.zaxxer.hikari.HikariDataSource");
+                HikariConfig hikariConfig = new HikariConfig();
+                hikariConfig.setDataSource(mysqlSource);
+                hikariConfig.setPoolName(poolName);
+                hikariConfig.setMinimumIdle(minIdle != null ? minIdle : 1);
+                hikariConfig.setMaximumPoolSize(maxPoolSize > 0 ? maxPoolSize : MAX_POOL_SIZE);
+                hikariConfig.setConnectionTestQuery("SELECT 1");
+                hikariConfig.setConnectionTimeout(connectionTimeout > 0 ? connectionTimeout : 1000);
+                if (idleTimeout > 0) hikariConfig.setIdleTimeout(idleTimeout);
+                if (maxLifetime > 0) hikariConfig.setMaxLifetime(maxLifetime);
+                hikariConfig.setAutoCommit(true);
+                hikariConfig.setLeakDetectionThreshold(leakDetectionThreshold > 0 ? leakDetectionThreshold : 2000);
+                // Set HikariCP pool
+                HikariDataSource hikariSource = new HikariDataSource(hikariConfig);
+                // Used for shutdown. Not instanceof because of possible classpath error
+                if (read) readHikari = true;
+                else hikari = true;
+                return hikariSource;
+            } catch (ClassNotFoundException ignored) {
+                logger.debug("HikariCP isn't in classpath for '{}'", poolName);
+            }
         }
-        return source.getConnection();
+        return mysqlSource;
     }
 }
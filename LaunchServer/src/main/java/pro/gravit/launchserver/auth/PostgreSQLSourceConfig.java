@@ -26,54 +26,117 @@ public final class PostgreSQLSourceConfig implements AutoCloseable {
     private String username;
     private String password;
     private String database;
+    // Pool
+    private int maxPoolSize = MAX_POOL_SIZE;
+    private int minIdle = 0;
+    private long connectionTimeout = 30000;
+    private long idleTimeout = TIMEOUT * 1000L;
+    private long maxLifetime = 1800000;
+    // Server side prepared statements, per connection
+    private int prepareThreshold = 5;
+    private int preparedStatementCacheQueries = 256;
+    // Read replicas used for profile lookups only, auth and server checks always use primary
+    private String[] readAddresses;
+    private int[] readPorts;
 
     // Cache
-    private DataSource source;
-    private boolean hikari;
+    // Written under lock before metrics, volatile metrics read publishes them
+    private transient DataSource source;
+    private transient DataSource readSource;
+    private transient boolean hikari;
+    private transient boolean readHikari;
+    private transient volatile SQLPoolMetrics metrics;
+    private transient volatile SQLPoolMetrics readMetrics;
 
     @Override
     public synchronized void close() {
         if (hikari) { // Shutdown hikari pool
             ((HikariDataSource) source).close();
         }
+        if (readHikari) {
+            ((HikariDataSource) readSource).close();
+        }
+    }
+
+    public Connection getConnection() throws SQLException {
+        SQLPoolMetrics current = metrics;
+        if (current == null) { // Only first checkout takes the lock
+            synchronized (this) {
+                if (metrics == null) {
+                    source = makeSource(addresses, ports, poolName, false);
+                    metrics = new SQLPoolMetrics();
+                }
+                current = metrics;
+            }
+        }
+        return current.getConnection(source);
+    }
+
+    /**
+     * @return connection to read replica or to primary if replicas are not configured
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (readAddresses == null || readAddresses.length == 0) {
+            return getConnection();
+        }
+        SQLPoolMetrics current = readMetrics;
+        if (current == null) {
+            synchronized (this) {
+                if (readMetrics == null) {
+                    readSource = makeSource(readAddresses, readPorts != null ? readPorts : ports, poolName == null ? null : poolName.concat("-read"), true);
+                    readMetrics = new SQLPoolMetrics();
+                }
+                current = readMetrics;
+            }
+        }
+        return current.getConnection(readSource);
     }
 
-    public synchronized Connection getConnection() throws SQLException {
-        if (source == null) { // New data source
-            PGSimpleDataSource postgresqlSource = new PGSimpleDataSource();
+    public synchronized SQLPoolMetrics.Snapshot getMetrics() {
+        return metrics == null ? null : metrics.snapshot(source, hikari);
+    }
 
-            // Set credentials
-            postgresqlSource.setServerNames(addresses);
-            postgresqlSource.setPortNumbers(ports);
-            postgresqlSource.setUser(username);
-            postgresqlSource.setPassword(password);
-            postgresqlSource.setDatabaseName(database);
+    public synchronized SQLPoolMetrics.Snapshot getReadMetrics() {
+        return readMetrics == null ? null : readMetrics.snapshot(readSource, readHikari);
+    }
 
-            // Try using HikariCP
-            source = postgresqlSource;
+    private DataSource makeSource(String[] addresses, int[] ports, String poolName, boolean read) {
+        PGSimpleDataSource postgresqlSource = new PGSimpleDataSource();
 
-            //noinspection Duplicates
-            try {
-                Class.forName("com.zaxxer.hikari.HikariDataSource");
-                hikari = true; // Used for shutdown. Not instanceof because of possible classpath error
+        // Set credentials
+        postgresqlSource.setServerNames(addresses);
+        postgresqlSource.setPortNumbers(ports);
+        postgresqlSource.setUser(username);
+        postgresqlSource.setPassword(password);
+        postgresqlSource.setDatabaseName(database);
+        // Prep statements cache, statements are reused when closed
+        postgresqlSource.setPrepareThreshold(prepareThreshold);
+        postgresqlSource.setPreparedStatementCacheQueries(preparedStatementCacheQueries);
 
-                // Set HikariCP pool
-                HikariDataSource hikariSource = new HikariDataSource();
-                hikariSource.setDataSource(source);
+        //noinspection Duplicates
+        try {
+            Class.forName("com.zaxxer.hikari.HikariDataSource");
 
-                // Set pool settings
-                hikariSource.setPoolName(poolName);
-                hikariSource.setMinimumIdle(0);
-                hikariSource.setMaximumPoolSize(MAX_POOL_SIZE);
-                hikariSource.setIdleTimeout(TIMEOUT * 1000L);
+            // Set HikariCP pool
+            HikariDataSource hikariSource = new HikariDataSource();
+            hikariSource.setDataSource(postgresqlSource);
 
-                // Replace source with hds
-                source = hikariSource;
-                logger.info("HikariCP pooling enabled for '{}'", poolName);
-            } catch (ClassNotFoundException ignored) {
-                logger.warn("HikariCP isn't in classpath for '{}'", poolName);
-            }
+            // Set pool settings
+            hikariSource.setPoolName(poolName);
+            hikariSource.setMinimumIdle(minIdle);
+            hikariSource.setMaximumPoolSize(maxPoolSize);
+            hikariSource.setConnectionTimeout(connectionTimeout);
+            hikariSource.setIdleTimeout(idleTimeout);
+            hikariSource.setMaxLifetime(maxLifetime);
+
+            // Used for shutdown. Not instanceof because of possible classpath error
+            if (read) readHikari = true;
+            else hikari = true;
+            logger.info("HikariCP pooling enabled for '{}'", poolName);
+            return hikariSource;
+        } catch (ClassNotFoundException ignored) {
+            logger.warn("HikariCP isn't in classpath for '{}'", poolName);
         }
-        return source.getConnection();
+        return postgresqlSource;
     }
-}
\ No newline at end of file
+}
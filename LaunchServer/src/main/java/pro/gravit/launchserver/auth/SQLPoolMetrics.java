@@ -0,0 +1,69 @@
+package pro.gravit.launchserver.auth;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection checkout statistics of one pool
+ * Active, idle and total connections are known only for HikariCP, -1 otherwise
+ */
+public final class SQLPoolMetrics {
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+
+    public Connection getConnection(DataSource source) throws SQLException {
+        waiting.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            Connection connection = source.getConnection();
+            acquired.increment();
+            return connection;
+        } catch (SQLException e) {
+            failed.increment();
+            throw e;
+        } finally {
+            long time = System.nanoTime() - start;
+            waiting.decrementAndGet();
+            acquireNanos.add(time);
+            maxAcquireNanos.accumulateAndGet(time, Math::max);
+        }
+    }
+
+    /**
+     * @param hikari true if source is HikariDataSource. Not instanceof because of possible classpath error
+     */
+    public Snapshot snapshot(DataSource source, boolean hikari) {
+        int active = -1, idle = -1, total = -1, threadsWaiting = waiting.get();
+        if (hikari && source != null) {
+            HikariPoolMXBean pool = ((HikariDataSource) source).getHikariPoolMXBean();
+            if (pool != null) {
+                active = pool.getActiveConnections();
+                idle = pool.getIdleConnections();
+                total = pool.getTotalConnections();
+                threadsWaiting = pool.getThreadsAwaitingConnection();
+            }
+        }
+        long count = acquired.sum() + failed.sum();
+        return new Snapshot(active, idle, total, threadsWaiting, acquired.sum(), failed.sum(),
+                count == 0 ? 0 : acquireNanos.sum() / count / 1e6, maxAcquireNanos.get() / 1e6);
+    }
+
+    public record Snapshot(int active, int idle, int total, int waiting, long acquired, long failed,
+                           double avgAcquireMillis, double maxAcquireMillis) {
+        @Override
+        public String toString() {
+            return String.format("active %d idle %d total %d waiting %d | acquired %d failed %d | acquire avg %.3f ms max %.3f ms",
+                    active, idle, total, waiting, acquired, failed, avgAcquireMillis, maxAcquireMillis);
+        }
+    }
+}
@@ -26,10 +26,8 @@ import pro.gravit.utils.command.SubCommand;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /*
 All-In-One provider
@@ -46,6 +44,7 @@ public abstract class AuthCoreProvider implements AutoCloseable, Reconfigurable
             providers.register("postgresql", PostgresSQLCoreProvider.class);
             providers.register("memory", MemoryAuthCoreProvider.class);
             providers.register("http", HttpAuthCoreProvider.class);
+            providers.register("caching", CachingAuthCoreProvider.class);
             registredProviders = true;
         }
     }
@@ -56,6 +55,47 @@ public abstract class AuthCoreProvider implements AutoCloseable, Reconfigurable
         return getUserByUsername(login);
     }
 
+    /**
+     * Find many users in one request
+     * Default implementation calls getUserByUsername for every username, a failed lookup gives null
+     *
+     * @return users in the same order as usernames, null for not found users
+     */
+    public List<User> getUsersByUsernames(List<String> usernames) {
+        List<User> users = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            User user = null;
+            try {
+                user = getUserByUsername(username);
+            } catch (Exception e) {
+                logger.error("Failed to get user {}", username, e);
+            }
+            users.add(user);
+        }
+        return users;
+    }
+
+    /**
+     * Arrange users returned by a batch lookup in order of requested usernames
+     * Exact match wins, otherwise username is compared ignoring case like most databases do
+     */
+    protected static List<User> orderByUsernames(List<String> usernames, Collection<? extends User> found) {
+        Map<String, User> exact = new HashMap<>();
+        Map<String, User> ignoreCase = new HashMap<>();
+        for (User user : found) {
+            if (user == null || user.getUsername() == null) continue;
+            exact.put(user.getUsername(), user);
+            ignoreCase.putIfAbsent(user.getUsername().toLowerCase(Locale.ROOT), user);
+        }
+        List<User> users = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            User user = username == null ? null : exact.get(username);
+            if (user == null && username != null) user = ignoreCase.get(username.toLowerCase(Locale.ROOT));
+            users.add(user);
+        }
+        return users;
+    }
+
     public abstract User getUserByUUID(UUID uuid);
 
     public abstract UserSession getUserSessionByOAuthAccessToken(String accessToken) throws OAuthAccessTokenExpired;
@@ -72,6 +112,18 @@ public abstract class AuthCoreProvider implements AutoCloseable, Reconfigurable
         return authorize(user.getUsername(), context, password, minecraftAccess);
     }
 
+    /**
+     * Non-blocking version of authorize, used by AuthResponse
+     * Default implementation calls authorize in the caller thread
+     */
+    public CompletableFuture<AuthManager.AuthReport> authorizeAsync(String login, AuthResponse.AuthContext context /* may be null */, AuthRequest.AuthPasswordInterface password /* may be null */, boolean minecraftAccess) {
+        try {
+            return CompletableFuture.completedFuture(authorize(login, context, password, minecraftAccess));
+        } catch (Throwable e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     public abstract void init(LaunchServer server);
 
     // Auth Handler methods
@@ -308,6 +360,28 @@ public abstract class AuthCoreProvider implements AutoCloseable, Reconfigurable
         return user.getUsername().equals(username) && user.getAccessToken().equals(accessToken) && updateServerID(user, serverID);
     }
 
+    /**
+     * Non-blocking version of checkServer, default implementation calls checkServer in the caller thread
+     */
+    public CompletableFuture<User> checkServerAsync(Client client, String username, String serverID) {
+        try {
+            return CompletableFuture.completedFuture(checkServer(client, username, serverID));
+        } catch (Throwable e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Non-blocking version of joinServer, default implementation calls joinServer in the caller thread
+     */
+    public CompletableFuture<Boolean> joinServerAsync(Client client, String username, String accessToken, String serverID) {
+        try {
+            return CompletableFuture.completedFuture(joinServer(client, username, accessToken, serverID));
+        } catch (Throwable e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public <T> T isSupport(Class<T> clazz) {
         if (clazz.isAssignableFrom(getClass())) return (T) this;
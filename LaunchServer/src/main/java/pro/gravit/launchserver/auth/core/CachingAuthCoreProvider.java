@@ -0,0 +1,354 @@
+package pro.gravit.launchserver.auth.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import pro.gravit.launcher.events.request.GetAvailabilityAuthRequestEvent;
+import pro.gravit.launcher.request.auth.AuthRequest;
+import pro.gravit.launchserver.LaunchServer;
+import pro.gravit.launchserver.auth.AuthException;
+import pro.gravit.launchserver.auth.core.interfaces.provider.AuthSupportRegistration;
+import pro.gravit.launchserver.auth.core.interfaces.provider.AuthSupportUserBan;
+import pro.gravit.launchserver.auth.core.interfaces.user.UserSupportBanInfo;
+import pro.gravit.launchserver.helper.ExpiringCache;
+import pro.gravit.launchserver.manangers.AuthManager;
+import pro.gravit.launchserver.socket.Client;
+import pro.gravit.launchserver.socket.response.auth.AuthResponse;
+import pro.gravit.utils.command.Command;
+import pro.gravit.utils.command.SubCommand;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches getUserByUsername and getUserByUUID of another provider
+ * Usernames are resolved to UUID and users are cached by UUID, so invalidation of a user covers every spelling of its name
+ * Not found users are cached for negativeExpireMillis, concurrent misses of one key wait for a single backend call
+ * When maxSize is exceeded, least recently used users are evicted
+ * Users are invalidated after authorize, updateServerID, joinServer and ban/unban made through this provider
+ */
+public class CachingAuthCoreProvider extends AuthCoreProvider {
+    private transient final Logger logger = LogManager.getLogger();
+    public AuthCoreProvider provider;
+    public long expireMillis = 60 * 1000;
+    public long negativeExpireMillis = 5 * 1000;
+    public int maxSize = 16384;
+    private transient ExpiringCache<String, UUID> usernames;
+    private transient ExpiringCache<UUID, User> users;
+    private transient final LongAdder hits = new LongAdder();
+    private transient final LongAdder negativeHits = new LongAdder();
+    private transient final LongAdder misses = new LongAdder();
+    private transient AuthSupportUserBan userBan;
+    private transient AuthSupportRegistration registration;
+
+    @Override
+    public User getUserByUsername(String username) {
+        Optional<User> cached = getCachedUser(username, true);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        misses.increment();
+        return usernames.loadOnce(username, () -> {
+            // Other load of this username may be completed after cache lookup
+            Optional<User> loaded = getCachedUser(username, false);
+            if (loaded != null) {
+                return loaded.orElse(null);
+            }
+            long usernameStamp = usernames.stamp(), userStamp = users.stamp();
+            User user = provider.getUserByUsername(username);
+            if (user != null) {
+                put(users, user.getUUID(), user, userStamp);
+            }
+            put(usernames, username, user == null ? null : user.getUUID(), usernameStamp);
+            return user;
+        });
+    }
+
+    /**
+     * @return null if user is not cached, empty if absence of user is cached
+     */
+    private Optional<User> getCachedUser(String username, boolean countHit) {
+        ExpiringCache.Entry<UUID> entry = usernames.get(username);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.getValue() == null) {
+            if (countHit) negativeHits.increment();
+            return Optional.empty();
+        }
+        ExpiringCache.Entry<User> userEntry = users.get(entry.getValue());
+        if (userEntry == null || userEntry.getValue() == null) {
+            return null;
+        }
+        if (countHit) hits.increment();
+        return Optional.of(userEntry.getValue());
+    }
+
+    @Override
+    public List<User> getUsersByUsernames(List<String> names) {
+        List<User> result = new ArrayList<>(names.size());
+        List<String> missing = new ArrayList<>();
+        List<Integer> missingIndexes = new ArrayList<>();
+        for (String username : names) {
+            if (username == null) {
+                result.add(null);
+                continue;
+            }
+            Optional<User> cached = getCachedUser(username, true);
+            if (cached != null) {
+                result.add(cached.orElse(null));
+                continue;
+            }
+            misses.increment();
+            missing.add(username);
+            missingIndexes.add(result.size());
+            result.add(null);
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        long usernameStamp = usernames.stamp(), userStamp = users.stamp();
+        List<User> loaded = provider.getUsersByUsernames(missing);
+        for (int i = 0; i < missing.size(); ++i) {
+            User user = loaded.get(i);
+            if (user != null) {
+                put(users, user.getUUID(), user, userStamp);
+            }
+            put(usernames, missing.get(i), user == null ? null : user.getUUID(), usernameStamp);
+            result.set(missingIndexes.get(i), user);
+        }
+        return result;
+    }
+
+    @Override
+    public User getUserByUUID(UUID uuid) {
+        ExpiringCache.Entry<User> entry = users.get(uuid);
+        if (entry != null) {
+            if (entry.getValue() == null) negativeHits.increment();
+            else hits.increment();
+            return entry.getValue();
+        }
+        misses.increment();
+        return users.loadOnce(uuid, () -> {
+            ExpiringCache.Entry<User> loaded = users.get(uuid);
+            if (loaded != null) {
+                return loaded.getValue();
+            }
+            long stamp = users.stamp();
+            User user = provider.getUserByUUID(uuid);
+            put(users, uuid, user, stamp);
+            return user;
+        });
+    }
+
+    @Override
+    public User getUserByLogin(String login) {
+        // Login may be not a username (email etc.), it is used only by auth and is not cached
+        return provider.getUserByLogin(login);
+    }
+
+    private <K, V> void put(ExpiringCache<K, V> cache, K key, V value, long stamp) {
+        cache.put(key, value, value == null ? negativeExpireMillis : expireMillis, stamp);
+    }
+
+    public void invalidate(User user) {
+        if (user == null) return;
+        users.invalidate(user.getUUID());
+        usernames.invalidate(user.getUsername());
+    }
+
+    public void invalidate(String username) {
+        if (username == null) return;
+        ExpiringCache.Entry<UUID> entry = usernames.peek(username);
+        usernames.invalidate(username);
+        if (entry != null && entry.getValue() != null) {
+            users.invalidate(entry.getValue());
+        }
+    }
+
+    public void invalidateAll() {
+        usernames.invalidateAll();
+        users.invalidateAll();
+    }
+
+    @Override
+    public UserSession getUserSessionByOAuthAccessToken(String accessToken) throws OAuthAccessTokenExpired {
+        return provider.getUserSessionByOAuthAccessToken(accessToken);
+    }
+
+    @Override
+    public AuthManager.AuthReport refreshAccessToken(String refreshToken, AuthResponse.AuthContext context) {
+        return provider.refreshAccessToken(refreshToken, context);
+    }
+
+    @Override
+    public void verifyAuth(AuthResponse.AuthContext context) throws AuthException {
+        provider.verifyAuth(context);
+    }
+
+    @Override
+    public AuthManager.AuthReport authorize(String login, AuthResponse.AuthContext context, AuthRequest.AuthPasswordInterface password, boolean minecraftAccess) throws IOException {
+        AuthManager.AuthReport report = provider.authorize(login, context, password, minecraftAccess);
+        invalidate(login);
+        if (report != null && report.session() != null) {
+            invalidate(report.session().getUser());
+        }
+        return report;
+    }
+
+    @Override
+    public CompletableFuture<AuthManager.AuthReport> authorizeAsync(String login, AuthResponse.AuthContext context, AuthRequest.AuthPasswordInterface password, boolean minecraftAccess) {
+        return provider.authorizeAsync(login, context, password, minecraftAccess).whenComplete((report, error) -> {
+            invalidate(login);
+            if (report != null && report.session() != null) {
+                invalidate(report.session().getUser());
+            }
+        });
+    }
+
+    @Override
+    public AuthManager.AuthReport authorize(User user, AuthResponse.AuthContext context, AuthRequest.AuthPasswordInterface password, boolean minecraftAccess) throws IOException {
+        AuthManager.AuthReport report = provider.authorize(user, context, password, minecraftAccess);
+        invalidate(user);
+        return report;
+    }
+
+    @Override
+    public void init(LaunchServer server) {
+        usernames = new ExpiringCache<>(maxSize);
+        users = new ExpiringCache<>(maxSize);
+        if (provider == null) {
+            logger.error("provider cannot be null");
+            return;
+        }
+        provider.init(server);
+        AuthSupportUserBan providerUserBan = provider.isSupport(AuthSupportUserBan.class);
+        if (providerUserBan != null) {
+            userBan = new CachingUserBan(providerUserBan);
+        }
+        AuthSupportRegistration providerRegistration = provider.isSupport(AuthSupportRegistration.class);
+        if (providerRegistration != null) {
+            registration = (login, email, password, properties) -> {
+                User user = providerRegistration.registration(login, email, password, properties);
+                invalidate(login);
+                invalidate(user);
+                return user;
+            };
+        }
+    }
+
+    @Override
+    protected boolean updateServerID(User user, String serverID) throws IOException {
+        boolean result = provider.updateServerID(user, serverID);
+        invalidate(user);
+        return result;
+    }
+
+    @Override
+    public List<GetAvailabilityAuthRequestEvent.AuthAvailabilityDetails> getDetails(Client client) {
+        return provider.getDetails(client);
+    }
+
+    @Override
+    public User checkServer(Client client, String username, String serverID) throws IOException {
+        // serverID is written just before this call, always ask provider
+        return provider.checkServer(client, username, serverID);
+    }
+
+    @Override
+    public boolean joinServer(Client client, String username, String accessToken, String serverID) throws IOException {
+        boolean result = provider.joinServer(client, username, accessToken, serverID);
+        invalidate(username);
+        invalidate(client.coreObject);
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<User> checkServerAsync(Client client, String username, String serverID) {
+        return provider.checkServerAsync(client, username, serverID);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> joinServerAsync(Client client, String username, String accessToken, String serverID) {
+        return provider.joinServerAsync(client, username, accessToken, serverID).whenComplete((result, error) -> {
+            invalidate(username);
+            invalidate(client.coreObject);
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T isSupport(Class<T> clazz) {
+        if (clazz == AuthSupportUserBan.class) return (T) userBan;
+        if (clazz == AuthSupportRegistration.class) return (T) registration;
+        return provider.isSupport(clazz);
+    }
+
+    @Override
+    public Map<String, Command> getCommands() {
+        Map<String, Command> map = provider.getCommands();
+        map.put("cachestats", new SubCommand("[]", "print user cache statistics") {
+            @Override
+            public void invoke(String... args) {
+                long hitCount = hits.sum(), negativeHitCount = negativeHits.sum(), missCount = misses.sum();
+                long total = hitCount + negativeHitCount + missCount;
+                logger.info("Cached: {} users, {} usernames", users.size(), usernames.size());
+                logger.info("Hits: {} Negative hits: {} Misses: {} Shared loads: {} Hit rate: {}%", hitCount, negativeHitCount, missCount, usernames.getSharedLoads() + users.getSharedLoads(),
+                        total == 0 ? 0 : String.format("%.1f", (hitCount + negativeHitCount) * 100.0 / total));
+            }
+        });
+        map.put("cacheclear", new SubCommand("[]", "invalidate all cached users") {
+            @Override
+            public void invoke(String... args) {
+                invalidateAll();
+                logger.info("User cache cleared");
+            }
+        });
+        return map;
+    }
+
+    @Override
+    public void close() throws IOException {
+        invalidateAll();
+        provider.close();
+    }
+
+    private class CachingUserBan implements AuthSupportUserBan {
+        private final AuthSupportUserBan userBan;
+
+        private CachingUserBan(AuthSupportUserBan userBan) {
+            this.userBan = userBan;
+        }
+
+        @Override
+        public UserSupportBanInfo.UserBanInfo banUser(User user, String reason, String moderator, LocalDateTime startTime, LocalDateTime endTime) {
+            UserSupportBanInfo.UserBanInfo info = userBan.banUser(user, reason, moderator, startTime, endTime);
+            invalidate(user);
+            return info;
+        }
+
+        @Override
+        public UserSupportBanInfo.UserBanInfo banUser(User user) {
+            UserSupportBanInfo.UserBanInfo info = userBan.banUser(user);
+            invalidate(user);
+            return info;
+        }
+
+        @Override
+        public void unbanUser(User user) {
+            userBan.unbanUser(user);
+            invalidate(user);
+        }
+
+        @Override
+        public UserSupportBanInfo fetchUserBanInfo(User user) {
+            return userBan.fetchUserBanInfo(user);
+        }
+    }
+}
@@ -19,16 +19,24 @@ import pro.gravit.launchserver.socket.response.auth.AuthResponse;
 import pro.gravit.utils.helper.CommonHelper;
 
 import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class HttpAuthCoreProvider extends AuthCoreProvider {
     private transient final Logger logger = LogManager.getLogger();
     private transient HttpRequester requester;
     public String bearerToken;
     public String getUserByUsernameUrl;
+    public String getUsersByUsernamesUrl; // Optional, POST {"usernames": [...]} -> {"users": [...]}
     public String getUserByLoginUrl;
     public String getUserByUUIDUrl;
     public String getUserByTokenUrl;
@@ -38,37 +46,104 @@ public class HttpAuthCoreProvider extends AuthCoreProvider {
     public String joinServerUrl;
     public String checkServerUrl;
     public String updateServerIdUrl;
+    public int timeoutMillis = HttpRequester.DEFAULT_TIMEOUT_MILLIS;
+    public Map<String, Integer> timeouts; // Timeout of one endpoint by its url field name, for example "checkServerUrl": 3000
+    public int connectTimeoutMillis = 5000;
+    public boolean http2 = true;
+    public int maxRetries = 2; // Lookups, checkServer, joinServer and updateServerId are retried, authorize is not
+    public double retryBudgetRatio = 0.1;
+    public int minRetriesPerSecond = 10;
+    // Concurrent lookups of the same user share one request
+    private transient final Map<String, CompletableFuture<HttpUser>> userRequests = new ConcurrentHashMap<>();
+
+    private int timeout(String endpoint) {
+        if (timeouts == null) return timeoutMillis;
+        return timeouts.getOrDefault(endpoint, timeoutMillis);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) throw ioException;
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new IOException(cause);
+        }
+    }
+
+    private static <T> T getOrThrow(HttpHelper.HttpOptional<T, HttpRequester.SimpleError> result) {
+        try {
+            return result.getOrThrow();
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * @return user or null if request failed
+     */
+    private CompletableFuture<HttpUser> getUserAsync(String url, String endpoint) {
+        CompletableFuture<HttpUser> future = new CompletableFuture<>();
+        CompletableFuture<HttpUser> existing = userRequests.putIfAbsent(url, future);
+        if (existing != null) {
+            return existing;
+        }
+        requester.sendAsync(requester.get(url, null, timeout(endpoint)), HttpUser.class, true).whenComplete((result, error) -> {
+            userRequests.remove(url, future);
+            if (error == null) {
+                try {
+                    future.complete(result.getOrThrow());
+                    return;
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            logger.error(error);
+            future.complete(null);
+        });
+        return future;
+    }
+
+    public CompletableFuture<HttpUser> getUserByUsernameAsync(String username) {
+        return getUserAsync(CommonHelper.replace(getUserByUsernameUrl, "username", username), "getUserByUsernameUrl");
+    }
+
+    public CompletableFuture<HttpUser> getUserByUUIDAsync(UUID uuid) {
+        return getUserAsync(CommonHelper.replace(getUserByUUIDUrl, "uuid", uuid.toString()), "getUserByUUIDUrl");
+    }
+
     @Override
     public User getUserByUsername(String username) {
+        return getUserByUsernameAsync(username).join();
+    }
+
+    @Override
+    public List<User> getUsersByUsernames(List<String> usernames) {
+        if(getUsersByUsernamesUrl == null) {
+            return super.getUsersByUsernames(usernames);
+        }
         try {
-            return requester.send(requester.get(CommonHelper.replace(getUserByUsernameUrl, "username", username), null), HttpUser.class).getOrThrow();
+            var result = join(requester.sendAsync(requester.post(getUsersByUsernamesUrl, new GetUsersByUsernamesRequest(usernames), null, timeout("getUsersByUsernamesUrl")),
+                    GetUsersByUsernamesResponse.class, true)).getOrThrow();
+            return orderByUsernames(usernames, result.users == null ? List.of() : result.users);
         } catch (IOException e) {
             logger.error(e);
-            return null;
+            return new ArrayList<>(Collections.nCopies(usernames.size(), null));
         }
     }
 
     @Override
     public User getUserByLogin(String login) {
         if(getUserByLoginUrl != null) {
-            try {
-                return requester.send(requester.get(CommonHelper.replace(getUserByLoginUrl, "login", login), null), HttpUser.class).getOrThrow();
-            } catch (IOException e) {
-                logger.error(e);
-                return null;
-            }
+            return getUserAsync(CommonHelper.replace(getUserByLoginUrl, "login", login), "getUserByLoginUrl").join();
         }
         return super.getUserByLogin(login);
     }
 
     @Override
     public User getUserByUUID(UUID uuid) {
-        try {
-            return requester.send(requester.get(CommonHelper.replace(getUserByUUIDUrl, "uuid", uuid.toString()), null), HttpUser.class).getOrThrow();
-        } catch (IOException e) {
-            logger.error(e);
-            return null;
-        }
+        return getUserByUUIDAsync(uuid).join();
     }
 
     @Override
@@ -77,7 +152,7 @@ public class HttpAuthCoreProvider extends AuthCoreProvider {
             return super.getDetails(client);
         }
         try {
-            var result = requester.send(requester.get(getAuthDetails, bearerToken), GetAuthDetailsResponse.class).getOrThrow();
+            var result = requester.send(requester.get(getAuthDetails, bearerToken, timeout("getAuthDetails")), GetAuthDetailsResponse.class).getOrThrow();
             return result.details;
         } catch (IOException e) {
             logger.error(e);
@@ -91,7 +166,7 @@ public class HttpAuthCoreProvider extends AuthCoreProvider {
             return null;
         }
         try {
-            var result = requester.send(requester.get(getUserByTokenUrl, accessToken), HttpUserSession.class);
+            var result = requester.send(requester.get(getUserByTokenUrl, accessToken, timeout("getUserByTokenUrl")), HttpUserSession.class);
             if(!result.isSuccessful()) {
                 var error = result.error().error;
                 if(error.equals(AuthRequestEvent.OAUTH_TOKEN_EXPIRE)) {
@@ -113,7 +188,7 @@ public class HttpAuthCoreProvider extends AuthCoreProvider {
         }
         try {
             return requester.send(requester.post(refreshTokenUrl, new RefreshTokenRequest(refreshToken, context),
-                    null), AuthManager.AuthReport.class).getOrThrow();
+                    null, timeout("refreshTokenUrl")), AuthManager.AuthReport.class).getOrThrow();
         } catch (IOException e) {
             logger.error(e);
             return null;
@@ -122,15 +197,21 @@ public class HttpAuthCoreProvider extends AuthCoreProvider {
 
     @Override
     public AuthManager.AuthReport authorize(String login, AuthResponse.AuthContext context, AuthRequest.AuthPasswordInterface password, boolean minecraftAccess) throws IOException {
-        var result = requester.send(requester.post(authorizeUrl, new AuthorizeRequest(login, context, password, minecraftAccess),
-                bearerToken), HttpAuthReport.class);
-        if(!result.isSuccessful()) {
-            var error = result.error().error;
-            if(error != null) {
-                throw new AuthException(error);
+        return join(authorizeAsync(login, context, password, minecraftAccess));
+    }
+
+    @Override
+    public CompletableFuture<AuthManager.AuthReport> authorizeAsync(String login, AuthResponse.AuthContext context, AuthRequest.AuthPasswordInterface password, boolean minecraftAccess) {
+        return requester.sendAsync(requester.post(authorizeUrl, new AuthorizeRequest(login, context, password, minecraftAccess),
+                bearerToken, timeout("authorizeUrl")), HttpAuthReport.class, false).thenApply(result -> {
+            if(!result.isSuccessful()) {
+                var error = result.error() == null ? null : result.error().error;
+                if(error != null) {
+                    throw new CompletionException(new AuthException(error));
+                }
             }
-        }
-        return result.getOrThrow().toAuthReport();
+            return getOrThrow(result).toAuthReport();
+        });
     }
 
     public record HttpAuthReport(String minecraftAccessToken, String oauthAccessToken,
@@ -143,20 +224,37 @@ public class HttpAuthCoreProvider extends AuthCoreProvider {
 
     @Override
     protected boolean updateServerID(User user, String serverID) throws IOException {
-        var result = requester.send(requester.post(updateServerIdUrl, new UpdateServerIdRequest(user.getUsername(), user.getUUID(), serverID),
-                null), Void.class);
+        var result = join(requester.sendAsync(requester.post(updateServerIdUrl, new UpdateServerIdRequest(user.getUsername(), user.getUUID(), serverID),
+                null, timeout("updateServerIdUrl")), Void.class, true));
         return result.isSuccessful();
     }
 
     @Override
     public User checkServer(Client client, String username, String serverID) throws IOException {
-        return requester.send(requester.post(checkServerUrl, new CheckServerRequest(username, serverID), null), HttpUser.class).getOrThrow();
+        return join(checkServerAsync(client, username, serverID));
+    }
+
+    @Override
+    public CompletableFuture<User> checkServerAsync(Client client, String username, String serverID) {
+        if(checkServerUrl == null) {
+            return super.checkServerAsync(client, username, serverID);
+        }
+        return requester.sendAsync(requester.post(checkServerUrl, new CheckServerRequest(username, serverID), null, timeout("checkServerUrl")),
+                HttpUser.class, true).thenApply(HttpAuthCoreProvider::getOrThrow);
     }
 
     @Override
     public boolean joinServer(Client client, String username, String accessToken, String serverID) throws IOException {
-        var result = requester.send(requester.post(joinServerUrl, new JoinServerRequest(username, accessToken, serverID), null), Void.class);
-        return result.isSuccessful();
+        return join(joinServerAsync(client, username, accessToken, serverID));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> joinServerAsync(Client client, String username, String accessToken, String serverID) {
+        if(joinServerUrl == null) {
+            return super.joinServerAsync(client, username, accessToken, serverID);
+        }
+        return requester.sendAsync(requester.post(joinServerUrl, new JoinServerRequest(username, accessToken, serverID), null, timeout("joinServerUrl")),
+                Void.class, true).thenApply(HttpHelper.HttpOptional::isSuccessful);
     }
 
     public static class UpdateServerIdRequest {
@@ -181,6 +279,18 @@ public class HttpAuthCoreProvider extends AuthCoreProvider {
         }
     }
 
+    public static class GetUsersByUsernamesRequest {
+        public List<String> usernames;
+
+        public GetUsersByUsernamesRequest(List<String> usernames) {
+            this.usernames = usernames;
+        }
+    }
+
+    public static class GetUsersByUsernamesResponse {
+        public List<HttpUser> users;
+    }
+
     public static class GetAuthDetailsResponse {
         public List<GetAvailabilityAuthRequestEvent.AuthAvailabilityDetails> details;
     }
@@ -199,7 +309,8 @@ public class HttpAuthCoreProvider extends AuthCoreProvider {
 
     @Override
     public void init(LaunchServer server) {
-        requester = new HttpRequester();
+        requester = new HttpRequester(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1, Duration.ofMillis(connectTimeoutMillis),
+                maxRetries, maxRetries > 0 ? new HttpRequester.RetryBudget(retryBudgetRatio, minRetriesPerSecond) : null);
         if(getUserByUsernameUrl == null) {
             throw new IllegalArgumentException("'getUserByUsernameUrl' can't be null");
         }
@@ -11,6 +11,7 @@ import pro.gravit.launcher.request.secure.HardwareReportRequest;
 import pro.gravit.launchserver.LaunchServer;
 import pro.gravit.launchserver.auth.AuthException;
 import pro.gravit.launchserver.auth.MySQLSourceConfig;
+import pro.gravit.launchserver.auth.SQLPoolMetrics;
 import pro.gravit.launchserver.auth.core.interfaces.UserHardware;
 import pro.gravit.launchserver.auth.core.interfaces.provider.AuthSupportHardware;
 import pro.gravit.launchserver.auth.core.interfaces.user.UserSupportHardware;
@@ -18,6 +19,8 @@ import pro.gravit.launchserver.auth.password.PasswordVerifier;
 import pro.gravit.launchserver.helper.LegacySessionHelper;
 import pro.gravit.launchserver.manangers.AuthManager;
 import pro.gravit.launchserver.socket.response.auth.AuthResponse;
+import pro.gravit.utils.command.Command;
+import pro.gravit.utils.command.SubCommand;
 import pro.gravit.utils.helper.IOHelper;
 import pro.gravit.utils.helper.SecurityHelper;
 
@@ -27,12 +30,20 @@ import java.sql.*;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 
 public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHardware {
+    private static final int MAX_BATCH_SIZE = 500;
+    // Length of hwDiskId start and end keys, hwDiskId changed only in one half keeps one of them
+    private static final int HW_DISK_ID_KEY_LENGTH = 8;
+    private static final String[] HARDWARE_KEY_COLUMNS = {"displayIdHash", "hwDiskIdHead", "hwDiskIdTail"};
     private transient final Logger logger = LogManager.getLogger();
     public MySQLSourceConfig mySQLHolder;
 
@@ -49,6 +60,12 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
     public String tableHWIDLog = "hwidLog";
     public PasswordVerifier passwordVerifier;
     public double criticalCompareLevel = 1.0;
+    /**
+     * Compare only rows with the same displayId hash, baseboardSerialNumber, start or end of hwDiskId
+     * (columns and indexes are created by createhardwareindexes, until then all rows are compared)
+     * Hardware with display, baseboard and both halves of hwDiskId changed is not found. false - compare all rows in hwids table
+     */
+    public boolean hardwareIndexedLookup = true;
     public String customQueryByUUIDSQL;
     public String customQueryByUsernameSQL;
     public String customQueryByLoginSQL;
@@ -56,8 +73,12 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
     public String customUpdateServerIdSQL;
     private transient String sqlFindHardwareByPublicKey;
     private transient String sqlFindHardwareByData;
+    private transient String sqlFindHardwareByIndexedData;
     private transient String sqlFindHardwareById;
     private transient String sqlCreateHardware;
+    private transient String sqlCreateHardwareWithKeys;
+    // null - hardware key columns are not checked yet
+    private transient volatile Boolean hardwareKeyColumns;
     private transient String sqlCreateHWIDLog;
     private transient String sqlUpdateHardwarePublicKey;
     private transient String sqlUpdateHardwareBanned;
@@ -67,6 +88,7 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
     private transient String queryByUUIDSQL;
     private transient String queryByUsernameSQL;
     private transient String queryByLoginSQL;
+    private transient String queryByUsernamesSQL; // Without placeholders, null if customQueryByUsernameSQL is used
     private transient String updateAuthSQL;
     private transient String updateServerIDSQL;
 
@@ -82,6 +104,35 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
         }
     }
 
+    @Override
+    public List<User> getUsersByUsernames(List<String> usernames) {
+        if (queryByUsernamesSQL == null) {
+            return super.getUsersByUsernames(usernames);
+        }
+        List<User> found = new ArrayList<>(usernames.size());
+        try (Connection c = mySQLHolder.getReadConnection()) {
+            for (int from = 0; from < usernames.size(); from += MAX_BATCH_SIZE) {
+                List<String> part = usernames.subList(from, Math.min(usernames.size(), from + MAX_BATCH_SIZE));
+                try (PreparedStatement s = c.prepareStatement(queryByUsernamesSQL + "(" + String.join(", ", Collections.nCopies(part.size(), "?")) + ")")) {
+                    for (int i = 0; i < part.size(); ++i) {
+                        s.setString(i + 1, part.get(i));
+                    }
+                    s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
+                    try (ResultSet set = s.executeQuery()) {
+                        MySQLUser user;
+                        while ((user = constructUser(set)) != null) {
+                            found.add(user);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("SQL error", e);
+            return new ArrayList<>(Collections.nCopies(usernames.size(), null));
+        }
+        return orderByUsernames(usernames, found);
+    }
+
     @Override
     public User getUserByUUID(UUID uuid) {
         try {
@@ -105,7 +156,7 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
     @Override
     public UserSession getUserSessionByOAuthAccessToken(String accessToken) throws OAuthAccessTokenExpired {
         try {
-            var info = LegacySessionHelper.getJwtInfoFromAccessToken(accessToken, server.keyAgreementManager.ecdsaPublicKey);
+            var info = LegacySessionHelper.getJwtInfoFromAccessToken(accessToken, server.keyAgreementManager);
             var user = (MySQLUser) getUserByUUID(info.uuid());
             if(user == null) {
                 return null;
@@ -182,6 +233,8 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
         queryByUsernameSQL = customQueryByUsernameSQL != null ? customQueryByUsernameSQL : String.format("SELECT %s FROM %s WHERE %s=? LIMIT 1",
                 userInfoCols, table, usernameColumn);
         queryByLoginSQL = customQueryByLoginSQL != null ? customQueryByLoginSQL : queryByUsernameSQL;
+        queryByUsernamesSQL = customQueryByUsernameSQL != null ? null : String.format("SELECT %s FROM %s WHERE %s IN ",
+                userInfoCols, table, usernameColumn);
 
         updateAuthSQL = customUpdateAuthSQL != null ? customUpdateAuthSQL : String.format("UPDATE %s SET %s=?, %s=NULL WHERE %s=?",
                 table, accessTokenColumn, serverIDColumn, uuidColumn);
@@ -196,8 +249,12 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
             sqlUsersByHwidId = String.format("SELECT %s FROM %s WHERE `%s` = ?", userInfoCols, table, hardwareIdColumn);
         if (sqlFindHardwareByData == null)
             sqlFindHardwareByData = String.format("SELECT %s FROM %s", hardwareInfoCols, tableHWID);
+        if (sqlFindHardwareByIndexedData == null)
+            sqlFindHardwareByIndexedData = String.format("SELECT %s FROM %s WHERE `baseboardSerialNumber` = ? OR `displayIdHash` = ? OR `hwDiskIdHead` = ? OR `hwDiskIdTail` = ?", hardwareInfoCols, tableHWID);
         if (sqlCreateHardware == null)
             sqlCreateHardware = String.format("INSERT INTO `%s` (`publickey`, `hwDiskId`, `baseboardSerialNumber`, `displayId`, `bitness`, `totalMemory`, `logicalProcessors`, `physicalProcessors`, `processorMaxFreq`, `graphicCard`, `battery`, `banned`) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, '0')", tableHWID);
+        if (sqlCreateHardwareWithKeys == null)
+            sqlCreateHardwareWithKeys = String.format("INSERT INTO `%s` (`publickey`, `hwDiskId`, `baseboardSerialNumber`, `displayId`, `bitness`, `totalMemory`, `logicalProcessors`, `physicalProcessors`, `processorMaxFreq`, `graphicCard`, `battery`, `banned`, `displayIdHash`, `hwDiskIdHead`, `hwDiskIdTail`) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, '0', ?, ?, ?)", tableHWID);
         if (sqlCreateHWIDLog == null)
             sqlCreateHWIDLog = String.format("INSERT INTO %s (`hwidId`, `newPublicKey`) VALUES (?, ?)", tableHWIDLog);
         if (sqlUpdateHardwarePublicKey == null)
@@ -210,11 +267,12 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
         try (Connection c = mySQLHolder.getConnection()) {
             MySQLUser mySQLUser = (MySQLUser) user;
             mySQLUser.accessToken = accessToken;
-            PreparedStatement s = c.prepareStatement(updateAuthSQL);
-            s.setString(1, accessToken);
-            s.setString(2, user.getUUID().toString());
-            s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
-            return s.executeUpdate() > 0;
+            try (PreparedStatement s = c.prepareStatement(updateAuthSQL)) {
+                s.setString(1, accessToken);
+                s.setString(2, user.getUUID().toString());
+                s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
+                return s.executeUpdate() > 0;
+            }
         } catch (SQLException e) {
             throw new IOException(e);
         }
@@ -225,11 +283,12 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
         try (Connection c = mySQLHolder.getConnection()) {
             MySQLUser mySQLUser = (MySQLUser) user;
             mySQLUser.serverId = serverID;
-            PreparedStatement s = c.prepareStatement(updateServerIDSQL);
-            s.setString(1, serverID);
-            s.setString(2, user.getUUID().toString());
-            s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
-            return s.executeUpdate() > 0;
+            try (PreparedStatement s = c.prepareStatement(updateServerIDSQL)) {
+                s.setString(1, serverID);
+                s.setString(2, user.getUUID().toString());
+                s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
+                return s.executeUpdate() > 0;
+            }
         } catch (SQLException e) {
             throw new IOException(e);
         }
@@ -240,6 +299,45 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
         mySQLHolder.close();
     }
 
+    @Override
+    public Map<String, Command> getCommands() {
+        Map<String, Command> map = super.getCommands();
+        map.put("createhardwareindexes", new SubCommand("[]", "create and fill hardware key columns and indexes used by hardware lookup") {
+            @Override
+            public void invoke(String... args) throws Exception {
+                try (Connection c = mySQLHolder.getConnection()) {
+                    for (String column : HARDWARE_KEY_COLUMNS) {
+                        try (Statement s = c.createStatement()) {
+                            s.executeUpdate(String.format("ALTER TABLE `%s` ADD COLUMN `%s` VARCHAR(64) NULL", tableHWID, column));
+                            logger.info("Column {}.{} created", tableHWID, column);
+                        } catch (SQLException e) {
+                            logger.warn("Column {}.{} not created: {}", tableHWID, column, e.getMessage());
+                        }
+                    }
+                    logger.info("Filled hardware keys of {} rows", fillHardwareKeys(c));
+                    for (String column : new String[]{"baseboardSerialNumber", "displayIdHash", "hwDiskIdHead", "hwDiskIdTail"}) {
+                        try (Statement s = c.createStatement()) {
+                            s.executeUpdate(String.format("CREATE INDEX `%s_%s` ON `%s` (`%s`(64))", tableHWID, column, tableHWID, column));
+                            logger.info("Index {}_{} created", tableHWID, column);
+                        } catch (SQLException e) {
+                            logger.warn("Index {}_{} not created: {}", tableHWID, column, e.getMessage());
+                        }
+                    }
+                }
+                hardwareKeyColumns = null;
+            }
+        });
+        map.put("poolstats", new SubCommand("[]", "show connection pool statistics") {
+            @Override
+            public void invoke(String... args) {
+                logger.info("Primary: {}", mySQLHolder.getMetrics());
+                SQLPoolMetrics.Snapshot read = mySQLHolder.getReadMetrics();
+                if (read != null) logger.info("Read replica: {}", read);
+            }
+        });
+        return map;
+    }
+
     private MySQLUser constructUser(ResultSet set) throws SQLException {
         return set.next() ? new MySQLUser(UUID.fromString(set.getString(uuidColumn)), set.getString(usernameColumn),
                 set.getString(accessTokenColumn), set.getString(serverIDColumn), set.getString(passwordColumn), new ClientPermissions(), set.getLong(hardwareIdColumn)) : null;
@@ -264,16 +362,58 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
         return new MySQLUserHardware(hardwareInfo, publicKey == null ? null : IOHelper.read(publicKey.getBinaryStream()), id, banned);
     }
 
+    private int fillHardwareKeys(Connection c) throws SQLException, IOException {
+        int count = 0;
+        try (PreparedStatement select = c.prepareStatement(String.format("SELECT `id`, `hwDiskId`, `displayId` FROM `%s`", tableHWID));
+             PreparedStatement update = c.prepareStatement(String.format("UPDATE `%s` SET `displayIdHash` = ?, `hwDiskIdHead` = ?, `hwDiskIdTail` = ? WHERE `id` = ?", tableHWID));
+             ResultSet set = select.executeQuery()) {
+            while (set.next()) {
+                Blob displayId = set.getBlob("displayId");
+                setHardwareKeys(update, 1, set.getString("hwDiskId"), displayId == null ? null : IOHelper.read(displayId.getBinaryStream()));
+                update.setLong(4, set.getLong("id"));
+                update.addBatch();
+                if (++count % MAX_BATCH_SIZE == 0) update.executeBatch();
+            }
+            update.executeBatch();
+        }
+        return count;
+    }
+
+    private boolean isHardwareKeyColumns(Connection c) throws SQLException {
+        Boolean result = hardwareKeyColumns;
+        if (result == null) {
+            try (ResultSet set = c.getMetaData().getColumns(c.getCatalog(), null, tableHWID, HARDWARE_KEY_COLUMNS[0])) {
+                result = set.next();
+            }
+            if (!result) {
+                logger.warn("Hardware key columns not found in {}, hardware lookup compares all rows. Run createhardwareindexes to create them", tableHWID);
+            }
+            hardwareKeyColumns = result;
+        }
+        return result;
+    }
+
+    /**
+     * Sets displayIdHash, hwDiskIdHead and hwDiskIdTail parameters starting from index. Keys of empty fields are NULL and match nothing
+     */
+    private static void setHardwareKeys(PreparedStatement s, int index, String hwDiskId, byte[] displayId) throws SQLException {
+        s.setString(index, displayId == null || displayId.length == 0 ? null : SecurityHelper.toHex(SecurityHelper.digest(SecurityHelper.DigestAlgorithm.SHA256, displayId)));
+        String diskId = isEmpty(hwDiskId) ? null : hwDiskId.trim().toLowerCase(Locale.ROOT);
+        int keyLength = diskId == null ? 0 : Math.min(HW_DISK_ID_KEY_LENGTH, diskId.length() / 2);
+        s.setString(index + 1, keyLength == 0 ? null : diskId.substring(0, keyLength));
+        s.setString(index + 2, keyLength == 0 ? null : diskId.substring(diskId.length() - keyLength));
+    }
+
     private void setUserHardwareId(Connection connection, UUID uuid, long hwidId) throws SQLException {
-        PreparedStatement s = connection.prepareStatement(sqlUpdateUsers);
-        s.setLong(1, hwidId);
-        s.setString(2, uuid.toString());
-        s.executeUpdate();
+        try (PreparedStatement s = connection.prepareStatement(sqlUpdateUsers)) {
+            s.setLong(1, hwidId);
+            s.setString(2, uuid.toString());
+            s.executeUpdate();
+        }
     }
 
     private User query(String sql, String value) throws IOException {
-        try (Connection c = mySQLHolder.getConnection()) {
-            PreparedStatement s = c.prepareStatement(sql);
+        try (Connection c = mySQLHolder.getConnection(); PreparedStatement s = c.prepareStatement(sql)) {
             s.setString(1, value);
             s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
             try (ResultSet set = s.executeQuery()) {
@@ -287,13 +427,14 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
     @Override
     public UserHardware getHardwareInfoByPublicKey(byte[] publicKey) {
         try (Connection connection = mySQLHolder.getConnection()) {
-            PreparedStatement s = connection.prepareStatement(sqlFindHardwareByPublicKey);
-            s.setBlob(1, new ByteArrayInputStream(publicKey));
-            try (ResultSet set = s.executeQuery()) {
-                if (set.next()) {
-                    return fetchHardwareInfo(set);
-                } else {
-                    return null;
+            try (PreparedStatement s = connection.prepareStatement(sqlFindHardwareByPublicKey)) {
+                s.setBlob(1, new ByteArrayInputStream(publicKey));
+                try (ResultSet set = s.executeQuery()) {
+                    if (set.next()) {
+                        return fetchHardwareInfo(set);
+                    } else {
+                        return null;
+                    }
                 }
             }
         } catch (SQLException | IOException throwables) {
@@ -305,13 +446,21 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
     @Override
     public UserHardware getHardwareInfoByData(HardwareReportRequest.HardwareInfo info) {
         try (Connection connection = mySQLHolder.getConnection()) {
-            PreparedStatement s = connection.prepareStatement(sqlFindHardwareByData);
-            try (ResultSet set = s.executeQuery()) {
-                while (set.next()) {
-                    MySQLUserHardware hw = fetchHardwareInfo(set);
-                    HardwareInfoCompareResult result = compareHardwareInfo(hw.getHardwareInfo(), info);
-                    if (result.compareLevel > criticalCompareLevel) {
-                        return hw;
+            // Without indexed fields nothing can be preselected, compare all rows
+            boolean indexed = hardwareIndexedLookup && hasIndexedFields(info) && isHardwareKeyColumns(connection);
+            try (PreparedStatement s = connection.prepareStatement(indexed ? sqlFindHardwareByIndexedData : sqlFindHardwareByData)) {
+                if (indexed) {
+                    // Shortlisted rows are scored by compareHardwareInfo as in full scan
+                    s.setString(1, isEmpty(info.baseboardSerialNumber) ? null : info.baseboardSerialNumber);
+                    setHardwareKeys(s, 2, info.hwDiskId, info.displayId);
+                }
+                s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
+                try (ResultSet set = s.executeQuery()) {
+                    while (set.next()) {
+                        MySQLUserHardware hw = fetchHardwareInfo(set);
+                        if (isSimilarHardware(hw.getHardwareInfo(), info)) {
+                            return hw;
+                        }
                     }
                 }
             }
@@ -321,16 +470,29 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
         return null;
     }
 
+    public boolean isSimilarHardware(HardwareReportRequest.HardwareInfo stored, HardwareReportRequest.HardwareInfo info) {
+        return compareHardwareInfo(stored, info).compareLevel > criticalCompareLevel;
+    }
+
+    private static boolean hasIndexedFields(HardwareReportRequest.HardwareInfo info) {
+        return !isEmpty(info.hwDiskId) || !isEmpty(info.baseboardSerialNumber) || (info.displayId != null && info.displayId.length > 0);
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
     @Override
     public UserHardware getHardwareInfoById(String id) {
         try (Connection connection = mySQLHolder.getConnection()) {
-            PreparedStatement s = connection.prepareStatement(sqlFindHardwareById);
-            s.setLong(1, Long.parseLong(id));
-            try (ResultSet set = s.executeQuery()) {
-                if (set.next()) {
-                    return fetchHardwareInfo(set);
-                } else {
-                    return null;
+            try (PreparedStatement s = connection.prepareStatement(sqlFindHardwareById)) {
+                s.setLong(1, Long.parseLong(id));
+                try (ResultSet set = s.executeQuery()) {
+                    if (set.next()) {
+                        return fetchHardwareInfo(set);
+                    } else {
+                        return null;
+                    }
                 }
             }
         } catch (SQLException | IOException throwables) {
@@ -342,27 +504,31 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
     @Override
     public UserHardware createHardwareInfo(HardwareReportRequest.HardwareInfo hardwareInfo, byte[] publicKey) {
         try (Connection connection = mySQLHolder.getConnection()) {
-            PreparedStatement s = connection.prepareStatement(sqlCreateHardware, Statement.RETURN_GENERATED_KEYS);
-            s.setBlob(1, new ByteArrayInputStream(publicKey));
-            s.setString(2, hardwareInfo.hwDiskId);
-            s.setString(3, hardwareInfo.baseboardSerialNumber);
-            s.setBlob(4, hardwareInfo.displayId == null ? null : new ByteArrayInputStream(hardwareInfo.displayId));
-            s.setInt(5, hardwareInfo.bitness);
-            s.setLong(6, hardwareInfo.totalMemory);
-            s.setInt(7, hardwareInfo.logicalProcessors);
-            s.setInt(8, hardwareInfo.physicalProcessors);
-            s.setLong(9, hardwareInfo.processorMaxFreq);
-            s.setString(10, hardwareInfo.graphicCard);
-            s.setBoolean(11, hardwareInfo.battery);
-            s.executeUpdate();
-            try (ResultSet generatedKeys = s.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    //writeHwidLog(connection, generatedKeys.getLong(1), publicKey);
-                    long id = generatedKeys.getLong(1);
-                    return new MySQLUserHardware(hardwareInfo, publicKey, id, false);
+            // Keys are written whenever columns exist, so enabling hardwareIndexedLookup later does not need refill
+            boolean keys = isHardwareKeyColumns(connection);
+            try (PreparedStatement s = connection.prepareStatement(keys ? sqlCreateHardwareWithKeys : sqlCreateHardware, Statement.RETURN_GENERATED_KEYS)) {
+                s.setBlob(1, new ByteArrayInputStream(publicKey));
+                s.setString(2, hardwareInfo.hwDiskId);
+                s.setString(3, hardwareInfo.baseboardSerialNumber);
+                s.setBlob(4, hardwareInfo.displayId == null ? null : new ByteArrayInputStream(hardwareInfo.displayId));
+                s.setInt(5, hardwareInfo.bitness);
+                s.setLong(6, hardwareInfo.totalMemory);
+                s.setInt(7, hardwareInfo.logicalProcessors);
+                s.setInt(8, hardwareInfo.physicalProcessors);
+                s.setLong(9, hardwareInfo.processorMaxFreq);
+                s.setString(10, hardwareInfo.graphicCard);
+                s.setBoolean(11, hardwareInfo.battery);
+                if (keys) setHardwareKeys(s, 12, hardwareInfo.hwDiskId, hardwareInfo.displayId);
+                s.executeUpdate();
+                try (ResultSet generatedKeys = s.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        //writeHwidLog(connection, generatedKeys.getLong(1), publicKey);
+                        long id = generatedKeys.getLong(1);
+                        return new MySQLUserHardware(hardwareInfo, publicKey, id, false);
+                    }
                 }
+                return null;
             }
-            return null;
         } catch (SQLException throwables) {
             logger.error("SQL Error", throwables);
             return null;
@@ -388,10 +554,11 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
         MySQLUserHardware mySQLUserHardware = (MySQLUserHardware) hardware;
         mySQLUserHardware.publicKey = publicKey;
         try (Connection connection = mySQLHolder.getConnection()) {
-            PreparedStatement s = connection.prepareStatement(sqlUpdateHardwarePublicKey);
-            s.setBlob(1, new ByteArrayInputStream(publicKey));
-            s.setLong(2, mySQLUserHardware.id);
-            s.executeUpdate();
+            try (PreparedStatement s = connection.prepareStatement(sqlUpdateHardwarePublicKey)) {
+                s.setBlob(1, new ByteArrayInputStream(publicKey));
+                s.setLong(2, mySQLUserHardware.id);
+                s.executeUpdate();
+            }
         } catch (SQLException e) {
             logger.error("SQL error", e);
         }
@@ -401,12 +568,13 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
     public Iterable<User> getUsersByHardwareInfo(UserHardware hardware) {
         List<User> users = new LinkedList<>();
         try (Connection c = mySQLHolder.getConnection()) {
-            PreparedStatement s = c.prepareStatement(sqlUsersByHwidId);
-            s.setLong(1, Long.parseLong(hardware.getId()));
-            s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
-            try (ResultSet set = s.executeQuery()) {
-                while (!set.isLast()) {
-                    users.add(constructUser(set));
+            try (PreparedStatement s = c.prepareStatement(sqlUsersByHwidId)) {
+                s.setLong(1, Long.parseLong(hardware.getId()));
+                s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
+                try (ResultSet set = s.executeQuery()) {
+                    while (!set.isLast()) {
+                        users.add(constructUser(set));
+                    }
                 }
             }
         } catch (SQLException e) {
@@ -421,10 +589,11 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
         MySQLUserHardware mySQLUserHardware = (MySQLUserHardware) hardware;
         mySQLUserHardware.banned = true;
         try (Connection connection = mySQLHolder.getConnection()) {
-            PreparedStatement s = connection.prepareStatement(sqlUpdateHardwareBanned);
-            s.setBoolean(1, true);
-            s.setLong(2, mySQLUserHardware.id);
-            s.executeUpdate();
+            try (PreparedStatement s = connection.prepareStatement(sqlUpdateHardwareBanned)) {
+                s.setBoolean(1, true);
+                s.setLong(2, mySQLUserHardware.id);
+                s.executeUpdate();
+            }
         } catch (SQLException e) {
             logger.error("SQL Error", e);
         }
@@ -435,10 +604,11 @@ public class MySQLCoreProvider extends AuthCoreProvider implements AuthSupportHa
         MySQLUserHardware mySQLUserHardware = (MySQLUserHardware) hardware;
         mySQLUserHardware.banned = false;
         try (Connection connection = mySQLHolder.getConnection()) {
-            PreparedStatement s = connection.prepareStatement(sqlUpdateHardwareBanned);
-            s.setBoolean(1, false);
-            s.setLong(2, mySQLUserHardware.id);
-            s.executeUpdate();
+            try (PreparedStatement s = connection.prepareStatement(sqlUpdateHardwareBanned)) {
+                s.setBoolean(1, false);
+                s.setLong(2, mySQLUserHardware.id);
+                s.executeUpdate();
+            }
         } catch (SQLException e) {
             logger.error("SQL error", e);
         }
@@ -11,19 +11,27 @@ import pro.gravit.launchserver.LaunchServer;
 import pro.gravit.launchserver.auth.AuthException;
 import pro.gravit.launchserver.auth.MySQLSourceConfig;
 import pro.gravit.launchserver.auth.PostgreSQLSourceConfig;
+import pro.gravit.launchserver.auth.SQLPoolMetrics;
 import pro.gravit.launchserver.auth.password.PasswordVerifier;
 import pro.gravit.launchserver.helper.LegacySessionHelper;
 import pro.gravit.launchserver.manangers.AuthManager;
 import pro.gravit.launchserver.socket.response.auth.AuthResponse;
+import pro.gravit.utils.command.Command;
+import pro.gravit.utils.command.SubCommand;
 import pro.gravit.utils.helper.SecurityHelper;
 
 import java.io.IOException;
 import java.sql.*;
 import java.time.Clock;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public class PostgresSQLCoreProvider extends AuthCoreProvider {
+    private static final int MAX_BATCH_SIZE = 500;
     private transient final Logger logger = LogManager.getLogger();
     public PostgreSQLSourceConfig postgresSQLHolder;
 
@@ -45,6 +53,7 @@ public class PostgresSQLCoreProvider extends AuthCoreProvider {
     private transient String queryByUUIDSQL;
     private transient String queryByUsernameSQL;
     private transient String queryByLoginSQL;
+    private transient String queryByUsernamesSQL; // Without placeholders, null if customQueryByUsernameSQL is used
     private transient String updateAuthSQL;
     private transient String updateServerIDSQL;
 
@@ -60,6 +69,35 @@ public class PostgresSQLCoreProvider extends AuthCoreProvider {
         }
     }
 
+    @Override
+    public List<User> getUsersByUsernames(List<String> usernames) {
+        if (queryByUsernamesSQL == null) {
+            return super.getUsersByUsernames(usernames);
+        }
+        List<User> found = new ArrayList<>(usernames.size());
+        try (Connection c = postgresSQLHolder.getReadConnection()) {
+            for (int from = 0; from < usernames.size(); from += MAX_BATCH_SIZE) {
+                List<String> part = usernames.subList(from, Math.min(usernames.size(), from + MAX_BATCH_SIZE));
+                try (PreparedStatement s = c.prepareStatement(queryByUsernamesSQL + "(" + String.join(", ", Collections.nCopies(part.size(), "?")) + ")")) {
+                    for (int i = 0; i < part.size(); ++i) {
+                        s.setString(i + 1, part.get(i));
+                    }
+                    s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
+                    try (ResultSet set = s.executeQuery()) {
+                        PostgresSQLUser user;
+                        while ((user = constructUser(set)) != null) {
+                            found.add(user);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("SQL error", e);
+            return new ArrayList<>(Collections.nCopies(usernames.size(), null));
+        }
+        return orderByUsernames(usernames, found);
+    }
+
     @Override
     public User getUserByUUID(UUID uuid) {
         try {
@@ -83,7 +121,7 @@ public class PostgresSQLCoreProvider extends AuthCoreProvider {
     @Override
     public UserSession getUserSessionByOAuthAccessToken(String accessToken) throws OAuthAccessTokenExpired {
         try {
-            var info = LegacySessionHelper.getJwtInfoFromAccessToken(accessToken, server.keyAgreementManager.ecdsaPublicKey);
+            var info = LegacySessionHelper.getJwtInfoFromAccessToken(accessToken, server.keyAgreementManager);
             var user = (PostgresSQLUser) getUserByUUID(info.uuid());
             if(user == null) {
                 return null;
@@ -159,6 +197,8 @@ public class PostgresSQLCoreProvider extends AuthCoreProvider {
         queryByUsernameSQL = customQueryByUsernameSQL != null ? customQueryByUsernameSQL : String.format("SELECT %s FROM %s WHERE %s=? LIMIT 1",
                 userInfoCols, table, usernameColumn);
         queryByLoginSQL = customQueryByLoginSQL != null ? customQueryByLoginSQL : queryByUsernameSQL;
+        queryByUsernamesSQL = customQueryByUsernameSQL != null ? null : String.format("SELECT %s FROM %s WHERE %s IN ",
+                userInfoCols, table, usernameColumn);
 
         updateAuthSQL = customUpdateAuthSQL != null ? customUpdateAuthSQL : String.format("UPDATE %s SET %s=?, %s=NULL WHERE %s=?",
                 table, accessTokenColumn, serverIDColumn, uuidColumn);
@@ -170,11 +210,12 @@ public class PostgresSQLCoreProvider extends AuthCoreProvider {
         try (Connection c = postgresSQLHolder.getConnection()) {
             PostgresSQLUser postgresSQLUser = (PostgresSQLUser) user;
             postgresSQLUser.accessToken = accessToken;
-            PreparedStatement s = c.prepareStatement(updateAuthSQL);
-            s.setString(1, accessToken);
-            s.setString(2, user.getUUID().toString());
-            s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
-            return s.executeUpdate() > 0;
+            try (PreparedStatement s = c.prepareStatement(updateAuthSQL)) {
+                s.setString(1, accessToken);
+                s.setString(2, user.getUUID().toString());
+                s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
+                return s.executeUpdate() > 0;
+            }
         } catch (SQLException e) {
             throw new IOException(e);
         }
@@ -185,11 +226,12 @@ public class PostgresSQLCoreProvider extends AuthCoreProvider {
         try (Connection c = postgresSQLHolder.getConnection()) {
             PostgresSQLUser postgresSQLUser = (PostgresSQLUser) user;
             postgresSQLUser.serverId = serverID;
-            PreparedStatement s = c.prepareStatement(updateServerIDSQL);
-            s.setString(1, serverID);
-            s.setString(2, user.getUUID().toString());
-            s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
-            return s.executeUpdate() > 0;
+            try (PreparedStatement s = c.prepareStatement(updateServerIDSQL)) {
+                s.setString(1, serverID);
+                s.setString(2, user.getUUID().toString());
+                s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
+                return s.executeUpdate() > 0;
+            }
         } catch (SQLException e) {
             throw new IOException(e);
         }
@@ -200,14 +242,27 @@ public class PostgresSQLCoreProvider extends AuthCoreProvider {
         postgresSQLHolder.close();
     }
 
+    @Override
+    public Map<String, Command> getCommands() {
+        Map<String, Command> map = super.getCommands();
+        map.put("poolstats", new SubCommand("[]", "show connection pool statistics") {
+            @Override
+            public void invoke(String... args) {
+                logger.info("Primary: {}", postgresSQLHolder.getMetrics());
+                SQLPoolMetrics.Snapshot read = postgresSQLHolder.getReadMetrics();
+                if (read != null) logger.info("Read replica: {}", read);
+            }
+        });
+        return map;
+    }
+
     private PostgresSQLUser constructUser(ResultSet set) throws SQLException {
         return set.next() ? new PostgresSQLUser(UUID.fromString(set.getString(uuidColumn)), set.getString(usernameColumn),
                 set.getString(accessTokenColumn), set.getString(serverIDColumn), set.getString(passwordColumn), new ClientPermissions()) : null;
     }
 
     private User query(String sql, String value) throws IOException {
-        try (Connection c = postgresSQLHolder.getConnection()) {
-            PreparedStatement s = c.prepareStatement(sql);
+        try (Connection c = postgresSQLHolder.getConnection(); PreparedStatement s = c.prepareStatement(sql)) {
             s.setString(1, value);
             s.setQueryTimeout(MySQLSourceConfig.TIMEOUT);
             try (ResultSet set = s.executeQuery()) {
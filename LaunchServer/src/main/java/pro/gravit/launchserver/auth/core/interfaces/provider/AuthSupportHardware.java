@@ -12,6 +12,13 @@ import java.util.Arrays;
 public interface AuthSupportHardware extends AuthSupport {
     UserHardware getHardwareInfoByPublicKey(byte[] publicKey);
 
+    /**
+     * Find hardware similar to info. Called on every hardware report
+     * Implementations may preselect candidates by indexed keys, preselected candidates are still scored by compareHardwareInfo
+     *
+     * @param info normalized hardware info
+     * @return hardware with compare level above critical or null
+     */
     UserHardware getHardwareInfoByData(HardwareReportRequest.HardwareInfo info);
 
     UserHardware getHardwareInfoById(String id);
@@ -0,0 +1,186 @@
+package pro.gravit.launchserver.auth.texture;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import pro.gravit.launcher.profiles.Texture;
+import pro.gravit.launchserver.helper.ExpiringCache;
+import pro.gravit.launchserver.socket.NettyThreadFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches textures of another provider by uuid, texture type and client
+ * Concurrent misses of one key wait for a single request, entries older than refreshAfterMillis
+ * are reloaded in background while the old value is still returned, so hot players never wait for provider
+ * Not found textures (null or empty assets) are cached for negativeExpireMillis
+ * When maxSize is exceeded, least recently used textures are evicted
+ */
+public class CachingTextureProvider extends TextureProvider {
+    private static final String ASSETS = "*";
+    private transient final Logger logger = LogManager.getLogger();
+    public TextureProvider provider;
+    public long expireMillis = 10 * 60 * 1000;
+    public long refreshAfterMillis = 5 * 60 * 1000; // 0 - disable background refresh
+    public long negativeExpireMillis = 60 * 1000;
+    public int maxSize = 16384;
+    public int refreshThreads = 2;
+    private transient volatile ExpiringCache<Key, Object> cache;
+    private transient final LongAdder hits = new LongAdder();
+    private transient final LongAdder misses = new LongAdder();
+    private transient final LongAdder refreshes = new LongAdder();
+    private transient volatile ThreadPoolExecutor refreshExecutor;
+    private transient volatile boolean closed;
+
+    @Override
+    public Texture getCloakTexture(UUID uuid, String username, String client) throws IOException {
+        return (Texture) get(new Key(uuid, "CAPE", client), () -> provider.getCloakTexture(uuid, username, client));
+    }
+
+    @Override
+    public Texture getSkinTexture(UUID uuid, String username, String client) throws IOException {
+        return (Texture) get(new Key(uuid, "SKIN", client), () -> provider.getSkinTexture(uuid, username, client));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Texture> getAssets(UUID uuid, String username, String client) {
+        try {
+            Map<String, Texture> assets = (Map<String, Texture>) get(new Key(uuid, ASSETS, client), () -> provider.getAssets(uuid, username, client));
+            // Callers may modify returned map
+            return assets == null ? new HashMap<>() : new HashMap<>(assets);
+        } catch (IOException e) {
+            logger.error("CachingTextureProvider", e);
+            return new HashMap<>();
+        }
+    }
+
+    private Object get(Key key, ExpiringCache.Loader<Object, IOException> loader) throws IOException {
+        ExpiringCache<Key, Object> cache = getCache();
+        ExpiringCache.Entry<Object> entry = cache.get(key);
+        if (entry != null) {
+            hits.increment();
+            if (cache.startRefresh(entry)) {
+                refresh(key, entry, loader);
+            }
+            return entry.getValue();
+        }
+        misses.increment();
+        return cache.loadOnce(key, () -> {
+            // Other load of this key may be completed after cache lookup
+            ExpiringCache.Entry<Object> loaded = cache.get(key);
+            if (loaded != null) {
+                return loaded.getValue();
+            }
+            long stamp = cache.stamp();
+            Object value = loader.load();
+            put(key, value, stamp);
+            return value;
+        });
+    }
+
+    private void refresh(Key key, ExpiringCache.Entry<Object> entry, ExpiringCache.Loader<Object, IOException> loader) {
+        try {
+            getRefreshExecutor().execute(() -> {
+                try {
+                    long stamp = getCache().stamp();
+                    put(key, loader.load(), stamp);
+                    refreshes.increment();
+                } catch (Throwable e) {
+                    entry.refreshFailed();
+                    logger.warn("Texture refresh of {} failed, cached value is used until expiration", key.uuid, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshFailed();
+        }
+    }
+
+    private void put(Key key, Object value, long stamp) {
+        if (closed) return;
+        boolean found = value != null && !(value instanceof Map<?, ?> map && map.isEmpty());
+        getCache().put(key, value, found ? expireMillis : negativeExpireMillis, found ? refreshAfterMillis : 0, stamp);
+    }
+
+    private ExpiringCache<Key, Object> getCache() {
+        ExpiringCache<Key, Object> result = cache;
+        if (result == null) {
+            synchronized (this) {
+                result = cache;
+                if (result == null) {
+                    result = new ExpiringCache<>(maxSize);
+                    cache = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private ThreadPoolExecutor getRefreshExecutor() {
+        ThreadPoolExecutor executor = refreshExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = refreshExecutor;
+                if (executor == null) {
+                    if (closed) throw new RejectedExecutionException("TextureProvider closed");
+                    int threads = Math.max(1, refreshThreads);
+                    executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                            new NettyThreadFactory("CachingTextureProvider.refresh"));
+                    executor.allowCoreThreadTimeOut(true);
+                    refreshExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    public void removeExpired() {
+        getCache().removeExpired();
+    }
+
+    public void invalidate(UUID uuid) {
+        getCache().invalidateIf(key -> key.uuid.equals(uuid));
+    }
+
+    public void invalidateAll() {
+        getCache().invalidateAll();
+    }
+
+    public int size() {
+        return getCache().size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            if (refreshExecutor != null) {
+                refreshExecutor.shutdownNow();
+            }
+        }
+        getCache().invalidateAll();
+        provider.close();
+    }
+
+    private record Key(UUID uuid, String type, String client) {
+    }
+}
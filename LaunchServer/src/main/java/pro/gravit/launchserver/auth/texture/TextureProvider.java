@@ -20,6 +20,7 @@ public abstract class TextureProvider implements AutoCloseable {
             // Auth providers that doesn't do nothing :D
             providers.register("request", RequestTextureProvider.class);
             providers.register("json", JsonTextureProvider.class);
+            providers.register("caching", CachingTextureProvider.class);
             registredProv = true;
         }
     }
@@ -118,6 +118,7 @@ public class MainBuildTask implements LauncherBuildTask {
             properties.put("runtimeconfig.runtimeEncryptKey", server.runtime.runtimeEncryptKey);
         }
         properties.put("launcher.certificatePinning", server.config.launcher.certificatePinning);
+        properties.put("launcher.binaryProtocol", server.config.launcher.binaryProtocol);
         properties.put("runtimeconfig.passwordEncryptKey", server.runtime.passwordEncryptKey);
         String launcherSalt = SecurityHelper.randomStringToken();
         byte[] launcherSecureHash = SecurityHelper.digest(SecurityHelper.DigestAlgorithm.SHA256,
@@ -1,5 +1,7 @@
 package pro.gravit.launchserver.command.service;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import pro.gravit.launcher.events.NotificationEvent;
 import pro.gravit.launcher.request.WebSocketEvent;
 import pro.gravit.launchserver.LaunchServer;
@@ -7,6 +9,8 @@ import pro.gravit.launchserver.command.Command;
 import pro.gravit.launchserver.socket.WebSocketService;
 
 public class NotifyCommand extends Command {
+    private transient final Logger logger = LogManager.getLogger();
+
     public NotifyCommand(LaunchServer server) {
         super(server);
     }
@@ -31,6 +35,7 @@ public class NotifyCommand extends Command {
             event = new NotificationEvent(args[0], args[1], Enum.valueOf(NotificationEvent.NotificationType.class, args[2]));
         }
         WebSocketService service = server.nettyServerSocketHandler.nettyServer.service;
-        service.sendObjectAll(event, WebSocketEvent.class);
+        service.broadcast(service.channels, event, WebSocketEvent.class).thenAccept(result ->
+                logger.info("Notification sent to {} of {} clients ({} skipped) in {} ms", result.sent(), result.targets(), result.skipped(), result.elapsedNanos() / 1_000_000));
     }
 }
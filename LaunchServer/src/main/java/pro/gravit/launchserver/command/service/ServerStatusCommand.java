@@ -5,6 +5,8 @@ import org.apache.logging.log4j.Logger;
 import pro.gravit.launchserver.LaunchServer;
 import pro.gravit.launchserver.auth.AuthProviderPair;
 import pro.gravit.launchserver.command.Command;
+import pro.gravit.launchserver.socket.WebSocketResponseExecutor;
+import pro.gravit.launchserver.socket.handlers.fileserver.FileServerCache;
 import pro.gravit.utils.command.CommandHandler;
 import pro.gravit.utils.helper.JVMHelper;
 
@@ -43,6 +45,18 @@ public class ServerStatusCommand extends Command {
         logger.info("Commands: {}({} categories)", commands, server.commandHandler.getCategories().size() + 1);
         for (AuthProviderPair pair : server.config.auth.values()) {
         }
+        if (server.nettyServerSocketHandler.nettyServer != null) {
+            WebSocketResponseExecutor executor = server.nettyServerSocketHandler.nettyServer.service.executor;
+            if (executor.isEnabled()) {
+                executor.getStats().forEach((type, stats) -> logger.info("Response {}: queued {} | submitted {} | rejected {} | wait avg {} ms max {} ms", type,
+                        stats.queued.get(), stats.submitted.sum(), stats.rejected.sum(), stats.getAverageWaitMillis(), stats.maxWaitNanos.get() / 1_000_000));
+            }
+            FileServerCache cache = server.nettyServerSocketHandler.nettyServer.fileServerCache;
+            if (cache != null) {
+                logger.info("FileServer cache: hits {} | misses {} | evictions {} | entries {} | size {} MB", cache.getHits(), cache.getMisses(),
+                        cache.getEvictions(), cache.getEntries(), cache.getBytes() >> 20);
+            }
+        }
 
     }
 }
@@ -2,6 +2,7 @@ package pro.gravit.launchserver.components;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import pro.gravit.launchserver.LaunchServer;
 import pro.gravit.launchserver.Reconfigurable;
 import pro.gravit.utils.command.Command;
 import pro.gravit.utils.command.SubCommand;
@@ -10,13 +11,32 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public abstract class AbstractLimiter<T> extends Component implements Reconfigurable {
+/**
+ * Token bucket limiter: rateLimit attempts in burst, then one attempt per rateLimitMillis / rateLimit
+ * Implemented as GCRA (one atomic theoretical arrival time per key), check is lock-free
+ * Garbage collection marks idle entries as removed before removing them, so an attempt is never counted
+ * in an entry that is already dropped
+ */
+public abstract class AbstractLimiter<T> extends Component implements Reconfigurable, AutoCloseable {
     public final List<T> exclude = new ArrayList<>();
-    protected final transient Map<T, LimitEntry> map = new HashMap<>();
+    protected final transient Map<T, LimitEntry> map = new ConcurrentHashMap<>();
     private transient final Logger logger = LogManager.getLogger();
-    public int rateLimit;
+    public int rateLimit; // 0 - one attempt per rateLimitMillis, as 1
     public int rateLimitMillis;
+    public long gcIntervalMillis = 60 * 1000;
+    private transient ScheduledFuture<?> gcTask;
+
+    @Override
+    public void init(LaunchServer launchServer) {
+        if (gcIntervalMillis > 0) {
+            gcTask = launchServer.service.scheduleWithFixedDelay(this::garbageCollection, gcIntervalMillis, gcIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
 
     @Override
     public Map<String, Command> getCommands() {
@@ -26,7 +46,7 @@ public abstract class AbstractLimiter<T> extends Component implements Reconfigur
             public void invoke(String... args) {
                 long size = map.size();
                 garbageCollection();
-                logger.info("Cleared {} entity", size);
+                logger.info("Cleared {} entity", size - map.size());
             }
         });
         commands.put("clear", new SubCommand() {
@@ -64,44 +84,77 @@ public abstract class AbstractLimiter<T> extends Component implements Reconfigur
     protected abstract T getFromString(String str);
 
     public void garbageCollection() {
-        long time = System.currentTimeMillis();
-        map.entrySet().removeIf((e) -> e.getValue().time + rateLimitMillis < time);
+        long time = System.nanoTime();
+        for (Map.Entry<T, LimitEntry> e : map.entrySet()) {
+            if (e.getValue().tryRemove(time)) {
+                map.remove(e.getKey(), e.getValue());
+            }
+        }
     }
 
     public boolean check(T address) {
         if (exclude.contains(address)) return true;
-        LimitEntry entry = map.get(address);
-        if (entry == null) {
-            map.put(address, new LimitEntry());
-            return true;
-        } else {
-            long time = System.currentTimeMillis();
-            if (entry.trys < rateLimit) {
-                entry.trys++;
-                entry.time = time;
+        int limit = Math.max(rateLimit, 1);
+        long period = TimeUnit.MILLISECONDS.toNanos(rateLimitMillis);
+        while (true) {
+            LimitEntry entry = map.computeIfAbsent(address, k -> new LimitEntry());
+            if (entry.tryAcquire(System.nanoTime(), period / limit, period)) {
                 return true;
             }
-            if (entry.time + rateLimitMillis < time) {
-                entry.trys = 1;
-                entry.time = time;
-                return true;
+            if (!entry.isRemoved()) {
+                return false;
             }
-            return false;
+            // Entry is removed by garbage collection, it may be still in map
+            map.remove(address, entry);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (gcTask != null) {
+            gcTask.cancel(false);
+            gcTask = null;
         }
     }
 
     static class LimitEntry {
-        long time;
-        int trys;
+        private static final long REMOVED = Long.MIN_VALUE;
+        // Theoretical arrival time of the next attempt (System.nanoTime), REMOVED after garbage collection
+        private final AtomicLong tat;
 
-        public LimitEntry(long time, int trys) {
-            this.time = time;
-            this.trys = trys;
+        public LimitEntry() {
+            tat = new AtomicLong(System.nanoTime());
         }
 
-        public LimitEntry() {
-            time = System.currentTimeMillis();
-            trys = 0;
+        /**
+         * @return false if limit is reached or entry is removed
+         */
+        boolean tryAcquire(long now, long interval, long period) {
+            while (true) {
+                long current = tat.get();
+                if (current == REMOVED) {
+                    return false;
+                }
+                long next = Math.max(current, now) + interval;
+                if (next - now > period) {
+                    return false;
+                }
+                if (tat.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Mark entry as removed if it is idle, it fails if a concurrent attempt is counted
+         */
+        boolean tryRemove(long now) {
+            long current = tat.get();
+            return current != REMOVED && current - now <= 0 && tat.compareAndSet(current, REMOVED);
+        }
+
+        boolean isRemoved() {
+            return tat.get() == REMOVED;
         }
     }
 }
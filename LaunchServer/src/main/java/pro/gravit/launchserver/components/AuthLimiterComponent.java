@@ -11,6 +11,7 @@ public class AuthLimiterComponent extends IPLimiter implements AutoCloseable {
 
     @Override
     public void init(LaunchServer launchServer) {
+        super.init(launchServer);
         srv = launchServer;
         launchServer.authHookManager.preHook.registerHook(this::preAuthHook);
     }
@@ -24,6 +25,7 @@ public class AuthLimiterComponent extends IPLimiter implements AutoCloseable {
 
     @Override
     public void close() {
+        super.close();
         srv.authHookManager.preHook.unregisterHook(this::preAuthHook);
     }
 }
@@ -16,6 +16,7 @@ public class RegLimiterComponent extends IPLimiter implements AutoCloseable {
 
     @Override
     public void init(LaunchServer launchServer) {
+        super.init(launchServer);
         this.launchServer = launchServer;
         launchServer.authHookManager.registraion.registerHook(this::registerHook);
     }
@@ -29,6 +30,7 @@ public class RegLimiterComponent extends IPLimiter implements AutoCloseable {
 
     @Override
     public void close() {
+        super.close();
         launchServer.authHookManager.registraion.unregisterHook(this::registerHook);
     }
 }
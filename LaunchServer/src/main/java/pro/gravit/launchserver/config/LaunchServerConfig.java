@@ -30,6 +30,10 @@ public final class LaunchServerConfig {
     public String binaryName;
     public boolean copyBinaries = true;
     public boolean cacheUpdates = true;
+    public int syncUpdatesThreads = 0; // 0 - availableProcessors
+    public boolean incrementalSyncUpdates = true; // Digest only new and modified files
+    public boolean watchUpdates = false; // Apply changes of updates dir without syncupdates
+    public long watchUpdatesDelayMillis = 2000;
     public LauncherConfig.LauncherEnvironment env;
     public Map<String, AuthProviderPair> auth;
     // Handlers & Providers
@@ -88,6 +92,7 @@ public final class LaunchServerConfig {
         newConfig.launcher.compress = true;
         newConfig.launcher.deleteTempFiles = true;
         newConfig.launcher.stripLineNumbers = true;
+        newConfig.launcher.binaryProtocol = true;
 
         newConfig.sign = new JarSignerConf();
 
@@ -271,6 +276,7 @@ public final class LaunchServerConfig {
         public boolean stripLineNumbers;
         public boolean deleteTempFiles;
         public boolean certificatePinning;
+        public boolean binaryProtocol; // Launcher asks for binary websocket protocol, old launchers use json
         public boolean encryptRuntime;
         public List<String> customJvmOptions = new ArrayList<>();
         public int memoryLimit = 256;
@@ -283,12 +289,15 @@ public final class LaunchServerConfig {
         public boolean ipForwarding;
         public boolean disableWebApiInterface;
         public boolean showHiddenFiles;
+        public boolean metricsEnabled; // /webapi/metrics
+        public String metricsToken; // Required as "Authorization: Bearer <token>" if set
         public String launcherURL;
         public String downloadURL;
         public String launcherEXEURL;
         public String address;
         public Map<String, LaunchServerConfig.NettyUpdatesBind> bindings = new HashMap<>();
         public NettyPerformanceConfig performance;
+        public NettyFileServerConfig fileServer = new NettyFileServerConfig();
         public NettyBindAddress[] binds;
         public LogLevel logLevel = LogLevel.DEBUG;
     }
@@ -300,6 +309,31 @@ public final class LaunchServerConfig {
         public int schedulerThread;
         public long sessionLifetimeMs = 24 * 60 * 60 * 1000;
         public int maxWebSocketRequestBytes = 1024 * 1024;
+        public NettyExecutorConfig executor = new NettyExecutorConfig();
+    }
+
+    public static class NettyFileServerConfig {
+        public boolean sendfile = true; // FileRegion for connections without TLS
+        public int chunkSize = 64 * 1024; // Chunk size of TLS connections
+        public int maxRanges = 16; // More ranges in one request are ignored
+        public long cacheMaxBytes = 64 * 1024 * 1024; // 0 - hot files cache disabled
+        public long cacheMaxFileBytes = 1024 * 1024;
+        public long cacheRevalidateMillis = 5000;
+    }
+
+    public static class NettyExecutorConfig {
+        public ExecutorType type = ExecutorType.FIXED;
+        public int threads = 0; // 0 - availableProcessors * 2
+        public int queueSize = 4096; // 0 - unbounded
+        public int maxInFlightPerChannel = 16; // Running and waiting blocking requests of one connection, 0 - unlimited
+
+        public enum ExecutorType {
+            // Responses and their async completions run on event loops. Not supported with async auth providers:
+            // completions load profiles and textures, these blocking calls stall the event loop
+            NONE,
+            FIXED,
+            VIRTUAL
+        }
     }
 
     public static class NettyBindAddress {
@@ -0,0 +1,217 @@
+package pro.gravit.launchserver.helper;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Concurrent cache of values with expiration time, used by caching providers
+ * When maxSize is exceeded, expired entries and then least recently used ones are evicted in one batch,
+ * so eviction cost is amortized over many puts
+ * Concurrent loads of one key wait for a single loader call. Invalidation of a key drops values of this key
+ * loaded before it, other keys are not affected
+ */
+public class ExpiringCache<K, V> {
+    private static final int EVICT_BATCH_DIVISOR = 16;
+    private final Map<K, Entry<V>> map = new ConcurrentHashMap<>();
+    private final Map<K, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    // Orders loads and invalidations, see stamp()
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final LongAdder sharedLoads = new LongAdder();
+    private final LongSupplier timeSource;
+    private final int maxSize;
+    private volatile long clearStamp;
+
+    /**
+     * @param maxSize 0 - values are never cached
+     */
+    public ExpiringCache(int maxSize) {
+        this(maxSize, System::currentTimeMillis);
+    }
+
+    public ExpiringCache(int maxSize, LongSupplier timeSource) {
+        this.maxSize = maxSize;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * @return not expired entry or null. Value of entry is null if absence of value is cached
+     */
+    public Entry<V> get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null || timeSource.getAsLong() >= entry.expire) {
+            return null;
+        }
+        entry.lastAccess = System.nanoTime();
+        return entry;
+    }
+
+    /**
+     * Must be taken before value is loaded and passed to put
+     * Value is not put if its key was invalidated after the stamp was taken
+     */
+    public long stamp() {
+        return clock.get();
+    }
+
+    public void put(K key, V value, long ttlMillis, long stamp) {
+        put(key, value, ttlMillis, 0, stamp);
+    }
+
+    /**
+     * @param refreshAfterMillis 0 - entry is never refreshed, see {@link #startRefresh}
+     */
+    public void put(K key, V value, long ttlMillis, long refreshAfterMillis, long stamp) {
+        if (ttlMillis <= 0) return;
+        long now = timeSource.getAsLong();
+        long refreshAt = refreshAfterMillis > 0 && refreshAfterMillis < ttlMillis ? now + refreshAfterMillis : Long.MAX_VALUE;
+        put(key, new Entry<>(value, now + ttlMillis, refreshAt, stamp));
+    }
+
+    /**
+     * @param expireAt expiration time of the value by time source
+     */
+    public void putUntil(K key, V value, long expireAt, long stamp) {
+        put(key, new Entry<>(value, expireAt, Long.MAX_VALUE, stamp));
+    }
+
+    private void put(K key, Entry<V> entry) {
+        if (maxSize <= 0) return;
+        // Invalidation of the key after the stamp was taken is kept as entry with greater stamp
+        map.compute(key, (k, old) -> old != null && old.stamp > entry.stamp ? old : entry);
+        if (entry.stamp < clearStamp) {
+            map.remove(key, entry);
+            return;
+        }
+        if (map.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Loads value once for all concurrent callers with the same key. Loader is responsible to put values
+     */
+    @SuppressWarnings("unchecked")
+    public <R, E extends Exception> R loadOnce(K key, Loader<R, E> loader) throws E {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            sharedLoads.increment();
+            try {
+                return (R) existing.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+                if (cause instanceof Error error) throw error;
+                // Loaders of one key throw the same checked exceptions
+                throw (E) cause;
+            }
+        }
+        try {
+            R value = loader.load();
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * @return true only for one caller, when entry must be refreshed. Entry put by refresh replaces this one,
+     * {@link Entry#refreshFailed()} must be called if refresh failed
+     */
+    public boolean startRefresh(Entry<V> entry) {
+        return timeSource.getAsLong() >= entry.refreshAt && entry.refreshing.compareAndSet(false, true);
+    }
+
+    /**
+     * @return entry even if it is expired, without access time update
+     */
+    public Entry<V> peek(K key) {
+        return map.get(key);
+    }
+
+    public void invalidate(K key) {
+        map.put(key, new Entry<>(null, Long.MIN_VALUE, Long.MAX_VALUE, clock.incrementAndGet()));
+    }
+
+    public void invalidateIf(Predicate<K> predicate) {
+        for (K key : map.keySet()) {
+            if (predicate.test(key)) invalidate(key);
+        }
+        for (K key : loading.keySet()) {
+            if (predicate.test(key)) invalidate(key);
+        }
+    }
+
+    public void invalidateAll() {
+        clearStamp = clock.incrementAndGet();
+        map.clear();
+    }
+
+    public void removeExpired() {
+        long now = timeSource.getAsLong();
+        map.values().removeIf(entry -> now >= entry.expire);
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            removeExpired();
+            int excess = map.size() - (maxSize - maxSize / EVICT_BATCH_DIVISOR);
+            if (excess <= 0) return;
+            long[] accessTimes = map.values().stream().mapToLong(entry -> entry.lastAccess).sorted().toArray();
+            if (accessTimes.length == 0) return;
+            long threshold = accessTimes[Math.min(excess, accessTimes.length) - 1];
+            map.values().removeIf(entry -> entry.lastAccess <= threshold);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long getSharedLoads() {
+        return sharedLoads.sum();
+    }
+
+    public interface Loader<R, E extends Exception> {
+        R load() throws E;
+    }
+
+    public static final class Entry<V> {
+        private final V value;
+        private final long expire;
+        private final long refreshAt;
+        private final long stamp;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long lastAccess = System.nanoTime();
+
+        private Entry(V value, long expire, long refreshAt, long stamp) {
+            this.value = value;
+            this.expire = expire;
+            this.refreshAt = refreshAt;
+            this.stamp = stamp;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public void refreshFailed() {
+            refreshing.set(false);
+        }
+    }
+}
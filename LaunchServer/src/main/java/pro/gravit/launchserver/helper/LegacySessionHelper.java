@@ -2,6 +2,7 @@ package pro.gravit.launchserver.helper;
 
 import io.jsonwebtoken.Jwts;
 import pro.gravit.launchserver.auth.core.User;
+import pro.gravit.launchserver.manangers.KeyAgreementManager;
 import pro.gravit.utils.helper.SecurityHelper;
 
 import java.security.interfaces.ECPrivateKey;
@@ -25,6 +26,13 @@ public class LegacySessionHelper {
                 .compact();
     }
 
+    /**
+     * Verify access token with shared parser, tokens verified before are taken from cache until expiration
+     */
+    public static JwtTokenInfo getJwtInfoFromAccessToken(String token, KeyAgreementManager keyAgreementManager) {
+        return keyAgreementManager.accessTokenCache.verify(token);
+    }
+
     public static JwtTokenInfo getJwtInfoFromAccessToken(String token, ECPublicKey publicKey) {
         var parser = Jwts.parserBuilder()
                 .requireIssuer("LaunchServer")
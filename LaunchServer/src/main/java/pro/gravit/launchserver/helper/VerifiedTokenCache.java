@@ -0,0 +1,87 @@
+package pro.gravit.launchserver.helper;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import pro.gravit.utils.helper.SecurityHelper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Access tokens with verified signature, keyed by SHA-256 of the token
+ * Repeated restore/auth with the same token skips ECDSA verification until the token expires
+ * Tokens without expiration time are never cached. When maxSize is exceeded, least recently used tokens are evicted
+ */
+public class VerifiedTokenCache {
+    public static final int DEFAULT_MAX_SIZE = Integer.parseInt(System.getProperty("launchserver.tokencache.maxSize", "16384"));
+    private final JwtParser parser;
+    private final int maxSize;
+    private final ExpiringCache<Key, LegacySessionHelper.JwtTokenInfo> cache;
+
+    public VerifiedTokenCache(JwtParser parser, int maxSize) {
+        this(parser, maxSize, System::currentTimeMillis);
+    }
+
+    /**
+     * @param timeSource current time in millis, must match clock of parser
+     */
+    public VerifiedTokenCache(JwtParser parser, int maxSize, LongSupplier timeSource) {
+        this.parser = parser;
+        this.maxSize = maxSize;
+        this.cache = new ExpiringCache<>(maxSize, timeSource);
+    }
+
+    private static Key toKey(String token) {
+        ByteBuffer digest = ByteBuffer.wrap(SecurityHelper.digest(SecurityHelper.DigestAlgorithm.SHA256, token.getBytes(StandardCharsets.UTF_8)));
+        return new Key(digest.getLong(), digest.getLong(), digest.getLong(), digest.getLong());
+    }
+
+    /**
+     * @throws io.jsonwebtoken.JwtException if token is invalid or expired (ExpiredJwtException)
+     */
+    public LegacySessionHelper.JwtTokenInfo verify(String token) {
+        if (maxSize <= 0) {
+            return parse(token).info;
+        }
+        Key key = toKey(token);
+        ExpiringCache.Entry<LegacySessionHelper.JwtTokenInfo> cached = cache.get(key);
+        if (cached != null) {
+            return cached.getValue();
+        }
+        // Expired token is parsed again to get ExpiredJwtException
+        long stamp = cache.stamp();
+        Entry entry = parse(token);
+        if (entry.expiration != Long.MAX_VALUE) {
+            cache.putUntil(key, entry.info, entry.expiration, stamp);
+        }
+        return entry.info;
+    }
+
+    private Entry parse(String token) {
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        UUID uuid = UUID.fromString(claims.get("uuid", String.class));
+        Date expiration = claims.getExpiration();
+        return new Entry(new LegacySessionHelper.JwtTokenInfo(claims.getSubject(), uuid), expiration == null ? Long.MAX_VALUE : expiration.getTime());
+    }
+
+    public void removeExpired() {
+        cache.removeExpired();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private record Key(long a, long b, long c, long d) {
+    }
+
+    private record Entry(LegacySessionHelper.JwtTokenInfo info, long expiration) {
+    }
+}
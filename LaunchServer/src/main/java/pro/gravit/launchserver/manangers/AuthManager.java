@@ -21,6 +21,8 @@ import pro.gravit.launchserver.auth.core.interfaces.user.UserSupportProperties;
 import pro.gravit.launchserver.auth.core.interfaces.user.UserSupportTextures;
 import pro.gravit.launchserver.auth.texture.TextureProvider;
 import pro.gravit.launchserver.socket.Client;
+import pro.gravit.launchserver.socket.LauncherNettyServer;
+import pro.gravit.launchserver.socket.NettyThreadFactory;
 import pro.gravit.launchserver.socket.response.auth.AuthResponse;
 import pro.gravit.launchserver.socket.response.auth.RestoreResponse;
 import pro.gravit.utils.helper.IOHelper;
@@ -29,11 +31,14 @@ import pro.gravit.utils.helper.SecurityHelper;
 import javax.crypto.Cipher;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class AuthManager {
     private transient final LaunchServer server;
     private transient final Logger logger = LogManager.getLogger();
     private transient final JwtParser checkServerTokenParser;
+    // Texture lookups of batch profile requests, threads are stopped when idle
+    private transient final ThreadPoolExecutor profileExecutor;
 
     public AuthManager(LaunchServer server) {
         this.server = server;
@@ -42,6 +47,10 @@ public class AuthManager {
                 .require("tokenType", "checkServer")
                 .setSigningKey(server.keyAgreementManager.ecdsaPublicKey)
                 .build();
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        this.profileExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new NettyThreadFactory("AuthManager.profileExecutor"));
+        this.profileExecutor.allowCoreThreadTimeOut(true);
     }
 
     public String newCheckServerToken(String serverName, String authId) {
@@ -124,49 +133,85 @@ public class AuthManager {
      * @return Access token
      */
     public AuthReport auth(AuthResponse.AuthContext context, AuthRequest.AuthPasswordInterface password) throws AuthException {
+        try {
+            return authAsync(context, password, Runnable::run).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AuthException authException) throw authException;
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking version of auth
+     *
+     * @param executor completes auth and writes result to Client when AuthCoreProvider.authorizeAsync is completed,
+     *                 so Client is never changed in provider threads
+     * @return future completed with AuthException if auth failed
+     */
+    public CompletableFuture<AuthReport> authAsync(AuthResponse.AuthContext context, AuthRequest.AuthPasswordInterface password, Executor executor) {
         AuthCoreProvider provider = context.pair.core;
-        provider.verifyAuth(context);
-        if (password instanceof AuthOAuthPassword password1) {
-            UserSession session;
-            try {
-                session = provider.getUserSessionByOAuthAccessToken(password1.accessToken);
-            } catch (AuthCoreProvider.OAuthAccessTokenExpired oAuthAccessTokenExpired) {
-                throw new AuthException(AuthRequestEvent.OAUTH_TOKEN_EXPIRE);
-            }
-            if (session == null) {
-                throw new AuthException(AuthRequestEvent.OAUTH_TOKEN_INVALID);
-            }
-            User user = session.getUser();
-            context.client.coreObject = user;
-            context.client.sessionObject = session;
-            internalAuth(context.client, context.authType, context.pair, user.getUsername(), user.getUUID(), user.getPermissions(), true);
-            if (context.authType == AuthResponse.ConnectTypes.CLIENT && server.config.protectHandler.allowGetAccessToken(context)) {
-                return AuthReport.ofMinecraftAccessToken(user.getAccessToken(), session);
+        boolean minecraftAccess;
+        try {
+            provider.verifyAuth(context);
+            minecraftAccess = context.authType == AuthResponse.ConnectTypes.CLIENT && server.config.protectHandler.allowGetAccessToken(context);
+            if (password instanceof AuthOAuthPassword oauthPassword) {
+                return CompletableFuture.completedFuture(authOAuth(context, oauthPassword, minecraftAccess));
             }
-            return AuthReport.ofMinecraftAccessToken(null, session);
+        } catch (AuthException e) {
+            return CompletableFuture.failedFuture(e);
         }
-        String login = context.login;
-        try {
-            AuthReport result = provider.authorize(login, context, password, context.authType == AuthResponse.ConnectTypes.CLIENT && server.config.protectHandler.allowGetAccessToken(context));
-            if(result == null || result.session == null || result.session.getUser() == null) {
-                logger.error("AuthCoreProvider {} method 'authorize' return null", context.pair.name);
-                throw new AuthException("Internal Auth Error");
+        return provider.authorizeAsync(context.login, context, password, minecraftAccess).handleAsync((result, error) -> {
+            try {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    if (cause instanceof AuthException authException) throw authException;
+                    logger.error(cause);
+                    throw new AuthException("Internal Auth Error");
+                }
+                return completeAuth(context, result);
+            } catch (AuthException e) {
+                throw new CompletionException(e);
             }
-            var session = result.session;
-            var user = session.getUser();
-            context.client.coreObject = user;
-            context.client.sessionObject = session;
-            internalAuth(context.client, context.authType, context.pair, user.getUsername(), user.getUUID(), user.getPermissions(), result.isUsingOAuth());
-            return result;
-        } catch (IOException e) {
-            if (e instanceof AuthException) throw (AuthException) e;
-            logger.error(e);
+        }, executor);
+    }
+
+    private AuthReport authOAuth(AuthResponse.AuthContext context, AuthOAuthPassword password, boolean minecraftAccess) throws AuthException {
+        UserSession session;
+        try {
+            session = context.pair.core.getUserSessionByOAuthAccessToken(password.accessToken);
+        } catch (AuthCoreProvider.OAuthAccessTokenExpired oAuthAccessTokenExpired) {
+            throw new AuthException(AuthRequestEvent.OAUTH_TOKEN_EXPIRE);
+        }
+        if (session == null) {
+            throw new AuthException(AuthRequestEvent.OAUTH_TOKEN_INVALID);
+        }
+        User user = session.getUser();
+        context.client.coreObject = user;
+        context.client.sessionObject = session;
+        internalAuth(context.client, context.authType, context.pair, user.getUsername(), user.getUUID(), user.getPermissions(), true);
+        return AuthReport.ofMinecraftAccessToken(minecraftAccess ? user.getAccessToken() : null, session);
+    }
+
+    private AuthReport completeAuth(AuthResponse.AuthContext context, AuthReport result) throws AuthException {
+        if(result == null || result.session == null || result.session.getUser() == null) {
+            logger.error("AuthCoreProvider {} method 'authorize' return null", context.pair.name);
             throw new AuthException("Internal Auth Error");
         }
+        // Other auth of this client may be completed while provider was working
+        if (context.client.isAuth) {
+            throw new AuthException("You are already logged in");
+        }
+        var session = result.session;
+        var user = session.getUser();
+        context.client.coreObject = user;
+        context.client.sessionObject = session;
+        internalAuth(context.client, context.authType, context.pair, user.getUsername(), user.getUUID(), user.getPermissions(), result.isUsingOAuth());
+        return result;
     }
 
     /**
      * Writing authorization information to the Client object
+     * Channel indexes of connected client are updated too
      */
     public void internalAuth(Client client, AuthResponse.ConnectTypes authType, AuthProviderPair pair, String username, UUID uuid, ClientPermissions permissions, boolean oauth) {
         if(!oauth) {
@@ -179,6 +224,10 @@ public class AuthManager {
         client.username = username;
         client.type = authType;
         client.uuid = uuid;
+        LauncherNettyServer nettyServer = server.nettyServerSocketHandler == null ? null : server.nettyServerSocketHandler.nettyServer;
+        if (nettyServer != null) {
+            nettyServer.service.updateIndex(client);
+        }
     }
 
     public CheckServerReport checkServer(Client client, String username, String serverID) throws IOException {
@@ -188,6 +237,23 @@ public class AuthManager {
         else return CheckServerReport.ofUser(user, getPlayerProfile(client.auth, user));
     }
 
+    /**
+     * Non-blocking version of checkServer
+     *
+     * @param executor builds player profile (may block) when provider request is completed
+     */
+    public CompletableFuture<CheckServerReport> checkServerAsync(Client client, String username, String serverID, Executor executor) {
+        if (client.auth == null) return CompletableFuture.completedFuture(null);
+        AuthProviderPair pair = client.auth;
+        return pair.core.checkServerAsync(client, username, serverID)
+                .thenApplyAsync(user -> user == null ? null : CheckServerReport.ofUser(user, getPlayerProfile(pair, user)), executor);
+    }
+
+    public CompletableFuture<Boolean> joinServerAsync(Client client, String username, String accessToken, String serverID) {
+        if (client.auth == null) return CompletableFuture.completedFuture(false);
+        return client.auth.core.joinServerAsync(client, username, accessToken, serverID);
+    }
+
     public boolean joinServer(Client client, String username, String accessToken, String serverID) throws IOException {
         if (client.auth == null) return false;
         return client.auth.core.joinServer(client, username, accessToken, serverID);
@@ -231,6 +297,49 @@ public class AuthManager {
         return new PlayerProfile(uuid, username, new HashMap<>(), new HashMap<>());
     }
 
+    /**
+     * Profiles of many users with one batch user lookup, textures of different users are fetched concurrently
+     * Failed lookup of one user doesn't fail others
+     *
+     * @return profiles in the same order as usernames, null for not found and failed users
+     */
+    public PlayerProfile[] getPlayerProfiles(AuthProviderPair pair, List<String> usernames) {
+        PlayerProfile[] profiles = new PlayerProfile[usernames.size()];
+        List<User> users;
+        try {
+            users = pair.core.getUsersByUsernames(usernames);
+        } catch (Exception e) {
+            logger.error("Batch user lookup failed", e);
+            return profiles;
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < profiles.length; ++i) {
+            User user = users.get(i);
+            if (user == null) {
+                continue;
+            }
+            int index = i;
+            Runnable task = () -> {
+                try {
+                    profiles[index] = getPlayerProfile(pair, user);
+                } catch (Exception e) {
+                    logger.error("Failed to get profile of {}", user.getUsername(), e);
+                }
+            };
+            if (user instanceof UserSupportTextures || pair.textureProvider == null) {
+                task.run();
+            } else {
+                futures.add(CompletableFuture.runAsync(task, profileExecutor));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return profiles;
+    }
+
+    public void close() {
+        profileExecutor.shutdown();
+    }
+
     public PlayerProfile getPlayerProfile(AuthProviderPair pair, UUID uuid) {
         return getPlayerProfile(pair, uuid, null);
     }
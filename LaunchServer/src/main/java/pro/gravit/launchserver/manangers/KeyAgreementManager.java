@@ -1,7 +1,10 @@
 package pro.gravit.launchserver.manangers;
 
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import pro.gravit.launchserver.helper.VerifiedTokenCache;
 import pro.gravit.utils.helper.IOHelper;
 import pro.gravit.utils.helper.SecurityHelper;
 
@@ -15,6 +18,8 @@ import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.time.Clock;
+import java.util.Date;
 
 public class KeyAgreementManager {
     public final ECPublicKey ecdsaPublicKey;
@@ -22,6 +27,14 @@ public class KeyAgreementManager {
     public final RSAPublicKey rsaPublicKey;
     public final RSAPrivateKey rsaPrivateKey;
     public final String legacySalt;
+    /**
+     * Shared parser of LaunchServer-issued tokens signed with ecdsaPrivateKey
+     */
+    public final JwtParser ecdsaJwtParser;
+    /**
+     * Verified access tokens, see LegacySessionHelper.getJwtInfoFromAccessToken
+     */
+    public final VerifiedTokenCache accessTokenCache;
     private transient final Logger logger = LogManager.getLogger();
 
     public KeyAgreementManager(ECPublicKey ecdsaPublicKey, ECPrivateKey ecdsaPrivateKey, RSAPublicKey rsaPublicKey, RSAPrivateKey rsaPrivateKey, String legacySalt) {
@@ -30,6 +43,8 @@ public class KeyAgreementManager {
         this.rsaPublicKey = rsaPublicKey;
         this.rsaPrivateKey = rsaPrivateKey;
         this.legacySalt = legacySalt;
+        this.ecdsaJwtParser = makeJwtParser(ecdsaPublicKey);
+        this.accessTokenCache = new VerifiedTokenCache(ecdsaJwtParser, VerifiedTokenCache.DEFAULT_MAX_SIZE);
     }
 
     public KeyAgreementManager(Path keyDirectory) throws IOException, InvalidKeySpecException {
@@ -72,5 +87,15 @@ public class KeyAgreementManager {
             legacySalt = SecurityHelper.randomStringToken();
             IOHelper.write(legacySaltPath, legacySalt.getBytes(StandardCharsets.UTF_8));
         }
+        ecdsaJwtParser = makeJwtParser(ecdsaPublicKey);
+        accessTokenCache = new VerifiedTokenCache(ecdsaJwtParser, VerifiedTokenCache.DEFAULT_MAX_SIZE);
+    }
+
+    private static JwtParser makeJwtParser(ECPublicKey publicKey) {
+        return Jwts.parserBuilder()
+                .requireIssuer("LaunchServer")
+                .setClock(() -> new Date(Clock.systemUTC().millis()))
+                .setSigningKey(publicKey)
+                .build();
     }
 }
@@ -1,26 +1,53 @@
 package pro.gravit.launchserver.manangers;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.util.IllegalReferenceCountException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import pro.gravit.launcher.Launcher;
+import pro.gravit.launcher.events.request.UpdateRequestEvent;
 import pro.gravit.launcher.hasher.HashedDir;
-import pro.gravit.launcher.serialize.HInput;
+import pro.gravit.launcher.hasher.HashedDirHasher;
+import pro.gravit.launcher.hasher.HashedDirManifest;
+import pro.gravit.launcher.hasher.HashedEntry;
+import pro.gravit.launcher.hasher.HashedFile;
+import pro.gravit.launcher.hasher.HashedFileCache;
+import pro.gravit.launcher.request.WebSocketEvent;
+import pro.gravit.launcher.request.websockets.WebSocketBinaryProtocol;
 import pro.gravit.launcher.serialize.HOutput;
 import pro.gravit.launchserver.LaunchServer;
+import pro.gravit.launchserver.config.LaunchServerConfig;
 import pro.gravit.launchserver.modules.events.LaunchServerUpdatesSyncEvent;
+import pro.gravit.utils.HookException;
+import pro.gravit.utils.HookSet;
+import pro.gravit.utils.helper.CommonHelper;
 import pro.gravit.utils.helper.IOHelper;
+import pro.gravit.utils.helper.JVMHelper;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Stream;
 
 public class UpdatesManager {
     private final LaunchServer server;
     private final Logger logger = LogManager.getLogger();
     private final Path cacheFile;
-    private volatile Map<String, HashedDir> updatesDirMap;
+    private volatile Map<String, UpdateDir> updatesDirMap;
+    /**
+     * Called after updates sync, before LaunchServerUpdatesSyncEvent
+     */
+    public final HookSet<LaunchServerUpdatesSyncEvent> syncHook = new HookSet<>();
+    private final Map<String, UpdatePayload> payloadCache = new ConcurrentHashMap<>();
+    private final Map<String, UpdatePayload> binaryPayloadCache = new ConcurrentHashMap<>();
+    private UpdatesWatcher watcher;
 
     public UpdatesManager(LaunchServer server) {
         this.server = server;
@@ -28,35 +55,59 @@ public class UpdatesManager {
     }
 
     private void writeCache(Path file) throws IOException {
-        try (HOutput output = new HOutput(IOHelper.newOutput(file))) {
-            output.writeLength(updatesDirMap.size(), 0);
-            for (Map.Entry<String, HashedDir> entry : updatesDirMap.entrySet()) {
-                output.writeString(entry.getKey(), 0);
-                entry.getValue().write(output);
-            }
+        HashedDirManifest.Writer writer = new HashedDirManifest.Writer();
+        for (Map.Entry<String, UpdateDir> entry : updatesDirMap.entrySet()) {
+            entry.getValue().write(entry.getKey(), writer);
         }
+        writer.write(file);
         logger.debug("Saved {} updates to cache", updatesDirMap.size());
     }
 
-    private void readCache(Path file) throws IOException {
-        Map<String, HashedDir> updatesDirMap = new HashMap<>(16);
-        try (HInput input = new HInput(IOHelper.newInput(file))) {
-            int size = input.readLength(0);
-            for (int i = 0; i < size; ++i) {
-                String name = input.readString(0);
-                HashedDir dir = new HashedDir(input);
-                updatesDirMap.put(name, dir);
+    private synchronized void saveCache() {
+        if (server.config.cacheUpdates) {
+            try {
+                writeCache(cacheFile);
+            } catch (Throwable e) {
+                logger.error("Write updates cache failed", e);
+            }
+        }
+    }
+
+    /**
+     * Dirs are deserialized here, not on request threads. Corrupted dirs are returned to be synced again
+     */
+    private Set<String> readCache(Path file) throws IOException {
+        // Mapped file can't be replaced by writeCache on Windows
+        HashedDirManifest manifest = JVMHelper.OS_TYPE == JVMHelper.OS.MUSTDIE ? HashedDirManifest.load(file) : HashedDirManifest.open(file);
+        Map<String, UpdateDir> updatesDirMap = new HashMap<>(16);
+        Set<String> corrupted = new HashSet<>();
+        Map<String, String> names = new HashMap<>();
+        for (String name : manifest.names()) {
+            if (!manifest.hasDir(name))
+                continue;
+            HashedDir dir;
+            try {
+                dir = manifest.readDir(name).compact(names);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Updates cache of '{}' is corrupted, syncing it again", name, e);
+                corrupted.add(name);
+                continue;
             }
+            updatesDirMap.put(name, new UpdateDir(manifest, name, dir, null, true));
         }
         logger.debug("Found {} updates from cache", updatesDirMap.size());
         this.updatesDirMap = Collections.unmodifiableMap(updatesDirMap);
+        cleanUpdatePayloads();
+        return corrupted;
     }
 
-    public void readUpdatesDir() throws IOException {
+    public synchronized void readUpdatesDir() throws IOException {
         if (server.config.cacheUpdates) {
             if (Files.exists(cacheFile)) {
                 try {
-                    readCache(cacheFile);
+                    Set<String> corrupted = readCache(cacheFile);
+                    if (!corrupted.isEmpty())
+                        syncUpdatesDir(corrupted);
                     return;
                 } catch (Throwable e) {
                     logger.error("Read updates cache failed", e);
@@ -66,60 +117,368 @@ public class UpdatesManager {
         syncUpdatesDir(null);
     }
 
-    public void syncUpdatesDir(Collection<String> dirs) throws IOException {
+    public synchronized void syncUpdatesDir(Collection<String> dirs) throws IOException {
         logger.info("Syncing updates dir");
-        Map<String, HashedDir> newUpdatesDirMap = new HashMap<>(16);
-        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(server.updatesDir)) {
-            for (final Path updateDir : dirStream) {
-                if (Files.isHidden(updateDir))
-                    continue; // Skip hidden
-
-                // Resolve name and verify is dir
-                String name = IOHelper.getFileName(updateDir);
-                if (!IOHelper.isDir(updateDir)) {
-                    if (!IOHelper.isFile(updateDir) && Stream.of(".jar", ".exe", ".hash").noneMatch(e -> updateDir.toString().endsWith(e)))
-                        logger.warn("Not update dir: '{}'", name);
-                    continue;
-                }
+        Map<String, UpdateDir> newUpdatesDirMap = new HashMap<>(16);
+        Map<String, HashedFileCache> newFileCacheMap = new HashMap<>(16);
+        Map<String, CompletableFuture<HashedDir>> syncDirs = new HashMap<>(16);
+        int threads = server.config.syncUpdatesThreads > 0 ? server.config.syncUpdatesThreads : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            HashedDirHasher hasher = new HashedDirHasher(executor);
+            long startTime = System.currentTimeMillis();
+            try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(server.updatesDir)) {
+                for (final Path updateDir : dirStream) {
+                    if (Files.isHidden(updateDir))
+                        continue; // Skip hidden
 
-                // Add from previous map (it's guaranteed to be non-null)
-                if (dirs != null && !dirs.contains(name)) {
-                    HashedDir hdir = updatesDirMap.get(name);
-                    if (hdir != null) {
-                        newUpdatesDirMap.put(name, hdir);
+                    // Resolve name and verify is dir
+                    String name = IOHelper.getFileName(updateDir);
+                    if (!IOHelper.isDir(updateDir)) {
+                        if (!IOHelper.isFile(updateDir) && Stream.of(".jar", ".exe", ".hash").noneMatch(e -> updateDir.toString().endsWith(e)))
+                            logger.warn("Not update dir: '{}'", name);
                         continue;
                     }
+
+                    // Add from previous map (it's guaranteed to be non-null)
+                    UpdateDir previous = updatesDirMap == null ? null : updatesDirMap.get(name);
+                    if (dirs != null && !dirs.contains(name) && previous != null) {
+                        newUpdatesDirMap.put(name, previous);
+                        continue;
+                    }
+
+                    // Sync and sign update dir, files of all dirs are hashed concurrently
+                    // Unchanged files (same size, mtime and file key) reuse digest from previous sync
+                    logger.info("Syncing '{}' update dir", name);
+                    HashedFileCache fileCache = syncFileCache(previous);
+                    if (fileCache != null) newFileCacheMap.put(name, fileCache);
+                    syncDirs.put(name, hasher.hash(updateDir, null, true, true, fileCache));
+                }
+            }
+            CompletableFuture<Void> all = CompletableFuture.allOf(syncDirs.values().toArray(new CompletableFuture<?>[0]));
+            while (true) {
+                try {
+                    all.get(5, TimeUnit.SECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    logger.info("Hashed {}/{} files, {}/{} MB ({} MB/s)", hasher.getHashedFiles(), hasher.getTotalFiles(),
+                            hasher.getHashedBytes() >> 20, hasher.getTotalBytes() >> 20, getSpeed(hasher.getHashedBytes(), startTime));
                 }
+            }
+            for (Map.Entry<String, CompletableFuture<HashedDir>> entry : syncDirs.entrySet()) {
+                newUpdatesDirMap.put(entry.getKey(), new UpdateDir(null, entry.getKey(), entry.getValue().join(), newFileCacheMap.get(entry.getKey()), false));
+            }
+            if (!syncDirs.isEmpty()) {
+                logger.info("Hashed {} files, {} MB in {} ms ({} MB/s), {} unchanged files skipped", hasher.getHashedFiles(), hasher.getHashedBytes() >> 20,
+                        System.currentTimeMillis() - startTime, getSpeed(hasher.getHashedBytes(), startTime), hasher.getReusedFiles());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Updates sync interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        compactUpdates(newUpdatesDirMap);
+        updatesDirMap = Collections.unmodifiableMap(newUpdatesDirMap);
+        cleanUpdatePayloads();
+        saveCache();
+        onSync(new LaunchServerUpdatesSyncEvent(server));
+    }
 
-                // Sync and sign update dir
-                logger.info("Syncing '{}' update dir", name);
-                HashedDir updateHDir = new HashedDir(updateDir, null, true, true);
-                newUpdatesDirMap.put(name, updateHDir);
+    /**
+     * Patch updates index after changes of paths (relative to updatesDir, '/' separated)
+     * Only changed entries are hashed again, unchanged subtrees are shared with the previous index
+     */
+    public synchronized void syncUpdatesPaths(Collection<String> paths) throws IOException {
+        if (updatesDirMap == null)
+            return; // Not synced yet, full sync will see these changes
+        Map<String, UpdateDir> newUpdatesDirMap = new HashMap<>(updatesDirMap);
+        Set<String> changed = new HashSet<>();
+        for (String path : paths) {
+            List<String> parts = Arrays.asList(path.split("/"));
+            if (isParentChanged(paths, parts))
+                continue; // Parent dir is hashed again
+            String name = parts.get(0);
+            Path updateDir = server.updatesDir.resolve(name);
+            UpdateDir previous = newUpdatesDirMap.get(name);
+            HashedDir hdir = previous == null ? null : previous.getDir();
+            if (parts.size() == 1 || hdir == null) {
+                if (IOHelper.isDir(updateDir) && !Files.isHidden(updateDir)) {
+                    HashedFileCache fileCache = syncFileCache(previous);
+                    newUpdatesDirMap.put(name, new UpdateDir(null, name, hashUpdateDir(updateDir, fileCache), fileCache, false));
+                    changed.add(name);
+                } else if (newUpdatesDirMap.remove(name) != null) {
+                    changed.add(name);
+                }
+                continue;
             }
+            // Patch from the first dir missing in index, it may be created with all its content
+            List<String> subPath = parts.subList(1, parts.size());
+            HashedDir current = hdir;
+            for (int i = 0; i < subPath.size() - 1; ++i) {
+                HashedEntry entry = current.getEntry(subPath.get(i));
+                if (!(entry instanceof HashedDir)) {
+                    subPath = subPath.subList(0, i + 1);
+                    break;
+                }
+                current = (HashedDir) entry;
+            }
+            Path file = updateDir;
+            for (String element : subPath)
+                file = file.resolve(IOHelper.verifyFileName(element));
+            newUpdatesDirMap.put(name, previous.withDir(hdir.patch(subPath, hashEntry(file))));
+            changed.add(name + "/" + String.join("/", subPath));
         }
+        if (changed.isEmpty())
+            return;
+        logger.info("Updates changed: {}", changed);
+        compactUpdates(newUpdatesDirMap);
         updatesDirMap = Collections.unmodifiableMap(newUpdatesDirMap);
-        if (server.config.cacheUpdates) {
+        cleanUpdatePayloads();
+        saveCache();
+        onSync(new LaunchServerUpdatesSyncEvent(server, Collections.unmodifiableSet(changed)));
+    }
+
+    private void onSync(LaunchServerUpdatesSyncEvent event) {
+        try {
+            syncHook.hook(event);
+        } catch (HookException e) {
+            logger.error("Updates sync hook failed", e);
+        }
+        server.modulesManager.invokeEvent(event);
+    }
+
+    // Published dirs are only read, packed maps take several times less heap than HashMap
+    private static void compactUpdates(Map<String, UpdateDir> updatesDirMap) {
+        Map<String, String> names = new HashMap<>();
+        for (UpdateDir updateDir : updatesDirMap.values()) {
+            if (updateDir.dir != null)
+                updateDir.dir.compact(names);
+        }
+    }
+
+    private static boolean isParentChanged(Collection<String> paths, List<String> parts) {
+        StringBuilder parent = new StringBuilder();
+        for (int i = 0; i < parts.size() - 1; ++i) {
+            if (i > 0) parent.append('/');
+            parent.append(parts.get(i));
+            if (paths.contains(parent.toString()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return digest cache of previous sync, null if incremental sync is disabled
+     */
+    private HashedFileCache syncFileCache(UpdateDir previous) {
+        if (!server.config.incrementalSyncUpdates)
+            return null;
+        HashedFileCache fileCache = previous == null ? null : previous.getFileCache();
+        return fileCache == null ? new HashedFileCache() : fileCache;
+    }
+
+    private static HashedDir hashUpdateDir(Path dir, HashedFileCache fileCache) throws IOException {
+        try {
+            return new HashedDirHasher(Runnable::run).hash(dir, null, true, true, fileCache).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static HashedEntry hashEntry(Path file) throws IOException {
+        if (IOHelper.isDir(file))
+            return new HashedDir(file, null, true, true);
+        if (IOHelper.isFile(file))
+            return new HashedFile(file, IOHelper.readAttributes(file).size(), true);
+        return null; // Deleted
+    }
+
+    public synchronized void startWatcher(long delayMillis) throws IOException {
+        if (watcher != null)
+            return;
+        watcher = new UpdatesWatcher(this, server.updatesDir, delayMillis);
+        CommonHelper.newThread("Updates Watcher Thread", true, watcher).start();
+    }
+
+    public synchronized void stopWatcher() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    public ByteBuf getUpdatePayload(String name) {
+        return getUpdatePayload(name, false);
+    }
+
+    /**
+     * Serialized UpdateRequestEvent without requestUUID and closing brace, or without requestUUID in binary protocol
+     * Built once per synced HashedDir and shared by all requests, caller must release returned buffer
+     *
+     * @return null if update dir not found
+     */
+    public ByteBuf getUpdatePayload(String name, boolean binary) {
+        Map<String, UpdatePayload> cache = binary ? binaryPayloadCache : payloadCache;
+        while (true) {
+            HashedDir dir = getUpdate(name);
+            if (dir == null)
+                return null;
+            UpdatePayload payload = cache.compute(name, (k, old) -> {
+                if (old != null && old.dir == dir)
+                    return old;
+                if (old != null)
+                    old.buffer.release();
+                return new UpdatePayload(dir, binary ? encodeBinaryUpdate(name, dir) : encodeUpdate(name, dir));
+            });
             try {
-                writeCache(cacheFile);
-            } catch (Throwable e) {
-                logger.error("Write updates cache failed", e);
+                return payload.buffer.retainedDuplicate();
+            } catch (IllegalReferenceCountException ignored) {
+                // Replaced by concurrent sync, try again
             }
         }
-        server.modulesManager.invokeEvent(new LaunchServerUpdatesSyncEvent(server));
+    }
+
+    private UpdateRequestEvent newUpdateEvent(String name, HashedDir dir) {
+        String url = server.config.netty.downloadURL.replace("%dirname%", IOHelper.urlEncode(name));
+        boolean zip = false;
+        LaunchServerConfig.NettyUpdatesBind bind = server.config.netty.bindings.get(name);
+        if (bind != null) {
+            url = bind.url;
+            zip = bind.zip;
+        }
+        return new UpdateRequestEvent(dir, url, zip);
+    }
+
+    private ByteBuf encodeBinaryUpdate(String name, HashedDir dir) {
+        ByteBuf buffer = ByteBufAllocator.DEFAULT.directBuffer();
+        try (HOutput output = new HOutput(new ByteBufOutputStream(buffer))) {
+            WebSocketBinaryProtocol.events.writeBody(output, Launcher.gsonManager.gson, newUpdateEvent(name, dir));
+        } catch (IOException e) {
+            buffer.release();
+            throw new UncheckedIOException(e);
+        }
+        logger.debug("Update '{}' binary payload encoded: {} KB", name, buffer.readableBytes() >> 10);
+        return buffer;
+    }
+
+    private ByteBuf encodeUpdate(String name, HashedDir dir) {
+        String json = Launcher.gsonManager.gson.toJson(newUpdateEvent(name, dir), WebSocketEvent.class);
+        byte[] bytes = json.substring(0, json.lastIndexOf('}')).getBytes(StandardCharsets.UTF_8);
+        ByteBuf buffer = ByteBufAllocator.DEFAULT.directBuffer(bytes.length, bytes.length);
+        buffer.writeBytes(bytes);
+        logger.debug("Update '{}' payload encoded: {} KB", name, bytes.length >> 10);
+        return buffer;
+    }
+
+    private void cleanUpdatePayloads() {
+        cleanUpdatePayloads(payloadCache);
+        cleanUpdatePayloads(binaryPayloadCache);
+    }
+
+    private void cleanUpdatePayloads(Map<String, UpdatePayload> cache) {
+        cache.forEach((name, payload) -> {
+            UpdateDir updateDir = updatesDirMap.get(name);
+            if ((updateDir == null || updateDir.dir != payload.dir) && cache.remove(name, payload))
+                payload.buffer.release();
+        });
+    }
+
+    private static long getSpeed(long bytes, long startTime) {
+        long millis = System.currentTimeMillis() - startTime;
+        return millis <= 0 ? 0 : (bytes * 1000 / millis) >> 20;
     }
 
     public HashSet<String> getUpdatesList() {
         HashSet<String> set = new HashSet<>();
-        for (Map.Entry<String, HashedDir> entry : updatesDirMap.entrySet())
+        for (Map.Entry<String, UpdateDir> entry : updatesDirMap.entrySet())
             set.add(entry.getKey());
         return set;
     }
 
+    /**
+     * Never reads or hashes files, it is called on event loop threads
+     */
     public HashedDir getUpdate(String name) {
-        return updatesDirMap.get(name);
+        UpdateDir updateDir = updatesDirMap.get(name);
+        return updateDir == null ? null : updateDir.getDir();
+    }
+
+    public synchronized void addUpdate(String name, HashedDir dir) {
+        Map<String, UpdateDir> newUpdatesDirMap = new HashMap<>(updatesDirMap);
+        newUpdatesDirMap.put(name, new UpdateDir(null, name, dir, null, false));
+        updatesDirMap = Collections.unmodifiableMap(newUpdatesDirMap);
+        cleanUpdatePayloads();
     }
 
-    public void addUpdate(String name, HashedDir dir) {
-        updatesDirMap.put(name, dir);
+    /**
+     * Update dir and digest cache, digest cache is lazily read from memory-mapped updates cache if manifest isn't null
+     */
+    private final class UpdateDir {
+        private final HashedDirManifest manifest;
+        private final String name;
+        private final HashedDir dir;
+        // Dir is the same as in manifest, it is copied to the new cache without serialization
+        private final boolean cachedDir;
+        private volatile HashedFileCache fileCache;
+
+        private UpdateDir(HashedDirManifest manifest, String name, HashedDir dir, HashedFileCache fileCache, boolean cachedDir) {
+            this.manifest = manifest;
+            this.name = name;
+            this.dir = dir;
+            this.fileCache = fileCache;
+            this.cachedDir = cachedDir;
+        }
+
+        private UpdateDir withDir(HashedDir dir) {
+            return new UpdateDir(manifest, name, dir, fileCache, false);
+        }
+
+        private HashedDir getDir() {
+            return dir;
+        }
+
+        private HashedFileCache getFileCache() {
+            HashedFileCache result = fileCache;
+            if (result != null || manifest == null || !manifest.hasFileCache(name))
+                return result;
+            synchronized (this) {
+                if (fileCache == null) {
+                    try {
+                        fileCache = manifest.readFileCache(name);
+                    } catch (IOException e) {
+                        logger.warn("Updates cache of '{}' is corrupted, hash all files", name);
+                        fileCache = new HashedFileCache();
+                    }
+                }
+                return fileCache;
+            }
+        }
+
+        private void write(String name, HashedDirManifest.Writer writer) throws IOException {
+            if (cachedDir) writer.copyDir(name, manifest);
+            else writer.putDir(name, dir);
+            HashedFileCache fileCache = this.fileCache;
+            if (fileCache != null) writer.putFileCache(name, fileCache);
+            else if (manifest != null) writer.copyFileCache(name, manifest);
+        }
+    }
+
+    private static final class UpdatePayload {
+        private final HashedDir dir;
+        private final ByteBuf buffer;
+
+        private UpdatePayload(HashedDir dir, ByteBuf buffer) {
+            this.dir = dir;
+            this.buffer = buffer;
+        }
     }
 }
@@ -0,0 +1,121 @@
+package pro.gravit.launchserver.manangers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import pro.gravit.utils.helper.IOHelper;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches updates dir and patches UpdatesManager index after changes
+ * Bursts of changes are collected until there are no new events for delayMillis
+ */
+public class UpdatesWatcher implements Runnable, AutoCloseable {
+    private static final WatchEvent.Kind<?>[] KINDS = {
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE
+    };
+    // Continuous changes are applied at least once per MAX_DELAY_FACTOR * delayMillis
+    private static final int MAX_DELAY_FACTOR = 10;
+    private transient final Logger logger = LogManager.getLogger();
+    private final UpdatesManager manager;
+    private final Path dir;
+    private final long delayMillis;
+    private final WatchService service;
+    private boolean fullSync;
+
+    public UpdatesWatcher(UpdatesManager manager, Path dir, long delayMillis) throws IOException {
+        this.manager = manager;
+        this.dir = dir;
+        this.delayMillis = delayMillis;
+        this.service = dir.getFileSystem().newWatchService();
+        register(dir);
+        logger.info("Watching updates dir {}", dir);
+    }
+
+    private void register(Path start) throws IOException {
+        IOHelper.walk(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(service, KINDS);
+                return super.preVisitDirectory(dir, attrs);
+            }
+        }, true);
+    }
+
+    private String toRelativePath(Path path) {
+        StringBuilder builder = new StringBuilder();
+        for (Path element : dir.relativize(path)) {
+            if (builder.length() > 0) builder.append('/');
+            builder.append(element);
+        }
+        return builder.toString();
+    }
+
+    private void processKey(WatchKey key, Set<String> changed) {
+        Path watchDir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind.equals(StandardWatchEventKinds.OVERFLOW)) {
+                String relative = toRelativePath(watchDir);
+                if (relative.isEmpty()) fullSync = true;
+                else changed.add(relative);
+                continue;
+            }
+            Path path = watchDir.resolve((Path) event.context());
+            boolean isDir = Files.isDirectory(path);
+            if (kind.equals(StandardWatchEventKinds.ENTRY_MODIFY) && isDir)
+                continue; // Children are watched separately
+            if (kind.equals(StandardWatchEventKinds.ENTRY_CREATE) && isDir) {
+                try {
+                    register(path);
+                } catch (IOException e) {
+                    logger.debug("Failed to watch {}: {}", path, e.toString());
+                }
+            }
+            changed.add(toRelativePath(path));
+        }
+        key.reset();
+    }
+
+    private void processLoop() throws InterruptedException {
+        while (!Thread.interrupted()) {
+            Set<String> changed = new HashSet<>();
+            processKey(service.take(), changed);
+            long deadline = System.currentTimeMillis() + delayMillis * MAX_DELAY_FACTOR;
+            WatchKey key;
+            while (System.currentTimeMillis() < deadline && (key = service.poll(delayMillis, TimeUnit.MILLISECONDS)) != null) {
+                processKey(key, changed);
+            }
+            try {
+                if (fullSync) {
+                    fullSync = false;
+                    logger.warn("Updates watcher overflow, full sync");
+                    manager.syncUpdatesDir(null);
+                } else if (!changed.isEmpty()) {
+                    manager.syncUpdatesPaths(changed);
+                }
+            } catch (Throwable e) {
+                logger.error("Updates watcher sync failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            processLoop();
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            logger.debug("Updates watcher closed");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}
@@ -3,10 +3,21 @@ package pro.gravit.launchserver.modules.events;
 import pro.gravit.launcher.modules.LauncherModule;
 import pro.gravit.launchserver.LaunchServer;
 
+import java.util.Set;
+
 public class LaunchServerUpdatesSyncEvent extends LauncherModule.Event {
     public final LaunchServer server;
+    /**
+     * Changed paths relative to updatesDir ('/' separated) or null after full sync
+     */
+    public final Set<String> changedPaths;
 
     public LaunchServerUpdatesSyncEvent(LaunchServer server) {
+        this(server, null);
+    }
+
+    public LaunchServerUpdatesSyncEvent(LaunchServer server, Set<String> changedPaths) {
         this.server = server;
+        this.changedPaths = changedPaths;
     }
 }
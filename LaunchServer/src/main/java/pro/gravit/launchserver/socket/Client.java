@@ -13,22 +13,23 @@ import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class Client {
+    // Auth state is written by responses on executor threads and read by other channels and event loops
     public String auth_id;
     public long timestamp;
     public AuthResponse.ConnectTypes type;
-    public ClientProfile profile;
-    public boolean isAuth;
+    public volatile ClientProfile profile;
+    public volatile boolean isAuth;
     public boolean checkSign;
-    public ClientPermissions permissions;
-    public String username;
-    public UUID uuid;
+    public volatile ClientPermissions permissions;
+    public volatile String username;
+    public volatile UUID uuid;
     public TrustLevel trustLevel;
 
-    public transient AuthProviderPair auth;
+    public transient volatile AuthProviderPair auth;
 
-    public transient pro.gravit.launchserver.auth.core.User coreObject;
+    public transient volatile pro.gravit.launchserver.auth.core.User coreObject;
 
-    public transient pro.gravit.launchserver.auth.core.UserSession sessionObject;
+    public transient volatile pro.gravit.launchserver.auth.core.UserSession sessionObject;
 
     public transient Map<String, Object> properties;
 
@@ -9,20 +9,28 @@ import io.netty.channel.epoll.Epoll;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketServerCompressionHandler;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import pro.gravit.launcher.request.websockets.WebSocketBinaryProtocol;
 import pro.gravit.launchserver.LaunchServer;
 import pro.gravit.launchserver.config.LaunchServerConfig;
+import pro.gravit.launchserver.socket.handlers.MetricsSeverlet;
 import pro.gravit.launchserver.socket.handlers.NettyIpForwardHandler;
 import pro.gravit.launchserver.socket.handlers.NettyWebAPIHandler;
 import pro.gravit.launchserver.socket.handlers.WebSocketFrameHandler;
+import pro.gravit.launchserver.manangers.UpdatesManager;
+import pro.gravit.launchserver.modules.events.LaunchServerUpdatesSyncEvent;
+import pro.gravit.launchserver.socket.handlers.fileserver.FileServerCache;
 import pro.gravit.launchserver.socket.handlers.fileserver.FileServerHandler;
 import pro.gravit.utils.BiHookSet;
+import pro.gravit.utils.HookSet;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.TimeUnit;
@@ -33,8 +41,15 @@ public class LauncherNettyServer implements AutoCloseable {
     public final EventLoopGroup bossGroup;
     public final EventLoopGroup workerGroup;
     public final WebSocketService service;
+    public final FileServerCache fileServerCache;
     public final BiHookSet<NettyConnectContext, SocketChannel> pipelineHook = new BiHookSet<>();
     private transient final Logger logger = LogManager.getLogger();
+    private final UpdatesManager updatesManager;
+    private final NettyWebAPIHandler.SeverletPathPair metricsSeverlet;
+    private final HookSet.Hook<LaunchServerUpdatesSyncEvent> fileServerSyncHook = (event) -> {
+        fileServerCache.invalidate(event.changedPaths);
+        return false;
+    };
 
     public LauncherNettyServer(LaunchServer server) {
         LaunchServerConfig.NettyConfig config = server.config.netty;
@@ -49,6 +64,19 @@ public class LauncherNettyServer implements AutoCloseable {
         workerGroup = NettyObjectFactory.newEventLoopGroup(config.performance.workerThread, "LauncherNettyServer.workerGroup");
         serverBootstrap = new ServerBootstrap();
         service = new WebSocketService(new DefaultChannelGroup(GlobalEventExecutor.INSTANCE), server);
+        if (config.fileServerEnabled && config.fileServer.cacheMaxBytes > 0) {
+            fileServerCache = new FileServerCache(config.fileServer);
+            this.updatesManager = server.updatesManager;
+            updatesManager.syncHook.registerHook(fileServerSyncHook);
+        } else {
+            fileServerCache = null;
+            this.updatesManager = null;
+        }
+        if (config.metricsEnabled) {
+            metricsSeverlet = NettyWebAPIHandler.addSeverlet(HttpMethod.GET, "/webapi/metrics", false, new MetricsSeverlet(this, config.metricsToken));
+        } else {
+            metricsSeverlet = null;
+        }
         serverBootstrap.group(bossGroup, workerGroup)
                 .channelFactory(NettyObjectFactory.getServerSocketChannelFactory())
                 .handler(new LoggingHandler(config.logLevel))
@@ -63,11 +91,13 @@ public class LauncherNettyServer implements AutoCloseable {
                         if (server.config.netty.ipForwarding)
                             pipeline.addLast("forward-http", new NettyIpForwardHandler(context));
                         pipeline.addLast("websock-comp", new WebSocketServerCompressionHandler());
-                        pipeline.addLast("websock-codec", new WebSocketServerProtocolHandler(WEBSOCKET_PATH, null, true, server.config.netty.performance.maxWebSocketRequestBytes));
+                        pipeline.addLast("websock-codec", new WebSocketServerProtocolHandler(WEBSOCKET_PATH, WebSocketBinaryProtocol.SUBPROTOCOL, true, server.config.netty.performance.maxWebSocketRequestBytes));
                         if (!server.config.netty.disableWebApiInterface)
                             pipeline.addLast("webapi", new NettyWebAPIHandler(context));
-                        if (server.config.netty.fileServerEnabled)
-                            pipeline.addLast("fileserver", new FileServerHandler(server.updatesDir, true, config.showHiddenFiles));
+                        if (server.config.netty.fileServerEnabled) {
+                            pipeline.addLast("fileserver-chunked", new ChunkedWriteHandler());
+                            pipeline.addLast("fileserver", new FileServerHandler(server.updatesDir, true, config.showHiddenFiles, server.updatesManager, config.fileServer, fileServerCache));
+                        }
                         pipeline.addLast("launchserver", new WebSocketFrameHandler(context, server, service));
                         pipelineHook.hook(context, ch);
                     }
@@ -82,5 +112,13 @@ public class LauncherNettyServer implements AutoCloseable {
     public void close() {
         workerGroup.shutdownGracefully(2, 5, TimeUnit.SECONDS);
         bossGroup.shutdownGracefully(2, 5, TimeUnit.SECONDS);
+        service.executor.close();
+        if (metricsSeverlet != null) {
+            NettyWebAPIHandler.removeSeverlet(metricsSeverlet);
+        }
+        if (fileServerCache != null) {
+            updatesManager.syncHook.unregisterHook(fileServerSyncHook);
+            fileServerCache.clear();
+        }
     }
 }
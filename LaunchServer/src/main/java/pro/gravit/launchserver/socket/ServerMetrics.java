@@ -0,0 +1,111 @@
+package pro.gravit.launchserver.socket;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import pro.gravit.launchserver.helper.LatencyHistogram;
+import pro.gravit.utils.helper.JVMHelper;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counters and latency histograms of WebSocketService
+ * Gauges are read when metrics are written
+ */
+public class ServerMetrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    public final LongAdder requests = new LongAdder();
+    public final LongAdder errors = new LongAdder();
+    public final LongAdder rejected = new LongAdder();
+    public final LongAdder authSuccess = new LongAdder();
+    public final LongAdder authFailure = new LongAdder();
+    private final Map<String, LatencyHistogram> requestLatency = new ConcurrentHashMap<>();
+
+    public void recordRequest(String type, long nanos) {
+        requests.increment();
+        getRequestLatency(type).record(nanos);
+    }
+
+    public LatencyHistogram getRequestLatency(String type) {
+        String key = type == null ? "unknown" : type;
+        LatencyHistogram histogram = requestLatency.get(key);
+        if (histogram == null) {
+            histogram = requestLatency.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        return histogram;
+    }
+
+    public Map<String, LatencyHistogram> getRequestLatencies() {
+        return new TreeMap<>(requestLatency);
+    }
+
+    /**
+     * Write metrics in Prometheus text exposition format
+     */
+    public void writePrometheus(StringBuilder builder, LauncherNettyServer server) {
+        type(builder, "launchserver_requests_total", "counter");
+        value(builder, "launchserver_requests_total", null, requests.sum());
+        type(builder, "launchserver_request_errors_total", "counter");
+        value(builder, "launchserver_request_errors_total", null, errors.sum());
+        type(builder, "launchserver_requests_rejected_total", "counter");
+        value(builder, "launchserver_requests_rejected_total", null, rejected.sum());
+        type(builder, "launchserver_auth_total", "counter");
+        value(builder, "launchserver_auth_total", "result=\"success\"", authSuccess.sum());
+        value(builder, "launchserver_auth_total", "result=\"failure\"", authFailure.sum());
+        type(builder, "launchserver_request_duration_seconds", "summary");
+        for (Map.Entry<String, LatencyHistogram> entry : getRequestLatencies().entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            String label = "type=\"" + escape(entry.getKey()) + "\"";
+            for (double quantile : QUANTILES) {
+                value(builder, "launchserver_request_duration_seconds", label + ",quantile=\"" + quantile + "\"",
+                        histogram.getValueAtPercentile(quantile * 100) / 1e6);
+            }
+            value(builder, "launchserver_request_duration_seconds_sum", label, histogram.getSumMicros() / 1e6);
+            value(builder, "launchserver_request_duration_seconds_count", label, histogram.getCount());
+        }
+        type(builder, "launchserver_connections", "gauge");
+        value(builder, "launchserver_connections", null, server.service.channels.size());
+        type(builder, "launchserver_executor_queued", "gauge");
+        for (Map.Entry<String, WebSocketResponseExecutor.ResponseStats> entry : new TreeMap<>(server.service.executor.getStats()).entrySet()) {
+            value(builder, "launchserver_executor_queued", "type=\"" + escape(entry.getKey()) + "\"", entry.getValue().queued.get());
+        }
+        type(builder, "launchserver_eventloop_pending_tasks", "gauge");
+        int loop = 0;
+        for (EventExecutor executor : server.workerGroup) {
+            if (executor instanceof SingleThreadEventExecutor singleThreadExecutor) {
+                value(builder, "launchserver_eventloop_pending_tasks", "loop=\"" + loop + "\"", singleThreadExecutor.pendingTasks());
+            }
+            loop++;
+        }
+        PooledByteBufAllocatorMetric allocatorMetric = PooledByteBufAllocator.DEFAULT.metric();
+        type(builder, "launchserver_allocator_used_bytes", "gauge");
+        value(builder, "launchserver_allocator_used_bytes", "memory=\"heap\"", allocatorMetric.usedHeapMemory());
+        value(builder, "launchserver_allocator_used_bytes", "memory=\"direct\"", allocatorMetric.usedDirectMemory());
+        type(builder, "launchserver_allocator_thread_local_caches", "gauge");
+        value(builder, "launchserver_allocator_thread_local_caches", null, allocatorMetric.numThreadLocalCaches());
+        type(builder, "launchserver_jvm_memory_bytes", "gauge");
+        value(builder, "launchserver_jvm_memory_bytes", "area=\"total\"", JVMHelper.RUNTIME.totalMemory());
+        value(builder, "launchserver_jvm_memory_bytes", "area=\"free\"", JVMHelper.RUNTIME.freeMemory());
+    }
+
+    private static void type(StringBuilder builder, String name, String type) {
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void value(StringBuilder builder, String name, String labels, double value) {
+        builder.append(name);
+        if (labels != null) builder.append('{').append(labels).append('}');
+        builder.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) builder.append((long) value);
+        else builder.append(value);
+        builder.append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
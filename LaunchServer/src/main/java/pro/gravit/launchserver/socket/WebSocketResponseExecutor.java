@@ -0,0 +1,241 @@
+package pro.gravit.launchserver.socket;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import pro.gravit.launchserver.config.LaunchServerConfig;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Executes blocking websocket responses outside of netty event loop
+ * Results are written with ctx.writeAndFlush and netty moves them back to the channel event loop
+ * Responses of one channel are executed one by one in order of arrival, see {@link ChannelQueue}
+ */
+public class WebSocketResponseExecutor implements AutoCloseable {
+    private transient final Logger logger = LogManager.getLogger();
+    private final ExecutorService executor;
+    private final Map<String, ResponseStats> stats = new ConcurrentHashMap<>();
+    private final int maxInFlightPerChannel;
+    // Continuations of accepted responses are never rejected, they run in caller thread if queue is full
+    private final Executor continuationExecutor = task -> {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    };
+
+    public WebSocketResponseExecutor(LaunchServerConfig.NettyExecutorConfig config) {
+        this.executor = config == null ? null : createExecutor(config);
+        this.maxInFlightPerChannel = config == null ? 0 : config.maxInFlightPerChannel;
+    }
+
+    private ExecutorService createExecutor(LaunchServerConfig.NettyExecutorConfig config) {
+        switch (config.type) {
+            case NONE:
+                logger.warn("Netty: responses and async auth completions are executed in event loops, blocking calls of auth providers stall them");
+                return null;
+            case VIRTUAL:
+                try {
+                    ExecutorService virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                    logger.debug("Netty: blocking responses executed in virtual threads");
+                    return virtual;
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    logger.warn("Virtual threads are not supported by this JVM. Using fixed thread pool");
+                }
+            case FIXED:
+            default:
+                int threads = config.threads > 0 ? config.threads : Runtime.getRuntime().availableProcessors() * 2;
+                BlockingQueue<Runnable> queue = config.queueSize > 0 ? new ArrayBlockingQueue<>(config.queueSize) : new LinkedBlockingQueue<>();
+                logger.debug("Netty: blocking responses executed in {} threads", threads);
+                return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, queue,
+                        new NettyThreadFactory("LauncherNettyServer.responseExecutor"), new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Submit blocking response task
+     *
+     * @param type response type, used for statistic
+     * @param task response task
+     * @return false if executor queue is full
+     */
+    public boolean submit(String type, Runnable task) {
+        ResponseStats responseStats = stats.computeIfAbsent(type, k -> new ResponseStats());
+        long submitTime = System.nanoTime();
+        responseStats.queued.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                responseStats.queued.decrementAndGet();
+                responseStats.addWaitTime(System.nanoTime() - submitTime);
+                try {
+                    task.run();
+                } finally {
+                    responseStats.completed.increment();
+                }
+            });
+            responseStats.submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            responseStats.queued.decrementAndGet();
+            responseStats.rejected.increment();
+            return false;
+        }
+    }
+
+    public Executor getContinuationExecutor() {
+        return continuationExecutor;
+    }
+
+    public ChannelQueue newChannelQueue() {
+        return new ChannelQueue(maxInFlightPerChannel);
+    }
+
+    public Map<String, ResponseStats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Serial queue of one channel: next response is submitted to executor when previous one is completed,
+     * including completion of its async part
+     * Each task is handed to the next one through the queue lock and executor submission,
+     * so client state written by a response is visible to all later responses of the channel
+     */
+    public final class ChannelQueue {
+        // Head is running task, other tasks are waiting for it
+        private final Deque<QueuedTask> pending = new ArrayDeque<>();
+        private final int maxInFlight;
+        private boolean running;
+
+        private ChannelQueue(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        /**
+         * @param type     response type, used for statistic
+         * @param task     response task, returns null or future of its async part
+         * @param rejected called instead of task if executor queue is full
+         * @return false if channel already has maxInFlight running and waiting responses
+         */
+        public boolean submit(String type, Supplier<CompletableFuture<?>> task, Runnable rejected) {
+            return submit(type, task, rejected, null);
+        }
+
+        /**
+         * @param runner executor of the task, e.g. channel event loop for non-blocking response, null - response executor
+         */
+        public boolean submit(String type, Supplier<CompletableFuture<?>> task, Runnable rejected, Executor runner) {
+            synchronized (this) {
+                if (maxInFlight > 0 && pending.size() >= maxInFlight) {
+                    return false;
+                }
+                pending.addLast(new QueuedTask(type, task, rejected, runner));
+                if (running) {
+                    return true;
+                }
+                running = true;
+            }
+            runNext();
+            return true;
+        }
+
+        public synchronized int size() {
+            return pending.size();
+        }
+
+        /**
+         * @return true if channel has no running or waiting responses
+         */
+        public synchronized boolean isIdle() {
+            return !running;
+        }
+
+        private void runNext() {
+            while (true) {
+                QueuedTask next;
+                synchronized (this) {
+                    next = pending.peekFirst();
+                    if (next == null) {
+                        running = false;
+                        return;
+                    }
+                }
+                Runnable task = () -> {
+                    CompletableFuture<?> completion = null;
+                    try {
+                        completion = next.task.get();
+                    } finally {
+                        if (completion == null) complete();
+                        else completion.whenComplete((result, error) -> complete());
+                    }
+                };
+                if (next.runner == null ? WebSocketResponseExecutor.this.submit(next.type, task) : execute(next.runner, task)) {
+                    return;
+                }
+                synchronized (this) {
+                    pending.pollFirst();
+                }
+                next.rejected.run();
+            }
+        }
+
+        private boolean execute(Executor runner, Runnable task) {
+            try {
+                runner.execute(task);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+
+        private void complete() {
+            synchronized (this) {
+                pending.pollFirst();
+            }
+            runNext();
+        }
+    }
+
+    private record QueuedTask(String type, Supplier<CompletableFuture<?>> task, Runnable rejected, Executor runner) {
+    }
+
+    public static class ResponseStats {
+        public final AtomicInteger queued = new AtomicInteger();
+        public final LongAdder submitted = new LongAdder();
+        public final LongAdder started = new LongAdder();
+        public final LongAdder completed = new LongAdder();
+        public final LongAdder rejected = new LongAdder();
+        public final LongAdder waitNanos = new LongAdder();
+        public final AtomicLong maxWaitNanos = new AtomicLong();
+
+        private void addWaitTime(long nanos) {
+            started.increment();
+            waitNanos.add(nanos);
+            maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getAverageWaitMillis() {
+            long count = started.sum();
+            return count == 0 ? 0 : (waitNanos.sum() / count) / 1_000_000;
+        }
+    }
+}
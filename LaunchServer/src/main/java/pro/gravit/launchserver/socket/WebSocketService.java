@@ -1,12 +1,22 @@
 package pro.gravit.launchserver.socket;
 
 import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoop;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.ChannelMatchers;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.AttributeKey;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pro.gravit.launcher.Launcher;
@@ -14,6 +24,9 @@ import pro.gravit.launcher.events.RequestEvent;
 import pro.gravit.launcher.events.request.ErrorRequestEvent;
 import pro.gravit.launcher.events.request.ExitRequestEvent;
 import pro.gravit.launcher.request.WebSocketEvent;
+import pro.gravit.launcher.request.websockets.WebSocketBinaryProtocol;
+import pro.gravit.launcher.serialize.HInput;
+import pro.gravit.launcher.serialize.HOutput;
 import pro.gravit.launchserver.LaunchServer;
 import pro.gravit.launchserver.socket.handlers.WebSocketFrameHandler;
 import pro.gravit.launchserver.socket.response.SimpleResponse;
@@ -33,15 +46,31 @@ import pro.gravit.launchserver.socket.response.update.UpdateListResponse;
 import pro.gravit.launchserver.socket.response.update.UpdateResponse;
 import pro.gravit.utils.BiHookSet;
 import pro.gravit.utils.ProviderMap;
+import pro.gravit.utils.TypeSerializeInterface;
 import pro.gravit.utils.helper.IOHelper;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 
 public class WebSocketService {
     public static final ProviderMap<WebSocketServerResponse> providers = new ProviderMap<>();
+    /**
+     * Set after handshake if client selected binary protocol, events to this channel are sent as binary frames
+     */
+    public static final AttributeKey<Boolean> BINARY_PROTOCOL = AttributeKey.valueOf("launchserver.binary");
+    private static final AttributeKey<IndexKeys> INDEX_KEYS = AttributeKey.valueOf("launchserver.index");
+    private static final AttributeKey<WebSocketResponseExecutor.ChannelQueue> CHANNEL_QUEUE = AttributeKey.valueOf("launchserver.queue");
+    private static final int BROADCAST_BATCH_SIZE = 256;
     public final ChannelGroup channels;
     public final BiHookSet<WebSocketRequestContext, ChannelHandlerContext> hook = new BiHookSet<>();
     //Statistic data
@@ -52,14 +81,23 @@ public class WebSocketService {
     public final AtomicLong longRequestLatency = new AtomicLong();
     public final AtomicLong longRequestCounter = new AtomicLong();
     public final AtomicLong lastRequestTime = new AtomicLong();
+    public final ServerMetrics metrics = new ServerMetrics();
+    public final WebSocketResponseExecutor executor;
     private final LaunchServer server;
     private final Gson gson;
+    // Secondary indexes of channels for targeted sends and kicks
+    private final Map<UUID, Channel> connectChannels = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<Channel>> userChannels = new ConcurrentHashMap<>();
+    private final Map<String, Set<Channel>> ipChannels = new ConcurrentHashMap<>();
+    // Client does not override equals, so it is identity map of clients to their channels
+    private final Map<Client, Channel> clientChannels = new ConcurrentHashMap<>();
     private transient final Logger logger = LogManager.getLogger();
 
     public WebSocketService(ChannelGroup channels, LaunchServer server) {
         this.channels = channels;
         this.server = server;
         this.gson = Launcher.gsonManager.gson;
+        this.executor = new WebSocketResponseExecutor(server.config.netty.performance.executor);
     }
 
     @SuppressWarnings("deprecation")
@@ -103,16 +141,94 @@ public class WebSocketService {
         long startTimeNanos = System.nanoTime();
         String request = frame.text();
         WebSocketServerResponse response = gson.fromJson(request, WebSocketServerResponse.class);
+        process(ctx, response, client, ip, startTimeNanos);
+    }
+
+    public void process(ChannelHandlerContext ctx, BinaryWebSocketFrame frame, Client client, String ip) throws IOException {
+        long startTimeNanos = System.nanoTime();
+        WebSocketServerResponse response = WebSocketBinaryProtocol.requests.read(new HInput(new ByteBufInputStream(frame.content())), gson, providers);
+        process(ctx, response, client, ip, startTimeNanos);
+    }
+
+    private void process(ChannelHandlerContext ctx, WebSocketServerResponse response, Client client, String ip, long startTimeNanos) {
         if (response == null) {
             RequestEvent event = new ErrorRequestEvent("This type of request is not supported");
             sendObject(ctx, event);
             return;
         }
-        process(ctx, response, client, ip);
-        long executeTime = System.nanoTime() - startTimeNanos;
+        // Hooks (limiters, filters) are checked in event loop, rejected requests never take executor queue
+        if (!prepare(ctx, response, client, ip)) {
+            return;
+        }
+        // Non-blocking response waits in channel queue too while blocking one is queued or running,
+        // so responses of one channel are executed in order of arrival and never concurrently
+        boolean blocking = response.isBlocking();
+        WebSocketResponseExecutor.ChannelQueue queue = !executor.isEnabled() ? null : blocking ? getChannelQueue(ctx.channel()) : ctx.channel().attr(CHANNEL_QUEUE).get();
+        if (queue != null && (blocking || !queue.isIdle())) {
+            boolean accepted = queue.submit(response.getType(), () -> {
+                execute(ctx, response, client);
+                return recordRequest(response, startTimeNanos);
+            }, () -> {
+                metrics.rejected.increment();
+                logger.warn("Response executor queue is full. Request {} rejected", response.getType());
+                sendError(ctx, response, "Server overloaded. Try again later");
+            }, blocking ? null : ctx.channel().eventLoop());
+            if (!accepted) {
+                metrics.rejected.increment();
+                logger.debug("Too many requests from {}. Request {} rejected", ip, response.getType());
+                sendError(ctx, response, "Too many requests. Try again later");
+            }
+            return;
+        }
+        execute(ctx, response, client);
+        recordRequest(response, startTimeNanos);
+    }
+
+    /**
+     * Request time of async response is recorded when its result is sent
+     *
+     * @return async part of response or null
+     */
+    private CompletableFuture<?> recordRequest(WebSocketServerResponse response, long startTimeNanos) {
+        CompletableFuture<?> completion = response instanceof SimpleResponse simpleResponse ? simpleResponse.completion : null;
+        if (completion == null) {
+            recordRequestTime(response.getType(), System.nanoTime() - startTimeNanos);
+            return null;
+        }
+        return completion.whenComplete((result, error) -> recordRequestTime(response.getType(), System.nanoTime() - startTimeNanos));
+    }
+
+    private void recordRequestTime(String type, long executeTime) {
         if (executeTime > 0) {
             addRequestTimeToStats(executeTime);
         }
+        metrics.recordRequest(type, executeTime);
+    }
+
+    /**
+     * Executor of async parts of responses: response executor, or channel event loop if it is disabled (executor type NONE,
+     * unsupported with async auth providers because completions make blocking profile calls)
+     */
+    public Executor getCompletionExecutor(Channel channel) {
+        return executor.isEnabled() ? executor.getContinuationExecutor() : channel.eventLoop();
+    }
+
+    private WebSocketResponseExecutor.ChannelQueue getChannelQueue(Channel channel) {
+        WebSocketResponseExecutor.ChannelQueue queue = channel.attr(CHANNEL_QUEUE).get();
+        if (queue == null) {
+            // Frames of one channel are processed in its event loop, no race here
+            queue = executor.newChannelQueue();
+            channel.attr(CHANNEL_QUEUE).set(queue);
+        }
+        return queue;
+    }
+
+    private void sendError(ChannelHandlerContext ctx, WebSocketServerResponse response, String error) {
+        RequestEvent event = new ErrorRequestEvent(error);
+        if (response instanceof SimpleResponse) {
+            event.requestUUID = ((SimpleResponse) response).requestUUID;
+        }
+        sendObject(ctx, event);
     }
 
     public void addRequestTimeToStats(long nanos) {
@@ -131,9 +247,8 @@ public class WebSocketService {
         }
         long lastTime = lastRequestTime.get();
         long currentTime = System.currentTimeMillis();
-        if (currentTime - lastTime > 60 * 1000) //1 minute
+        if (currentTime - lastTime > 60 * 1000 && lastRequestTime.compareAndSet(lastTime, currentTime)) //1 minute, only one thread resets
         {
-            lastRequestTime.set(currentTime);
             shortRequestLatency.set(0);
             shortRequestCounter.set(0);
             middleRequestCounter.set(0);
@@ -145,9 +260,18 @@ public class WebSocketService {
     }
 
     void process(ChannelHandlerContext ctx, WebSocketServerResponse response, Client client, String ip) {
+        if (prepare(ctx, response, client, ip)) {
+            execute(ctx, response, client);
+        }
+    }
+
+    /**
+     * @return false if request is cancelled by hook
+     */
+    private boolean prepare(ChannelHandlerContext ctx, WebSocketServerResponse response, Client client, String ip) {
         WebSocketRequestContext context = new WebSocketRequestContext(response, client, ip);
         if (hook.hook(context, ctx)) {
-            return;
+            return false;
         }
         if (response instanceof SimpleResponse simpleResponse) {
             simpleResponse.server = server;
@@ -156,21 +280,107 @@ public class WebSocketService {
             if (ip != null) simpleResponse.ip = ip;
             else simpleResponse.ip = IOHelper.getIP(ctx.channel().remoteAddress());
         }
+        return true;
+    }
+
+    private void execute(ChannelHandlerContext ctx, WebSocketServerResponse response, Client client) {
         try {
             response.execute(ctx, client);
         } catch (Exception e) {
+            metrics.errors.increment();
             logger.error("WebSocket request processing failed", e);
-            RequestEvent event;
-            event = new ErrorRequestEvent("Fatal server error. Contact administrator");
-            if (response instanceof SimpleResponse) {
-                event.requestUUID = ((SimpleResponse) response).requestUUID;
-            }
-            sendObject(ctx, event);
+            sendError(ctx, response, "Fatal server error. Contact administrator");
         }
     }
 
     public void registerClient(Channel channel) {
         channels.add(channel);
+        WebSocketFrameHandler wsHandler = channel.pipeline().get(WebSocketFrameHandler.class);
+        if (wsHandler == null) return;
+        channel.attr(INDEX_KEYS).set(new IndexKeys(wsHandler.getConnectUUID()));
+        connectChannels.put(wsHandler.getConnectUUID(), channel);
+        updateClientIndex(channel);
+    }
+
+    /**
+     * Updates user uuid and ip indexes of channel of this client, if client is connected
+     * Called by AuthManager.internalAuth, so clients authorized by modules are indexed too
+     */
+    public void updateIndex(Client client) {
+        Channel channel = clientChannels.get(client);
+        if (channel != null) updateClientIndex(channel);
+    }
+
+    /**
+     * Updates user uuid and ip indexes of channel
+     * Must be called after client of channel is authorized, replaced or its ip is changed
+     */
+    public void updateClientIndex(Channel channel) {
+        IndexKeys keys = channel.attr(INDEX_KEYS).get();
+        if (keys == null) return;
+        WebSocketFrameHandler wsHandler = channel.pipeline().get(WebSocketFrameHandler.class);
+        if (wsHandler == null) return;
+        Client client = wsHandler.getClient();
+        UUID userUuid = client == null ? null : client.uuid;
+        String ip = getIPFromChannel(channel);
+        synchronized (keys) {
+            if (keys.removed) return;
+            if (keys.client != client) {
+                if (keys.client != null) clientChannels.remove(keys.client, channel);
+                if (client != null) clientChannels.put(client, channel);
+                keys.client = client;
+            }
+            if (!Objects.equals(keys.userUuid, userUuid)) {
+                removeFromIndex(userChannels, keys.userUuid, channel);
+                addToIndex(userChannels, userUuid, channel);
+                keys.userUuid = userUuid;
+            }
+            if (!Objects.equals(keys.ip, ip)) {
+                removeFromIndex(ipChannels, keys.ip, channel);
+                addToIndex(ipChannels, ip, channel);
+                keys.ip = ip;
+            }
+        }
+    }
+
+    public void unregisterClient(Channel channel) {
+        IndexKeys keys = channel.attr(INDEX_KEYS).get();
+        if (keys == null) return;
+        synchronized (keys) {
+            keys.removed = true;
+            connectChannels.remove(keys.connectUuid, channel);
+            if (keys.client != null) clientChannels.remove(keys.client, channel);
+            removeFromIndex(userChannels, keys.userUuid, channel);
+            removeFromIndex(ipChannels, keys.ip, channel);
+        }
+    }
+
+    private static <K> void addToIndex(Map<K, Set<Channel>> index, K key, Channel channel) {
+        if (key == null) return;
+        index.compute(key, (k, set) -> {
+            if (set == null) set = ConcurrentHashMap.newKeySet();
+            set.add(channel);
+            return set;
+        });
+    }
+
+    private static <K> void removeFromIndex(Map<K, Set<Channel>> index, K key, Channel channel) {
+        if (key == null) return;
+        index.computeIfPresent(key, (k, set) -> {
+            set.remove(channel);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static Set<Channel> getIndexed(Map<?, Set<Channel>> index, Object key) {
+        Set<Channel> set = index.get(key);
+        return set == null ? Collections.emptySet() : set;
+    }
+
+    private static boolean isUserChannel(WebSocketFrameHandler wsHandler, UUID userUuid) {
+        if (wsHandler == null) return false;
+        Client client = wsHandler.getClient();
+        return client != null && userUuid.equals(client.uuid);
     }
 
     public static String getIPFromContext(ChannelHandlerContext ctx) {
@@ -189,93 +399,163 @@ public class WebSocketService {
         return handler.context.ip;
     }
 
-    public void sendObject(ChannelHandlerContext ctx, Object obj) {
-        String msg = gson.toJson(obj, WebSocketEvent.class);
-        if(logger.isTraceEnabled()) {
-            logger.trace("Send to {}: {}", getIPFromContext(ctx), msg);
+    public static boolean isBinaryProtocol(Channel channel) {
+        return Boolean.TRUE.equals(channel.attr(BINARY_PROTOCOL).get());
+    }
+
+    /**
+     * @return json text frame, or binary frame if channel uses binary protocol. Type is ignored by binary protocol
+     */
+    private WebSocketFrame encode(Channel channel, Object obj, Type type) {
+        if (isBinaryProtocol(channel) && obj instanceof TypeSerializeInterface typed) {
+            return new BinaryWebSocketFrame(encodeBinary(channel.alloc(), typed, true));
         }
-        ctx.writeAndFlush(new TextWebSocketFrame(msg), ctx.voidPromise());
+        return new TextWebSocketFrame(gson.toJson(obj, type));
+    }
+
+    /**
+     * @param requestUUID false to skip requestUUID of binary RequestEvent, see WebSocketBinaryProtocol.writeBody
+     */
+    public ByteBuf encodeBinary(ByteBufAllocator alloc, TypeSerializeInterface obj, boolean requestUUID) {
+        ByteBuf buffer = alloc.buffer();
+        try (HOutput output = new HOutput(new ByteBufOutputStream(buffer))) {
+            if (requestUUID) WebSocketBinaryProtocol.events.write(output, gson, obj);
+            else WebSocketBinaryProtocol.events.writeBody(output, gson, obj);
+        } catch (IOException e) {
+            buffer.release();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+        return buffer;
+    }
+
+    private static String toLogString(WebSocketFrame frame) {
+        if (frame instanceof TextWebSocketFrame textFrame) return textFrame.text();
+        return "binary " + frame.content().readableBytes() + " bytes";
+    }
+
+    public void sendObject(ChannelHandlerContext ctx, Object obj) {
+        sendObject(ctx, obj, WebSocketEvent.class);
     }
 
     public void sendObject(ChannelHandlerContext ctx, Object obj, Type type) {
-        String msg = gson.toJson(obj, type);
+        WebSocketFrame frame = encode(ctx.channel(), obj, type);
         if(logger.isTraceEnabled()) {
-            logger.trace("Send to {}: {}", getIPFromContext(ctx), msg);
+            logger.trace("Send to {}: {}", getIPFromContext(ctx), toLogString(frame));
         }
-        ctx.writeAndFlush(new TextWebSocketFrame(msg), ctx.voidPromise());
+        ctx.writeAndFlush(frame, ctx.voidPromise());
     }
 
-    public void sendObject(Channel channel, Object obj) {
-        String msg = gson.toJson(obj, WebSocketEvent.class);
+    /**
+     * Send event serialized once and shared between requests
+     *
+     * @param payload event json without closing brace, or binary event written by WebSocketBinaryProtocol.writeBody
+     *                if channel uses binary protocol. Released after write
+     */
+    public void sendSerializedResult(ChannelHandlerContext ctx, ByteBuf payload, UUID requestUUID) {
+        boolean binary = isBinaryProtocol(ctx.channel());
+        ByteBuf suffix;
+        if (binary) {
+            suffix = ctx.alloc().buffer(17);
+            try (HOutput output = new HOutput(new ByteBufOutputStream(suffix))) {
+                WebSocketBinaryProtocol.writeRequestUUID(output, requestUUID);
+            } catch (IOException e) {
+                suffix.release();
+                payload.release();
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            suffix = ByteBufUtil.writeUtf8(ctx.alloc(), requestUUID == null ? "}" : ",\"requestUUID\":\"" + requestUUID + "\"}");
+        }
+        CompositeByteBuf content = ctx.alloc().compositeBuffer(2);
+        content.addComponents(true, payload, suffix);
         if(logger.isTraceEnabled()) {
-            logger.trace("Send to channel {}: {}", getIPFromChannel(channel), msg);
+            logger.trace("Send serialized result to {}: {} bytes", getIPFromContext(ctx), content.readableBytes());
         }
-        channel.writeAndFlush(new TextWebSocketFrame(msg), channel.voidPromise());
+        ctx.writeAndFlush(binary ? new BinaryWebSocketFrame(content) : new TextWebSocketFrame(content), ctx.voidPromise());
+    }
+
+    public void sendObject(Channel channel, Object obj) {
+        sendObject(channel, obj, WebSocketEvent.class);
     }
 
     public void sendObject(Channel channel, Object obj, Type type) {
-        String msg = gson.toJson(obj, type);
+        WebSocketFrame frame = encode(channel, obj, type);
         if(logger.isTraceEnabled()) {
-            logger.trace("Send to channel {}: {}", getIPFromChannel(channel), msg);
+            logger.trace("Send to channel {}: {}", getIPFromChannel(channel), toLogString(frame));
         }
-        channel.writeAndFlush(new TextWebSocketFrame(msg), channel.voidPromise());
+        channel.writeAndFlush(frame, channel.voidPromise());
     }
 
     public void sendObjectAll(Object obj) {
-        String msg = gson.toJson(obj, WebSocketEvent.class);
-        if(logger.isTraceEnabled()) {
-            logger.trace("Send to all: {}", msg);
-        }
-        for (Channel ch : channels) {
-            ch.writeAndFlush(new TextWebSocketFrame(msg), ch.voidPromise());
-        }
+        broadcast(channels, obj, WebSocketEvent.class);
     }
 
     public void sendObjectAll(Object obj, Type type) {
+        broadcast(channels, obj, type);
+    }
+
+    /**
+     * Targeted events are written directly: they are never skipped for unwritable channel and keep order with responses
+     */
+    public void sendObjectToUUID(UUID userUuid, Object obj, Type type) {
+        for (Channel ch : getIndexed(userChannels, userUuid)) {
+            if (isUserChannel(ch.pipeline().get(WebSocketFrameHandler.class), userUuid)) sendObject(ch, obj, type);
+        }
+    }
+
+    /**
+     * Send event to many channels. Event is serialized and encoded once per protocol, every channel gets a duplicate of one buffer
+     * Writes are grouped by event loop and flushed once per batch. Channels that are inactive or not writable are skipped,
+     * so use it only for events that may be lost (sendObjectAll, notifications)
+     *
+     * @return future completed when event is written to all channels
+     */
+    public CompletableFuture<BroadcastResult> broadcast(Iterable<Channel> targets, Object obj, Type type) {
+        long startTimeNanos = System.nanoTime();
         String msg = gson.toJson(obj, type);
         if(logger.isTraceEnabled()) {
-            logger.trace("Send to all: {}", msg);
+            logger.trace("Broadcast: {}", msg);
         }
-        for (Channel ch : channels) {
-            ch.writeAndFlush(new TextWebSocketFrame(msg), ch.voidPromise());
+        Map<EventLoop, List<Channel>> byEventLoop = new HashMap<>();
+        int count = 0;
+        boolean hasBinary = false;
+        for (Channel ch : targets) {
+            if (ch == null) continue;
+            byEventLoop.computeIfAbsent(ch.eventLoop(), k -> new ArrayList<>()).add(ch);
+            hasBinary |= isBinaryProtocol(ch);
+            count++;
         }
-    }
-
-    public void sendObjectToUUID(UUID userUuid, Object obj, Type type) {
-        for (Channel ch : channels) {
-            if (ch == null || ch.pipeline() == null) continue;
-            WebSocketFrameHandler wsHandler = ch.pipeline().get(WebSocketFrameHandler.class);
-            if (wsHandler == null) continue;
-            Client client = wsHandler.getClient();
-            if (client == null || !userUuid.equals(client.uuid)) continue;
-            String msg = gson.toJson(obj, type);
-            if(logger.isTraceEnabled()) {
-                logger.trace("Send to {}({}): {}", getIPFromChannel(ch), userUuid, msg);
+        ByteBuf binaryPayload = hasBinary && obj instanceof TypeSerializeInterface typed ? encodeBinary(ByteBufAllocator.DEFAULT, typed, true) : null;
+        Broadcast broadcast = new Broadcast(ByteBufUtil.writeUtf8(ByteBufAllocator.DEFAULT, msg), binaryPayload, count, startTimeNanos);
+        for (Map.Entry<EventLoop, List<Channel>> entry : byEventLoop.entrySet()) {
+            List<Channel> list = entry.getValue();
+            for (int from = 0; from < list.size(); from += BROADCAST_BATCH_SIZE) {
+                List<Channel> batch = list.subList(from, Math.min(list.size(), from + BROADCAST_BATCH_SIZE));
+                broadcast.pending.incrementAndGet();
+                try {
+                    entry.getKey().execute(() -> broadcast.write(batch));
+                } catch (RejectedExecutionException e) {
+                    broadcast.skipped.add(batch.size());
+                    broadcast.complete();
+                }
             }
-            ch.writeAndFlush(new TextWebSocketFrame(msg), ch.voidPromise());
         }
+        broadcast.complete();
+        return broadcast.future;
     }
 
     public Channel getChannelFromConnectUUID(UUID connectUuid) {
-        for (Channel ch : channels) {
-            if (ch == null || ch.pipeline() == null) continue;
-            WebSocketFrameHandler wsHandler = ch.pipeline().get(WebSocketFrameHandler.class);
-            if (wsHandler == null) continue;
-            if (connectUuid.equals(wsHandler.getConnectUUID())) {
-                return ch;
-            }
-        }
-        return null;
+        return connectChannels.get(connectUuid);
     }
 
     public boolean kickByUserUUID(UUID userUuid, boolean isClose) {
         boolean result = false;
-        for (Channel ch : channels) {
-            if (ch == null || ch.pipeline() == null) continue;
+        for (Channel ch : getIndexed(userChannels, userUuid)) {
             WebSocketFrameHandler wsHandler = ch.pipeline().get(WebSocketFrameHandler.class);
-            if (wsHandler == null) continue;
-            Client client = wsHandler.getClient();
-            if (client == null || !userUuid.equals(client.uuid)) continue;
+            if (!isUserChannel(wsHandler, userUuid)) continue;
             ExitResponse.exit(server, wsHandler, ch, ExitRequestEvent.ExitReason.SERVER);
             if (isClose) ch.close();
             result = true;
@@ -284,51 +564,38 @@ public class WebSocketService {
     }
 
     public boolean kickByConnectUUID(UUID connectUuid, boolean isClose) {
-        for (Channel ch : channels) {
-            if (ch == null || ch.pipeline() == null) continue;
-            WebSocketFrameHandler wsHandler = ch.pipeline().get(WebSocketFrameHandler.class);
-            if (wsHandler == null) continue;
-            if (connectUuid.equals(wsHandler.getConnectUUID())) {
-                ExitResponse.exit(server, wsHandler, ch, ExitRequestEvent.ExitReason.SERVER);
-                if (isClose) ch.close();
-                return true;
-            }
-        }
-        return false;
+        Channel ch = connectChannels.get(connectUuid);
+        if (ch == null) return false;
+        WebSocketFrameHandler wsHandler = ch.pipeline().get(WebSocketFrameHandler.class);
+        if (wsHandler == null) return false;
+        ExitResponse.exit(server, wsHandler, ch, ExitRequestEvent.ExitReason.SERVER);
+        if (isClose) ch.close();
+        return true;
     }
 
     public boolean kickByIP(String ip, boolean isClose) {
         boolean result = false;
-        for (Channel ch : channels) {
-            if (ch == null || ch.pipeline() == null) continue;
+        for (Channel ch : getIndexed(ipChannels, ip)) {
             WebSocketFrameHandler wsHandler = ch.pipeline().get(WebSocketFrameHandler.class);
-            if (wsHandler == null) continue;
-            String clientIp;
-            if (wsHandler.context != null && wsHandler.context.ip != null) clientIp = wsHandler.context.ip;
-            else clientIp = IOHelper.getIP(ch.remoteAddress());
-            if (ip.equals(clientIp)) {
-                ExitResponse.exit(server, wsHandler, ch, ExitRequestEvent.ExitReason.SERVER);
-                if (isClose) ch.close();
-                result = true;
-            }
+            // Index may be stale while ip of channel is changed
+            if (wsHandler == null || !ip.equals(getIPFromChannel(ch))) continue;
+            ExitResponse.exit(server, wsHandler, ch, ExitRequestEvent.ExitReason.SERVER);
+            if (isClose) ch.close();
+            result = true;
         }
         return result;
     }
 
     public void sendObjectAndClose(ChannelHandlerContext ctx, Object obj) {
-        String msg = gson.toJson(obj, WebSocketEvent.class);
-        if(logger.isTraceEnabled()) {
-            logger.trace("Send and close {}: {}", getIPFromContext(ctx), msg);
-        }
-        ctx.writeAndFlush(new TextWebSocketFrame(msg)).addListener(ChannelFutureListener.CLOSE);
+        sendObjectAndClose(ctx, obj, WebSocketEvent.class);
     }
 
     public void sendObjectAndClose(ChannelHandlerContext ctx, Object obj, Type type) {
-        String msg = gson.toJson(obj, type);
+        WebSocketFrame frame = encode(ctx.channel(), obj, type);
         if(logger.isTraceEnabled()) {
-            logger.trace("Send and close {}: {}", getIPFromContext(ctx), msg);
+            logger.trace("Send and close {}: {}", getIPFromContext(ctx), toLogString(frame));
         }
-        ctx.writeAndFlush(new TextWebSocketFrame(msg)).addListener(ChannelFutureListener.CLOSE);
+        ctx.writeAndFlush(frame).addListener(ChannelFutureListener.CLOSE);
     }
 
     @Deprecated
@@ -340,6 +607,68 @@ public class WebSocketService {
         channels.writeAndFlush(new TextWebSocketFrame(msg), ChannelMatchers.all(), true);
     }
 
+    public record BroadcastResult(int targets, int sent, int skipped, long elapsedNanos) {
+    }
+
+    private static final class Broadcast {
+        private final ByteBuf payload;
+        private final ByteBuf binaryPayload; // null if no target uses binary protocol
+        private final int targets;
+        private final long startTimeNanos;
+        private final AtomicInteger pending = new AtomicInteger(1); // Released by broadcast caller
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final CompletableFuture<BroadcastResult> future = new CompletableFuture<>();
+
+        private Broadcast(ByteBuf payload, ByteBuf binaryPayload, int targets, long startTimeNanos) {
+            this.payload = payload;
+            this.binaryPayload = binaryPayload;
+            this.targets = targets;
+            this.startTimeNanos = startTimeNanos;
+        }
+
+        private void write(List<Channel> batch) {
+            try {
+                for (Channel ch : batch) {
+                    if (!ch.isActive() || !ch.isWritable()) {
+                        skipped.increment();
+                        continue;
+                    }
+                    if (binaryPayload != null && isBinaryProtocol(ch)) {
+                        ch.write(new BinaryWebSocketFrame(binaryPayload.retainedDuplicate()), ch.voidPromise());
+                    } else {
+                        ch.write(new TextWebSocketFrame(payload.retainedDuplicate()), ch.voidPromise());
+                    }
+                    sent.increment();
+                }
+                for (Channel ch : batch) {
+                    ch.flush();
+                }
+            } finally {
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (pending.decrementAndGet() != 0) return;
+            payload.release();
+            if (binaryPayload != null) binaryPayload.release();
+            future.complete(new BroadcastResult(targets, sent.intValue(), skipped.intValue(), System.nanoTime() - startTimeNanos));
+        }
+    }
+
+    private static final class IndexKeys {
+        private final UUID connectUuid;
+        private Client client;
+        private UUID userUuid;
+        private String ip;
+        private boolean removed;
+
+        private IndexKeys(UUID connectUuid) {
+            this.connectUuid = connectUuid;
+        }
+    }
+
     public static class WebSocketRequestContext {
         public final WebSocketServerResponse response;
         public final Client client;
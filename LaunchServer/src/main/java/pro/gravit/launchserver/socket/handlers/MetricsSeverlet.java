@@ -0,0 +1,43 @@
+package pro.gravit.launchserver.socket.handlers;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import pro.gravit.launchserver.socket.LauncherNettyServer;
+import pro.gravit.launchserver.socket.NettyConnectContext;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * /webapi/metrics in Prometheus text format
+ */
+public class MetricsSeverlet implements NettyWebAPIHandler.SimpleSeverletHandler {
+    private final LauncherNettyServer server;
+    private final String token;
+
+    public MetricsSeverlet(LauncherNettyServer server, String token) {
+        this.server = server;
+        this.token = token;
+    }
+
+    @Override
+    public void handle(ChannelHandlerContext ctx, FullHttpRequest msg, NettyConnectContext context) {
+        if (token != null && !isAuthorized(msg.headers().get(HttpHeaderNames.AUTHORIZATION))) {
+            sendHttpResponse(ctx, simpleResponse(HttpResponseStatus.UNAUTHORIZED, "Unauthorized"));
+            return;
+        }
+        StringBuilder builder = new StringBuilder(4096);
+        server.service.metrics.writePrometheus(builder, server);
+        FullHttpResponse response = simpleResponse(HttpResponseStatus.OK, builder.toString());
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; version=0.0.4; charset=utf-8");
+        sendHttpResponse(ctx, response);
+    }
+
+    private boolean isAuthorized(String header) {
+        if (header == null) return false;
+        return MessageDigest.isEqual(("Bearer ".concat(token)).getBytes(StandardCharsets.UTF_8), header.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -13,15 +13,13 @@ import pro.gravit.utils.helper.IOHelper;
 
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeSet;
 
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
 public class NettyWebAPIHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
-    private static final TreeSet<SeverletPathPair> severletList = new TreeSet<>(Comparator.comparingInt((e) -> -e.key.length()));
+    private static final WebAPIRouter<SeverletPathPair> router = new WebAPIRouter<>();
     private static final DefaultFullHttpResponse ERROR_500 = new DefaultFullHttpResponse(HTTP_1_1, HttpResponseStatus.INTERNAL_SERVER_ERROR, Unpooled.wrappedBuffer(IOHelper.encode("Internal Server Error 500")));
 
     static {
@@ -36,40 +34,60 @@ public class NettyWebAPIHandler extends SimpleChannelInboundHandler<FullHttpRequ
         this.context = context;
     }
 
+    /**
+     * Handles any request which uri starts with /webapi/{path}, with any method
+     */
     public static SeverletPathPair addNewSeverlet(String path, SimpleSeverletHandler callback) {
-        SeverletPathPair pair = new SeverletPathPair("/webapi/".concat(path), callback);
-        severletList.add(pair);
-        return pair;
+        return addUnsafeSeverlet("/webapi/".concat(path), callback);
     }
 
+    /**
+     * Handles any request which uri starts with path, with any method
+     */
     public static SeverletPathPair addUnsafeSeverlet(String path, SimpleSeverletHandler callback) {
         SeverletPathPair pair = new SeverletPathPair(path, callback);
-        severletList.add(pair);
+        pair.route = router.addRawPrefix(path, pair);
+        return pair;
+    }
+
+    /**
+     * @param method HTTP method or null for any method
+     * @param path path with optional {param} segments, params are passed to SimpleSeverletHandler.handle
+     * @param prefix handle all paths under path too
+     */
+    public static SeverletPathPair addSeverlet(HttpMethod method, String path, boolean prefix, SimpleSeverletHandler callback) {
+        SeverletPathPair pair = new SeverletPathPair(path, callback);
+        pair.route = router.add(method == null ? null : method.name(), path, prefix, pair);
         return pair;
     }
 
     public static void removeSeverlet(SeverletPathPair pair) {
-        severletList.remove(pair);
+        if (pair.route != null) {
+            router.remove(pair.route);
+        }
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
-        boolean isNext = true;
-        for (SeverletPathPair pair : severletList) {
-            if (msg.uri().startsWith(pair.key)) {
-                try {
-                    pair.callback.handle(ctx, msg, context);
-                } catch (Throwable e) {
-                    logger.error("WebAPI Error", e);
-                    ctx.writeAndFlush(ERROR_500, ctx.voidPromise());
-                }
-                isNext = false;
-                break;
-            }
+        WebAPIRouter.Match<SeverletPathPair> match;
+        try {
+            match = router.match(msg.method().name(), msg.uri());
+        } catch (IllegalArgumentException e) {
+            FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, HttpResponseStatus.BAD_REQUEST, Unpooled.wrappedBuffer(IOHelper.encode("Bad Request 400")));
+            HttpUtil.setContentLength(response, response.content().readableBytes());
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            return;
         }
-        if (isNext) {
+        if (match == null) {
             msg.retain();
             ctx.fireChannelRead(msg);
+            return;
+        }
+        try {
+            match.route().handler.callback.handle(ctx, msg, context, match.params());
+        } catch (Throwable e) {
+            logger.error("WebAPI Error", e);
+            ctx.writeAndFlush(ERROR_500, ctx.voidPromise());
         }
     }
 
@@ -77,6 +95,13 @@ public class NettyWebAPIHandler extends SimpleChannelInboundHandler<FullHttpRequ
     public interface SimpleSeverletHandler {
         void handle(ChannelHandlerContext ctx, FullHttpRequest msg, NettyConnectContext context) throws Exception;
 
+        /**
+         * @param params values of {param} path segments
+         */
+        default void handle(ChannelHandlerContext ctx, FullHttpRequest msg, NettyConnectContext context, Map<String, String> params) throws Exception {
+            handle(ctx, msg, context);
+        }
+
         default Map<String, String> getParamsFromUri(String uri) {
             int ind = uri.indexOf("?");
             if (ind <= 0) {
@@ -116,6 +141,7 @@ public class NettyWebAPIHandler extends SimpleChannelInboundHandler<FullHttpRequ
     public static class SeverletPathPair {
         public final String key;
         public final SimpleSeverletHandler callback;
+        private WebAPIRouter.Route<SeverletPathPair> route;
 
         public SeverletPathPair(String key, SimpleSeverletHandler callback) {
             this.key = key;
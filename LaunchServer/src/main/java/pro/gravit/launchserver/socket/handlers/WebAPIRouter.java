@@ -0,0 +1,298 @@
+package pro.gravit.launchserver.socket.handlers;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Routes request paths by segments: /webapi/users/{uuid}
+ * Exact routes win over prefix routes, the longest matching prefix wins, literal segments win over {param} segments
+ * Routes are stored in a tree that is copied on write, so lookups are lock-free and do not depend on number of routes
+ * Raw prefix routes match any uri starting with their string, as legacy servlets did, and compete with prefix routes
+ * by length of the matched part. They are stored in a character trie, so lookup depends only on uri length
+ *
+ * @param <T> route handler
+ */
+public final class WebAPIRouter<T> {
+    private volatile Node<T> root = new Node<>();
+    // Changed only under lock, rawRoot is rebuilt from it
+    private List<Route<T>> rawRoutes = List.of();
+    private volatile RawNode<T> rawRoot = new RawNode<>();
+
+    /**
+     * Route with the same method, pattern and prefix flag is replaced
+     *
+     * @param method HTTP method or null for any method
+     * @param prefix route matches the path and all paths under it
+     */
+    public synchronized Route<T> add(String method, String pattern, boolean prefix, T handler) {
+        Route<T> route = new Route<>(method, pattern, prefix, false, handler);
+        List<String> segments = split(pattern);
+        List<String> paramNames = new ArrayList<>();
+        Node<T> newRoot = root.copy();
+        Node<T> node = newRoot;
+        for (String segment : segments) {
+            if (isParam(segment)) {
+                paramNames.add(segment.substring(1, segment.length() - 1));
+                node.param = node.param == null ? new Node<>() : node.param.copy();
+                node = node.param;
+            } else {
+                Node<T> child = node.children.get(segment);
+                child = child == null ? new Node<>() : child.copy();
+                node.children.put(segment, child);
+                node = child;
+            }
+        }
+        route.paramNames = paramNames;
+        Map<String, Route<T>> routes = prefix ? node.prefixRoutes : node.exactRoutes;
+        routes.put(methodKey(method), route);
+        root = newRoot;
+        return route;
+    }
+
+    /**
+     * Route for any method and any uri starting with prefix, including query string. Route with the same prefix is replaced
+     */
+    public synchronized Route<T> addRawPrefix(String prefix, T handler) {
+        Route<T> route = new Route<>(null, prefix, true, true, handler);
+        List<Route<T>> newRawRoutes = new ArrayList<>(rawRoutes);
+        newRawRoutes.removeIf(e -> e.pattern.equals(prefix));
+        newRawRoutes.add(route);
+        route.paramNames = List.of();
+        setRawRoutes(newRawRoutes);
+        return route;
+    }
+
+    private void setRawRoutes(List<Route<T>> routes) {
+        RawNode<T> newRoot = new RawNode<>();
+        for (Route<T> route : routes) {
+            RawNode<T> node = newRoot;
+            for (int i = 0; i < route.pattern.length(); ++i) {
+                node = node.getOrCreate(route.pattern.charAt(i));
+            }
+            node.route = route;
+        }
+        rawRoutes = List.copyOf(routes);
+        rawRoot = newRoot;
+    }
+
+    public synchronized boolean remove(Route<T> route) {
+        if (route.raw) {
+            List<Route<T>> newRawRoutes = new ArrayList<>(rawRoutes);
+            if (!newRawRoutes.remove(route)) return false;
+            setRawRoutes(newRawRoutes);
+            return true;
+        }
+        Node<T> newRoot = root.copy();
+        Node<T> node = newRoot;
+        for (String segment : split(route.pattern)) {
+            Node<T> next = isParam(segment) ? node.param : node.children.get(segment);
+            if (next == null) return false;
+            next = next.copy();
+            if (isParam(segment)) node.param = next;
+            else node.children.put(segment, next);
+            node = next;
+        }
+        Map<String, Route<T>> routes = route.prefix ? node.prefixRoutes : node.exactRoutes;
+        if (!routes.remove(methodKey(route.method), route)) return false;
+        root = newRoot;
+        return true;
+    }
+
+    /**
+     * @param uri request uri, query string is ignored by segment routes
+     * @return matched route or null
+     * @throws IllegalArgumentException if {param} value is not correctly url-encoded
+     */
+    public Match<T> match(String method, String uri) {
+        int end = uri.length();
+        int query = uri.indexOf('?');
+        if (query >= 0) end = query;
+        int fragment = uri.indexOf('#');
+        if (fragment >= 0 && fragment < end) end = fragment;
+        List<String> segments = split(uri.substring(0, end));
+        String[] values = new String[segments.size()];
+        BestPrefix<T> best = new BestPrefix<>();
+        Found<T> found = match(root, segments, 0, method, values, 0, best);
+        if (found == null) {
+            Route<T> rawRoute = matchRaw(uri);
+            if (rawRoute != null && (best.found == null || rawRoute.pattern.length() > length(segments, best.depth))) {
+                return new Match<>(rawRoute, Map.of());
+            }
+            found = best.found;
+        }
+        if (found == null) return null;
+        Map<String, String> params;
+        if (found.route.paramNames.isEmpty()) {
+            params = Map.of();
+        } else {
+            params = new HashMap<>();
+            for (int i = 0; i < found.route.paramNames.size(); ++i) {
+                params.put(found.route.paramNames.get(i), URLDecoder.decode(found.values[i], StandardCharsets.UTF_8));
+            }
+        }
+        return new Match<>(found.route, params);
+    }
+
+    /**
+     * @return exact route, literal segments are tried before {param} segments. Deepest prefix route is kept in best
+     */
+    private static <T> Found<T> match(Node<T> node, List<String> segments, int index, String method, String[] values, int valueCount, BestPrefix<T> best) {
+        Route<T> prefixRoute = node.find(node.prefixRoutes, method);
+        if (prefixRoute != null && index > best.depth) {
+            best.found = new Found<>(prefixRoute, Arrays.copyOf(values, valueCount));
+            best.depth = index;
+        }
+        if (index == segments.size()) {
+            Route<T> exactRoute = node.find(node.exactRoutes, method);
+            return exactRoute == null ? null : new Found<>(exactRoute, Arrays.copyOf(values, valueCount));
+        }
+        String segment = segments.get(index);
+        Node<T> child = node.children.get(segment);
+        if (child != null) {
+            Found<T> found = match(child, segments, index + 1, method, values, valueCount, best);
+            if (found != null) return found;
+        }
+        if (node.param != null) {
+            values[valueCount] = segment;
+            return match(node.param, segments, index + 1, method, values, valueCount + 1, best);
+        }
+        return null;
+    }
+
+    /**
+     * @return route with the longest prefix of uri
+     */
+    private Route<T> matchRaw(String uri) {
+        RawNode<T> node = rawRoot;
+        Route<T> route = node.route;
+        for (int i = 0, length = uri.length(); i < length; ++i) {
+            node = node.get(uri.charAt(i));
+            if (node == null) break;
+            if (node.route != null) route = node.route;
+        }
+        return route;
+    }
+
+    /**
+     * @return length of path of first segments with their leading slashes
+     */
+    private static int length(List<String> segments, int count) {
+        int length = 0;
+        for (int i = 0; i < count; ++i) {
+            length += segments.get(i).length() + 1;
+        }
+        return length;
+    }
+
+    private static List<String> split(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        while (start <= path.length()) {
+            int next = path.indexOf('/', start);
+            if (next < 0) next = path.length();
+            if (next > start) segments.add(path.substring(start, next));
+            start = next + 1;
+        }
+        return segments;
+    }
+
+    private static boolean isParam(String segment) {
+        return segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+    }
+
+    private static String methodKey(String method) {
+        return method == null ? "*" : method;
+    }
+
+    public static final class Route<T> {
+        public final String method;
+        public final String pattern;
+        public final boolean prefix;
+        public final boolean raw;
+        public final T handler;
+        private List<String> paramNames;
+
+        private Route(String method, String pattern, boolean prefix, boolean raw, T handler) {
+            this.method = method;
+            this.pattern = pattern;
+            this.prefix = prefix;
+            this.raw = raw;
+            this.handler = handler;
+        }
+    }
+
+    public record Match<T>(Route<T> route, Map<String, String> params) {
+    }
+
+    private record Found<T>(Route<T> route, String[] values) {
+    }
+
+    private static final class BestPrefix<T> {
+        private Found<T> found;
+        private int depth = -1;
+    }
+
+    private static final class RawNode<T> {
+        private static final char[] NO_KEYS = new char[0];
+        private char[] keys = NO_KEYS;
+        private RawNode<T>[] children = newArray(0);
+        private Route<T> route;
+
+        @SuppressWarnings("unchecked")
+        private static <T> RawNode<T>[] newArray(int length) {
+            return (RawNode<T>[]) new RawNode<?>[length];
+        }
+
+        private RawNode<T> get(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private RawNode<T> getOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) return children[index];
+            index = -index - 1;
+            RawNode<T> node = new RawNode<>();
+            char[] newKeys = new char[keys.length + 1];
+            RawNode<T>[] newChildren = newArray(children.length + 1);
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newKeys[index] = c;
+            newChildren[index] = node;
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+
+    private static final class Node<T> {
+        private final Map<String, Node<T>> children;
+        private final Map<String, Route<T>> exactRoutes;
+        private final Map<String, Route<T>> prefixRoutes;
+        private Node<T> param;
+
+        private Node() {
+            this(new HashMap<>(), new HashMap<>(), new HashMap<>(), null);
+        }
+
+        private Node(Map<String, Node<T>> children, Map<String, Route<T>> exactRoutes, Map<String, Route<T>> prefixRoutes, Node<T> param) {
+            this.children = children;
+            this.exactRoutes = exactRoutes;
+            this.prefixRoutes = prefixRoutes;
+            this.param = param;
+        }
+
+        private Node<T> copy() {
+            return new Node<>(new HashMap<>(children), new HashMap<>(exactRoutes), new HashMap<>(prefixRoutes), param);
+        }
+
+        private Route<T> find(Map<String, Route<T>> routes, String method) {
+            if (routes.isEmpty()) return null;
+            Route<T> route = method == null ? null : routes.get(method);
+            return route != null ? route : routes.get("*");
+        }
+    }
+}
@@ -7,6 +7,7 @@ import io.netty.handler.codec.http.websocketx.*;
 import io.netty.util.concurrent.ScheduledFuture;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import pro.gravit.launcher.request.websockets.WebSocketBinaryProtocol;
 import pro.gravit.launchserver.LaunchServer;
 import pro.gravit.launchserver.socket.Client;
 import pro.gravit.launchserver.socket.NettyConnectContext;
@@ -26,6 +27,7 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
     private transient final Logger logger = LogManager.getLogger();
     public NettyConnectContext context;
     private Client client;
+    private Channel channel;
     private ScheduledFuture<?> future;
 
     public WebSocketFrameHandler(NettyConnectContext context, LaunchServer srv, WebSocketService service) {
@@ -40,6 +42,7 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
 
     public void setClient(Client client) {
         this.client = client;
+        if (channel != null) service.updateClientIndex(channel);
     }
 
     public final UUID getConnectUUID() {
@@ -51,6 +54,7 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
         logger.trace("New client {}", IOHelper.getIP(ctx.channel().remoteAddress()));
         client = new Client();
         Channel ch = ctx.channel();
+        channel = ch;
         service.registerClient(ch);
         future = ctx.executor().scheduleAtFixedRate(() -> ch.writeAndFlush(new PingWebSocketFrame(), ch.voidPromise()), 30L, 30L, TimeUnit.SECONDS);
     }
@@ -77,6 +81,19 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
                 }
                 ctx.channel().close();
             }
+        } else if (frame instanceof BinaryWebSocketFrame) {
+            if(logger.isTraceEnabled()) {
+                logger.trace("Binary message from {}: {} bytes", context.ip == null ? IOHelper.getIP(ctx.channel().remoteAddress()) : context.ip, frame.content().readableBytes());
+            }
+            try {
+                service.process(ctx, (BinaryWebSocketFrame) frame, client, context.ip);
+            } catch (Throwable ex) {
+                logger.warn("Client {} send invalid binary request. Connection force closed.", context.ip == null ? IOHelper.getIP(ctx.channel().remoteAddress()) : context.ip);
+                if (logger.isTraceEnabled()) {
+                    logger.error("Process websockets request failed", ex);
+                }
+                ctx.channel().close();
+            }
         } else if ((frame instanceof PingWebSocketFrame)) {
             frame.content().retain();
             ctx.channel().writeAndFlush(new PongWebSocketFrame(frame.content()));
@@ -92,9 +109,22 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocket
         }
     }
 
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete handshake) {
+            if (WebSocketBinaryProtocol.SUBPROTOCOL.equals(handshake.selectedSubprotocol())) {
+                ctx.channel().attr(WebSocketService.BINARY_PROTOCOL).set(Boolean.TRUE);
+            }
+            // Real ip from X-Forwarded-For/X-Real-IP is known only after handshake
+            service.updateClientIndex(ctx.channel());
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         if (future != null) future.cancel(true);
+        service.unregisterClient(ctx.channel());
         if (logger.isTraceEnabled()) {
             logger.trace("Client {} disconnected", IOHelper.getIP(ctx.channel().remoteAddress()));
         }
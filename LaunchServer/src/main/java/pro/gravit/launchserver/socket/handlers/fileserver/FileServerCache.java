@@ -0,0 +1,217 @@
+package pro.gravit.launchserver.socket.handlers.fileserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.IllegalReferenceCountException;
+import pro.gravit.launchserver.config.LaunchServerConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Approximate LRU cache of small files served by FileServerHandler, shared by all channels
+ * Lookups take no locks: when maxBytes is exceeded, least recently used files are evicted in one batch
+ * by a single thread, like in ExpiringCache
+ * Entries are dropped after updates sync and revalidated by size and mtime every revalidateMillis
+ */
+public class FileServerCache {
+    private static final int EVICT_BATCH_DIVISOR = 16;
+    private final Map<String, CachedFile> map = new ConcurrentHashMap<>();
+    private final long maxBytes;
+    private final long maxFileBytes;
+    private final long revalidateMillis;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    public FileServerCache(LaunchServerConfig.NettyFileServerConfig config) {
+        this.maxBytes = config.cacheMaxBytes;
+        this.maxFileBytes = Math.min(config.cacheMaxFileBytes, config.cacheMaxBytes);
+        this.revalidateMillis = config.cacheRevalidateMillis;
+    }
+
+    /**
+     * @return cached file with retained content (caller must release it) or null
+     */
+    public CachedFile get(String key) {
+        CachedFile cached = map.get(key);
+        if (cached == null || !retain(cached)) {
+            misses.increment();
+            return null;
+        }
+        cached.lastAccess = System.nanoTime();
+        long now = System.currentTimeMillis();
+        if (now - cached.checkTime > revalidateMillis) {
+            if (cached.file.length() != cached.length || cached.file.lastModified() != cached.lastModified) {
+                cached.content.release();
+                remove(key, cached);
+                misses.increment();
+                return null;
+            }
+            cached.checkTime = now;
+        }
+        hits.increment();
+        return cached;
+    }
+
+    /**
+     * Content of entry removed by concurrent thread may be already released
+     */
+    private static boolean retain(CachedFile cached) {
+        try {
+            cached.content.retain();
+            return true;
+        } catch (IllegalReferenceCountException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read file and put it to cache
+     *
+     * @return cached file with retained content (caller must release it) or null if file is too big or changed while reading
+     */
+    public CachedFile load(String key, File file, long length, long lastModified, String etag, String contentType) throws IOException {
+        if (length > maxFileBytes) {
+            return null;
+        }
+        ByteBuf content = ByteBufAllocator.DEFAULT.directBuffer((int) length, (int) length);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (content.isWritable()) {
+                if (content.writeBytes(channel, content.writerIndex(), content.writableBytes()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            content.release();
+            throw e;
+        }
+        if (content.isWritable() || file.lastModified() != lastModified) {
+            content.release();
+            return null; // Changed while reading
+        }
+        CachedFile cached = new CachedFile(file, length, lastModified, etag, contentType, content.asReadOnly());
+        // Reference of the caller, the cache owns the initial one
+        cached.content.retain();
+        bytes.addAndGet(length);
+        CachedFile old = map.put(key, cached);
+        if (old != null) {
+            release(old);
+        }
+        if (bytes.get() > maxBytes) {
+            evict();
+        }
+        return cached;
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            long target = maxBytes - maxBytes / EVICT_BATCH_DIVISOR;
+            // Access times are copied, they are changed by concurrent lookups during sort
+            List<EvictCandidate> candidates = new ArrayList<>(map.size());
+            map.forEach((key, cached) -> candidates.add(new EvictCandidate(key, cached, cached.lastAccess)));
+            candidates.sort(Comparator.comparingLong(EvictCandidate::lastAccess));
+            for (EvictCandidate candidate : candidates) {
+                if (bytes.get() <= target) break;
+                if (remove(candidate.key(), candidate.cached())) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private boolean remove(String key, CachedFile cached) {
+        if (map.remove(key, cached)) {
+            release(cached);
+            return true;
+        }
+        return false;
+    }
+
+    private void release(CachedFile cached) {
+        bytes.addAndGet(-cached.length);
+        cached.content.release();
+    }
+
+    /**
+     * @param paths changed paths relative to updates dir ('/' separated) or null to clear cache
+     */
+    public void invalidate(Set<String> paths) {
+        for (Map.Entry<String, CachedFile> entry : map.entrySet()) {
+            if (paths == null || isChanged(entry.getKey(), paths)) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static boolean isChanged(String key, Set<String> paths) {
+        for (int i = key.indexOf('/'); i >= 0; i = key.indexOf('/', i + 1)) {
+            if (paths.contains(key.substring(0, i))) return true;
+        }
+        return paths.contains(key);
+    }
+
+    public void clear() {
+        invalidate(null);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getEntries() {
+        return map.size();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    private record EvictCandidate(String key, CachedFile cached, long lastAccess) {
+    }
+
+    public static class CachedFile {
+        public final File file;
+        public final long length;
+        public final long lastModified;
+        public final String etag;
+        public final String contentType;
+        public final ByteBuf content;
+        private volatile long checkTime;
+        private volatile long lastAccess = System.nanoTime();
+
+        private CachedFile(File file, long length, long lastModified, String etag, String contentType, ByteBuf content) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.content = content;
+            this.checkTime = System.currentTimeMillis();
+        }
+    }
+}
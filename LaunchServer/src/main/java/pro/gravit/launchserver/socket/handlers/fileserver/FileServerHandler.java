@@ -4,30 +4,44 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import io.netty.handler.codec.http.*;
-import io.netty.handler.stream.ChunkedFile;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedNioFile;
 import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import pro.gravit.launcher.hasher.HashedDir;
+import pro.gravit.launcher.hasher.HashedEntry;
+import pro.gravit.launcher.hasher.HashedFile;
+import pro.gravit.launchserver.config.LaunchServerConfig;
+import pro.gravit.launchserver.manangers.UpdatesManager;
 import pro.gravit.launchserver.socket.handlers.ContentType;
+import pro.gravit.utils.helper.SecurityHelper;
 import pro.gravit.utils.helper.VerifyHelper;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.RandomAccessFile;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAccessor;
 import java.time.temporal.UnsupportedTemporalTypeException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Pattern;
 
 import static io.netty.handler.codec.http.HttpMethod.GET;
@@ -50,11 +64,21 @@ public class FileServerHandler extends SimpleChannelInboundHandler<FullHttpReque
     private final Path base;
     private final boolean fullOut;
     private final boolean showHiddenFiles;
+    private final UpdatesManager updatesManager;
+    private final LaunchServerConfig.NettyFileServerConfig config;
+    private final FileServerCache cache;
 
     public FileServerHandler(Path base, boolean fullOut, boolean showHiddenFiles) {
+        this(base, fullOut, showHiddenFiles, null, new LaunchServerConfig.NettyFileServerConfig(), null);
+    }
+
+    public FileServerHandler(Path base, boolean fullOut, boolean showHiddenFiles, UpdatesManager updatesManager, LaunchServerConfig.NettyFileServerConfig config, FileServerCache cache) {
         this.base = base;
         this.fullOut = fullOut;
         this.showHiddenFiles = showHiddenFiles;
+        this.updatesManager = updatesManager;
+        this.config = config;
+        this.cache = cache;
     }
 
     private static void sendListing(ChannelHandlerContext ctx, File dir, String dirPath, boolean showHidden) {
@@ -123,14 +147,114 @@ public class FileServerHandler extends SimpleChannelInboundHandler<FullHttpReque
      *
      * @param ctx Context
      */
-    private static void sendNotModified(ChannelHandlerContext ctx) {
+    private static void sendNotModified(ChannelHandlerContext ctx, String etag) {
         FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, NOT_MODIFIED);
         setDateHeader(response);
+        if (etag != null) {
+            response.headers().set(HttpHeaderNames.ETAG, etag);
+        }
 
         // Close the connection as soon as the error message is sent.
         ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
     }
 
+    private static void sendRangeNotSatisfiable(ChannelHandlerContext ctx, long fileLength) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, REQUESTED_RANGE_NOT_SATISFIABLE);
+        response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes */" + fileLength);
+        setDateHeader(response);
+
+        // Close the connection as soon as the error message is sent.
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    private static boolean isNotModifiedSince(String ifModifiedSince, long lastModified) {
+        if (ifModifiedSince == null || ifModifiedSince.isEmpty()) {
+            return false;
+        }
+        // Only compare up to the second because the datetime format we send to the client
+        // does not have milliseconds
+        try {
+            TemporalAccessor ifModifiedSinceDate = dateFormatter.parse(ifModifiedSince);
+            long ifModifiedSinceDateSeconds = ifModifiedSinceDate.getLong(ChronoField.INSTANT_SECONDS);
+            long fileLastModifiedSeconds = lastModified / 1000;
+            return ifModifiedSinceDateSeconds == fileLastModifiedSeconds;
+        } catch (DateTimeParseException | UnsupportedTemporalTypeException ignored) {
+            return false;
+        }
+    }
+
+    private static boolean matchesETag(String header, String etag) {
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String value : header.split(",")) {
+            value = value.trim();
+            if (value.equals("*") || (value.startsWith("W/") ? value.substring(2) : value).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * If-Range requires strong ETag or exact Last-Modified date
+     */
+    private static boolean isRangeValid(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag != null && !etag.startsWith("W/") && etag.equals(ifRange);
+        }
+        return isNotModifiedSince(ifRange, lastModified);
+    }
+
+    /**
+     * Parses Range header
+     *
+     * @return null if header should be ignored, empty list if no range is satisfiable
+     */
+    static List<Range> parseRanges(String header, long fileLength, int maxRanges) {
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = header.substring("bytes=".length()).split(",");
+        if (specs.length > maxRanges) {
+            return null;
+        }
+        List<Range> ranges = new ArrayList<>(specs.length);
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int dash = spec.indexOf('-');
+                if (dash < 0) {
+                    return null;
+                }
+                long start, end;
+                if (dash == 0) { // Suffix range: last N bytes
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0) return null;
+                    if (suffix == 0) continue;
+                    start = Math.max(0, fileLength - suffix);
+                    end = fileLength - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash));
+                    if (dash == spec.length() - 1) {
+                        end = fileLength - 1;
+                    } else {
+                        long last = Long.parseLong(spec.substring(dash + 1));
+                        if (start < 0 || last < start) return null;
+                        end = Math.min(last, fileLength - 1);
+                    }
+                }
+                if (start < fileLength && start <= end) {
+                    ranges.add(new Range(start, end));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return ranges;
+    }
+
     /**
      * Sets the Date header for the HTTP response
      *
@@ -143,10 +267,10 @@ public class FileServerHandler extends SimpleChannelInboundHandler<FullHttpReque
     /**
      * Sets the Date and Cache headers for the HTTP Response
      *
-     * @param response    HTTP response
-     * @param fileToCache file to extract content type
+     * @param response     HTTP response
+     * @param lastModified file modification time
      */
-    private static void setDateAndCacheHeaders(HttpResponse response, File fileToCache) {
+    private static void setDateAndCacheHeaders(HttpResponse response, long lastModified) {
         // Date header
         LocalDateTime time = LocalDateTime.now(Clock.systemUTC());
         response.headers().set(HttpHeaderNames.DATE, dateFormatter.format(time));
@@ -155,17 +279,16 @@ public class FileServerHandler extends SimpleChannelInboundHandler<FullHttpReque
         response.headers().set(HttpHeaderNames.EXPIRES, dateFormatter.format(time.plus(HTTP_CACHE_SECONDS, ChronoUnit.SECONDS)));
         response.headers().set(HttpHeaderNames.CACHE_CONTROL, "private, max-age=" + HTTP_CACHE_SECONDS);
         response.headers().set(
-                HttpHeaderNames.LAST_MODIFIED, dateFormatter.format(Instant.ofEpochMilli(fileToCache.lastModified())));
+                HttpHeaderNames.LAST_MODIFIED, dateFormatter.format(Instant.ofEpochMilli(lastModified)));
     }
 
     /**
      * Sets the content type header for the HTTP Response
      *
-     * @param response HTTP response
-     * @param file     file to extract content type
+     * @param response    HTTP response
+     * @param contentType content type of file, may be null
      */
-    private static void setContentTypeHeader(HttpResponse response, File file) {
-        String contentType = TYPE_PROBE.forPath(file);
+    private static void setContentTypeHeader(HttpResponse response, String contentType) {
         if (contentType != null)
             response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
     }
@@ -192,6 +315,16 @@ public class FileServerHandler extends SimpleChannelInboundHandler<FullHttpReque
             return;
         }
 
+        // Hot files are served from memory without file system access
+        String cacheKey = path.replace(File.separatorChar, '/');
+        if (cache != null) {
+            FileServerCache.CachedFile cached = cache.get(cacheKey);
+            if (cached != null) {
+                sendCachedFile(ctx, request, cached);
+                return;
+            }
+        }
+
         File file = base.resolve(path).toFile();
         if ((file.isHidden() && !showHiddenFiles) || !file.exists()) {
             sendError(ctx, NOT_FOUND);
@@ -214,60 +347,120 @@ public class FileServerHandler extends SimpleChannelInboundHandler<FullHttpReque
             return;
         }
 
-        // Cache Validation
-        String ifModifiedSince = request.headers().get(HttpHeaderNames.IF_MODIFIED_SINCE);
-        if (ifModifiedSince != null && !ifModifiedSince.isEmpty()) {
-            TemporalAccessor ifModifiedSinceDate = dateFormatter.parse(ifModifiedSince);
-
-            // Only compare up to the second because the datetime format we send to the client
-            // does not have milliseconds
+        if (!file.canRead()) {
+            sendError(ctx, NOT_FOUND);
+            return;
+        }
+        long fileLength = file.length();
+        long lastModified = file.lastModified();
+        String etag = getETag(file, fileLength, lastModified);
+        String contentType = TYPE_PROBE.forPath(file);
+        if (cache != null) {
+            FileServerCache.CachedFile cached;
             try {
-                long ifModifiedSinceDateSeconds = ifModifiedSinceDate.getLong(ChronoField.INSTANT_SECONDS);
-                long fileLastModifiedSeconds = file.lastModified() / 1000;
-                if (ifModifiedSinceDateSeconds == fileLastModifiedSeconds) {
-                    sendNotModified(ctx);
-                    return;
-                }
-            } catch (UnsupportedTemporalTypeException ignored) {
+                cached = cache.load(cacheKey, file, fileLength, lastModified, etag, contentType);
+            } catch (IOException e) {
+                sendError(ctx, NOT_FOUND);
+                return;
+            }
+            if (cached != null) {
+                sendCachedFile(ctx, request, cached);
+                return;
             }
         }
+        sendFile(ctx, request, file, fileLength, lastModified, etag, contentType, null);
+    }
 
-        RandomAccessFile raf;
+    private void sendCachedFile(ChannelHandlerContext ctx, FullHttpRequest request, FileServerCache.CachedFile cached) {
         try {
-            raf = new RandomAccessFile(file, READ);
-        } catch (FileNotFoundException ignore) {
-            sendError(ctx, NOT_FOUND);
+            sendFile(ctx, request, cached.file, cached.length, cached.lastModified, cached.etag, cached.contentType, cached.content);
+        } finally {
+            cached.content.release();
+        }
+    }
+
+    private void sendFile(ChannelHandlerContext ctx, FullHttpRequest request, File file, long fileLength, long lastModified, String etag, String contentType, ByteBuf cachedContent) {
+        // Cache Validation
+        String ifNoneMatch = request.headers().get(HttpHeaderNames.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            if (etag != null && matchesETag(ifNoneMatch, etag)) {
+                sendNotModified(ctx, etag);
+                return;
+            }
+        } else if (isNotModifiedSince(request.headers().get(HttpHeaderNames.IF_MODIFIED_SINCE), lastModified)) {
+            sendNotModified(ctx, etag);
             return;
         }
-        long fileLength = raf.length();
 
-        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
-        HttpUtil.setContentLength(response, fileLength);
-        setContentTypeHeader(response, file);
-        setDateAndCacheHeaders(response, file);
+        // Ranges are applied only when If-Range validator is still current
+        List<Range> ranges = null;
+        String rangeHeader = request.headers().get(HttpHeaderNames.RANGE);
+        if (rangeHeader != null && isRangeValid(request.headers().get(HttpHeaderNames.IF_RANGE), etag, lastModified)) {
+            ranges = parseRanges(rangeHeader, fileLength, config.maxRanges);
+            if (ranges != null && ranges.isEmpty()) {
+                sendRangeNotSatisfiable(ctx, fileLength);
+                return;
+            }
+        }
+
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, ranges == null ? OK : PARTIAL_CONTENT);
+        response.headers().set(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+        if (etag != null) {
+            response.headers().set(HttpHeaderNames.ETAG, etag);
+        }
+        setDateAndCacheHeaders(response, lastModified);
         if (HttpUtil.isKeepAlive(request)) {
             response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
         }
 
+        // Write the content.
+        // FileRegion (sendfile) can't be used when content is encrypted by SslHandler
+        boolean useFileRegion = OLD_ALGO && config.sendfile && ctx.pipeline().get(SslHandler.class) == null;
+        List<Object> content = new ArrayList<>();
+        boolean completed = false;
+        try {
+            if (ranges == null) {
+                setContentTypeHeader(response, contentType);
+                HttpUtil.setContentLength(response, fileLength);
+                content.add(newContent(file, cachedContent, 0, fileLength, useFileRegion));
+            } else if (ranges.size() == 1) {
+                Range range = ranges.get(0);
+                setContentTypeHeader(response, contentType);
+                response.headers().set(HttpHeaderNames.CONTENT_RANGE, range.toContentRange(fileLength));
+                HttpUtil.setContentLength(response, range.length());
+                content.add(newContent(file, cachedContent, range.start, range.length(), useFileRegion));
+            } else {
+                String partContentType = contentType == null ? ContentType.UNIVERSAL.forPath(file) : contentType;
+                String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+                response.headers().set(HttpHeaderNames.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+                long contentLength = 0;
+                for (Range range : ranges) {
+                    ByteBuf partHeader = Unpooled.copiedBuffer("\r\n--" + boundary + "\r\nContent-Type: " + partContentType
+                            + "\r\nContent-Range: " + range.toContentRange(fileLength) + "\r\n\r\n", CharsetUtil.US_ASCII);
+                    contentLength += partHeader.readableBytes() + range.length();
+                    content.add(partHeader);
+                    content.add(newContent(file, cachedContent, range.start, range.length(), useFileRegion));
+                }
+                ByteBuf end = Unpooled.copiedBuffer("\r\n--" + boundary + "--\r\n", CharsetUtil.US_ASCII);
+                contentLength += end.readableBytes();
+                content.add(end);
+                HttpUtil.setContentLength(response, contentLength);
+            }
+            completed = true;
+        } catch (IOException e) {
+            sendError(ctx, NOT_FOUND);
+            return;
+        } finally {
+            if (!completed) releaseContent(content);
+        }
+
         // Write the initial line and the header.
         ctx.write(response);
-
-        // Write the content.
-        ChannelFuture sendFileFuture;
-        ChannelFuture lastContentFuture;
-        if (OLD_ALGO) {
-            sendFileFuture =
-                    ctx.write(new DefaultFileRegion(raf.getChannel(), 0, fileLength), ctx.newProgressivePromise());
-            // Write the end marker.
-            lastContentFuture = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
-            lastContentFuture.addListener(new ClosingChannelFutureListener(raf));
-        } else {
-            sendFileFuture =
-                    ctx.writeAndFlush(new HttpChunkedInput(new ChunkedFile(raf, 0, fileLength, 8192)),
-                            ctx.newProgressivePromise());
-            // HttpChunkedInput will write the end marker (LastHttpContent) for us.
-            lastContentFuture = sendFileFuture;
+        for (Object o : content) {
+            ctx.write(o);
         }
+        // Write the end marker.
+        ChannelFuture lastContentFuture = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
 
         // Decide whether to close the connection or not.
         if (!HttpUtil.isKeepAlive(request)) {
@@ -275,6 +468,82 @@ public class FileServerHandler extends SimpleChannelInboundHandler<FullHttpReque
         }
     }
 
+    private Object newContent(File file, ByteBuf cachedContent, long start, long length, boolean useFileRegion) throws IOException {
+        if (cachedContent != null) {
+            return cachedContent.retainedSlice((int) start, (int) length);
+        }
+        if (useFileRegion) {
+            return new DefaultFileRegion(file, start, length);
+        }
+        // Chunks are read into buffers of channel allocator (pooled by default)
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ChunkedNioFile(channel, start, length, config.chunkSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void releaseContent(List<Object> content) {
+        for (Object o : content) {
+            if (o instanceof ChunkedInput) {
+                try {
+                    ((ChunkedInput<?>) o).close();
+                } catch (Exception ignored) {
+                    // Nothing was written, file is closed anyway
+                }
+            } else {
+                ReferenceCountUtil.release(o);
+            }
+        }
+    }
+
+    /**
+     * Strong ETag is the file digest from updates index with modification time, weak ETag is used for files out of index
+     * Index is checked only by file size, modification time changes ETag of a file changed before the index is synced
+     */
+    private String getETag(File file, long fileLength, long lastModified) {
+        if (updatesManager != null) {
+            Path relative = base.relativize(file.toPath());
+            if (relative.getNameCount() > 1) {
+                HashedDir dir = updatesManager.getUpdate(relative.getName(0).toString());
+                if (dir != null) {
+                    List<String> path = new ArrayList<>(relative.getNameCount() - 1);
+                    for (int i = 1; i < relative.getNameCount(); ++i) {
+                        path.add(relative.getName(i).toString());
+                    }
+                    HashedEntry entry = dir.resolve(path);
+                    if (entry instanceof HashedFile && ((HashedFile) entry).size == fileLength) {
+                        byte[] digest = ((HashedFile) entry).getDigest();
+                        if (digest != null) {
+                            return "\"" + SecurityHelper.toHex(digest) + "-" + Long.toHexString(lastModified) + "\"";
+                        }
+                    }
+                }
+            }
+        }
+        return "W/\"" + Long.toHexString(fileLength) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    static final class Range {
+        final long start;
+        final long end; // Inclusive
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start + 1;
+        }
+
+        String toContentRange(long fileLength) {
+            return "bytes " + start + "-" + end + "/" + fileLength;
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         cause.printStackTrace();
@@ -7,6 +7,9 @@ import pro.gravit.launchserver.LaunchServer;
 import pro.gravit.launchserver.socket.WebSocketService;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
 
 public abstract class SimpleResponse implements WebSocketServerResponse {
     public UUID requestUUID;
@@ -14,6 +17,10 @@ public abstract class SimpleResponse implements WebSocketServerResponse {
     public transient WebSocketService service;
     public transient ChannelHandlerContext ctx;
     public transient String ip;
+    /**
+     * Set by {@link #whenComplete}, response is finished when it is completed
+     */
+    public transient CompletableFuture<?> completion;
 
     public void sendResult(RequestEvent result) {
         result.requestUUID = requestUUID;
@@ -25,9 +32,23 @@ public abstract class SimpleResponse implements WebSocketServerResponse {
         service.sendObjectAndClose(ctx, result);
     }
 
+    /**
+     * Continue response when future is completed. Callback is called in response executor (channel event loop if it is disabled),
+     * never in provider thread. Next blocking responses of this channel wait for callback
+     *
+     * @param callback receives result or unwrapped error
+     */
+    protected <T> void whenComplete(CompletableFuture<T> future, BiConsumer<T, Throwable> callback) {
+        completion = future.handleAsync((result, error) -> {
+            callback.accept(result, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            return null;
+        }, service.getCompletionExecutor(ctx.channel()));
+    }
+
     public void sendError(String errorMessage) {
         ErrorRequestEvent event = new ErrorRequestEvent(errorMessage);
         event.requestUUID = requestUUID;
+        service.metrics.errors.increment();
         service.sendObject(ctx, event);
     }
 }
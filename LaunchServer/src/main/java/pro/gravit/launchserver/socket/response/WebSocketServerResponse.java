@@ -8,4 +8,13 @@ public interface WebSocketServerResponse extends WebSocketRequest {
     String getType();
 
     void execute(ChannelHandlerContext ctx, Client client) throws Exception;
+
+    /**
+     * Blocking responses (database, http requests) are executed outside of netty event loop
+     *
+     * @return true if execute may block
+     */
+    default boolean isBlocking() {
+        return false;
+    }
 }
@@ -29,10 +29,15 @@ public class AuthResponse extends SimpleResponse {
         return "auth";
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     public void execute(ChannelHandlerContext ctx, Client clientData) throws Exception {
+        AuthContext context;
         try {
-            AuthRequestEvent result = new AuthRequestEvent();
             AuthProviderPair pair;
             if (auth_id == null || auth_id.isEmpty()) pair = server.config.getAuthProviderPair();
             else pair = server.config.getAuthProviderPair(auth_id);
@@ -40,23 +45,42 @@ public class AuthResponse extends SimpleResponse {
                 sendError("auth_id incorrect");
                 return;
             }
-            AuthContext context = server.authManager.makeAuthContext(clientData, authType, pair, login, client, ip);
+            context = server.authManager.makeAuthContext(clientData, authType, pair, login, client, ip);
             server.authManager.check(context);
             password = server.authManager.decryptPassword(password);
             server.authHookManager.preHook.hook(context, clientData);
-            context.report = server.authManager.auth(context, password);
-            server.authHookManager.postHook.hook(context, clientData);
-            if (context.report.isUsingOAuth()) {
-                result.oauth = new AuthRequestEvent.OAuthRequestEvent(context.report.oauthAccessToken(), context.report.oauthRefreshToken(), context.report.oauthExpire());
-            }
-            if (context.report.minecraftAccessToken() != null) {
-                result.accessToken = context.report.minecraftAccessToken();
-            }
-            result.playerProfile = server.authManager.getPlayerProfile(clientData);
-            sendResult(result);
         } catch (AuthException | HookException e) {
+            service.metrics.authFailure.increment();
             sendError(e.getMessage());
+            return;
         }
+        // Provider may complete it later in its own thread, response executor thread is not held
+        whenComplete(server.authManager.authAsync(context, password, service.getCompletionExecutor(ctx.channel())), (report, error) -> {
+            try {
+                if (error != null) {
+                    service.metrics.authFailure.increment();
+                    throw error;
+                }
+                context.report = report;
+                service.metrics.authSuccess.increment();
+                service.updateClientIndex(ctx.channel());
+                server.authHookManager.postHook.hook(context, clientData);
+                AuthRequestEvent result = new AuthRequestEvent();
+                if (context.report.isUsingOAuth()) {
+                    result.oauth = new AuthRequestEvent.OAuthRequestEvent(context.report.oauthAccessToken(), context.report.oauthRefreshToken(), context.report.oauthExpire());
+                }
+                if (context.report.minecraftAccessToken() != null) {
+                    result.accessToken = context.report.minecraftAccessToken();
+                }
+                result.playerProfile = server.authManager.getPlayerProfile(clientData);
+                sendResult(result);
+            } catch (AuthException | HookException e) {
+                sendError(e.getMessage());
+            } catch (Throwable e) {
+                logger.error("Auth error", e);
+                sendError("Internal Auth Error");
+            }
+        });
     }
 
     public enum ConnectTypes {
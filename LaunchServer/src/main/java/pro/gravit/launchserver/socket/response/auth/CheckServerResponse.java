@@ -5,7 +5,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pro.gravit.launcher.events.request.CheckServerRequestEvent;
 import pro.gravit.launchserver.auth.AuthException;
-import pro.gravit.launchserver.manangers.AuthManager;
 import pro.gravit.launchserver.socket.Client;
 import pro.gravit.launchserver.socket.response.SimpleResponse;
 import pro.gravit.utils.HookException;
@@ -21,32 +20,53 @@ public class CheckServerResponse extends SimpleResponse {
         return "checkServer";
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     public void execute(ChannelHandlerContext ctx, Client pClient) {
         if (pClient.permissions == null || !pClient.permissions.hasPerm("launchserver.checkserver")) {
             sendError("Permissions denied");
             return;
         }
-        CheckServerRequestEvent result = new CheckServerRequestEvent();
         try {
             server.authHookManager.checkServerHook.hook(this, pClient);
-            AuthManager.CheckServerReport report = server.authManager.checkServer(pClient, username, serverID);
-            if(report == null) {
+        } catch (HookException e) {
+            sendError(e.getMessage());
+            return;
+        }
+        // Provider may complete it later in its own thread, response executor thread is not held
+        whenComplete(server.authManager.checkServerAsync(pClient, username, serverID, service.getCompletionExecutor(ctx.channel())), (report, error) -> {
+            if (error != null) {
+                onError(error);
+                return;
+            }
+            if (report == null) {
                 sendError("User not verified");
                 return;
             }
+            CheckServerRequestEvent result = new CheckServerRequestEvent();
             result.playerProfile = report.playerProfile;
             result.uuid = report.uuid;
-            server.authHookManager.postCheckServerHook.hook(report, pClient);
+            try {
+                server.authHookManager.postCheckServerHook.hook(report, pClient);
+            } catch (Exception e) {
+                onError(e);
+                return;
+            }
             logger.debug("checkServer: {} uuid: {} serverID: {}", result.playerProfile == null ? null : result.playerProfile.username, result.uuid, serverID);
-        } catch (AuthException | HookException e) {
+            sendResult(result);
+        });
+    }
+
+    private void onError(Throwable e) {
+        if (e instanceof AuthException || e instanceof HookException) {
             sendError(e.getMessage());
-            return;
-        } catch (Exception e) {
+        } else {
             logger.error("Internal authHandler error", e);
             sendError("Internal authHandler error");
-            return;
         }
-        sendResult(result);
     }
 }
@@ -21,6 +21,11 @@ public class JoinServerResponse extends SimpleResponse {
         return "joinServer";
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     public void execute(ChannelHandlerContext ctx, Client client) {
         if (!client.isAuth || client.type != AuthResponse.ConnectTypes.CLIENT) {
@@ -31,29 +36,39 @@ public class JoinServerResponse extends SimpleResponse {
             sendError("Invalid request");
             return;
         }
-        boolean success;
         try {
             server.authHookManager.joinServerHook.hook(this, client);
             if (server.config.protectHandler instanceof JoinServerProtectHandler) {
-                success = ((JoinServerProtectHandler) server.config.protectHandler).onJoinServer(serverID, username, client);
+                boolean success = ((JoinServerProtectHandler) server.config.protectHandler).onJoinServer(serverID, username, client);
                 if (!success) {
                     sendResult(new JoinServerRequestEvent(false));
                     return;
                 }
             }
-            success = server.authManager.joinServer(client, username, accessToken, serverID);
+        } catch (Exception e) {
+            onError(e);
+            return;
+        }
+        // Provider may complete it later in its own thread, response executor thread is not held
+        whenComplete(server.authManager.joinServerAsync(client, username, accessToken, serverID), (success, error) -> {
+            if (error != null) {
+                onError(error);
+                return;
+            }
             if (success) {
                 logger.debug("joinServer: {} accessToken: {} serverID: {}", username, accessToken, serverID);
             }
-        } catch (AuthException | HookException | SecurityException e) {
+            sendResult(new JoinServerRequestEvent(success));
+        });
+    }
+
+    private void onError(Throwable e) {
+        if (e instanceof AuthException || e instanceof HookException || e instanceof SecurityException) {
             sendError(e.getMessage());
-            return;
-        } catch (Exception e) {
+        } else {
             logger.error("Join Server error", e);
             sendError("Internal authHandler error");
-            return;
         }
-        sendResult(new JoinServerRequestEvent(success));
     }
 
 }
@@ -17,6 +17,11 @@ public class RefreshTokenResponse extends SimpleResponse {
         return "refreshToken";
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     public void execute(ChannelHandlerContext ctx, Client client) throws Exception {
         if (refreshToken == null) {
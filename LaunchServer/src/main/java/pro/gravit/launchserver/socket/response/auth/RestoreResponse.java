@@ -43,6 +43,11 @@ public class RestoreResponse extends SimpleResponse {
         return "restore";
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     public void execute(ChannelHandlerContext ctx, Client client) throws Exception {
         if (accessToken == null && !client.isAuth && needUserInfo) {
@@ -90,6 +95,7 @@ public class RestoreResponse extends SimpleResponse {
                 }
             });
         }
+        service.updateClientIndex(ctx.channel());
         if (needUserInfo && client.isAuth) {
             sendResult(new RestoreRequestEvent(CurrentUserResponse.collectUserInfoFromClient(server, client), invalidTokens));
         } else {
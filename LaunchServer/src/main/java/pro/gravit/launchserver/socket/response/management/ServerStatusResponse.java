@@ -17,11 +17,15 @@ public class ServerStatusResponse extends SimpleResponse {
         ServerStatusRequestEvent event = new ServerStatusRequestEvent(server.config.projectName);
         event.totalJavaMemory = JVMHelper.RUNTIME.totalMemory();
         event.freeJavaMemory = JVMHelper.RUNTIME.freeMemory();
-        event.shortLatency = (service.shortRequestLatency.get() / service.shortRequestCounter.get()) / 1_000_000;
-        event.middleLatency = (service.middleRequestLatency.get() / service.middleRequestCounter.get()) / 1_000_000;
-        event.longLatency = (service.longRequestLatency.get() / service.longRequestCounter.get()) / 1_000_000;
-        event.latency = ((service.shortRequestLatency.get() + service.middleRequestLatency.get() + service.longRequestLatency.get()) /
-                (service.shortRequestCounter.get() + service.middleRequestCounter.get() + service.longRequestCounter.get())) / 1_000_000;
+        event.shortLatency = averageMillis(service.shortRequestLatency.get(), service.shortRequestCounter.get());
+        event.middleLatency = averageMillis(service.middleRequestLatency.get(), service.middleRequestCounter.get());
+        event.longLatency = averageMillis(service.longRequestLatency.get(), service.longRequestCounter.get());
+        event.latency = averageMillis(service.shortRequestLatency.get() + service.middleRequestLatency.get() + service.longRequestLatency.get(),
+                service.shortRequestCounter.get() + service.middleRequestCounter.get() + service.longRequestCounter.get());
         sendResult(event);
     }
+
+    private static long averageMillis(long nanos, long count) {
+        return count == 0 ? 0 : (nanos / count) / 1_000_000;
+    }
 }
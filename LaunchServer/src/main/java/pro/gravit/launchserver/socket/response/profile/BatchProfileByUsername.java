@@ -2,11 +2,13 @@ package pro.gravit.launchserver.socket.response.profile;
 
 import io.netty.channel.ChannelHandlerContext;
 import pro.gravit.launcher.events.request.BatchProfileByUsernameRequestEvent;
-import pro.gravit.launcher.profiles.PlayerProfile;
 import pro.gravit.launchserver.auth.AuthProviderPair;
 import pro.gravit.launchserver.socket.Client;
 import pro.gravit.launchserver.socket.response.SimpleResponse;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class BatchProfileByUsername extends SimpleResponse {
     Entry[] list;
 
@@ -15,6 +17,11 @@ public class BatchProfileByUsername extends SimpleResponse {
         return "batchProfileByUsername";
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     public void execute(ChannelHandlerContext ctx, Client client) throws Exception {
         BatchProfileByUsernameRequestEvent result = new BatchProfileByUsernameRequestEvent();
@@ -22,14 +29,15 @@ public class BatchProfileByUsername extends SimpleResponse {
             sendError("Invalid request");
             return;
         }
-        result.playerProfiles = new PlayerProfile[list.length];
-        for (int i = 0; i < list.length; ++i) {
-            AuthProviderPair pair = client.auth;
-            if (pair == null) {
-                pair = server.config.getAuthProviderPair();
-            }
-            result.playerProfiles[i] = server.authManager.getPlayerProfile(pair, list[i].username);
+        AuthProviderPair pair = client.auth;
+        if (pair == null) {
+            pair = server.config.getAuthProviderPair();
+        }
+        List<String> usernames = new ArrayList<>(list.length);
+        for (Entry entry : list) {
+            usernames.add(entry == null ? null : entry.username);
         }
+        result.playerProfiles = server.authManager.getPlayerProfiles(pair, usernames);
         sendResult(result);
     }
 
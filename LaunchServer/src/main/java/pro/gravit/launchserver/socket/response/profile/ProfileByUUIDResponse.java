@@ -18,6 +18,11 @@ public class ProfileByUUIDResponse extends SimpleResponse {
         return "profileByUUID";
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     public void execute(ChannelHandlerContext ctx, Client client) throws Exception {
         AuthProviderPair pair;
@@ -16,6 +16,11 @@ public class ProfileByUsername extends SimpleResponse {
         return "profileByUsername";
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     public void execute(ChannelHandlerContext ctx, Client client) throws Exception {
         AuthProviderPair pair = client.auth;
@@ -15,6 +15,11 @@ public class HardwareReportResponse extends SimpleResponse {
         return "hardwareReport";
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     public void execute(ChannelHandlerContext ctx, Client client) {
         if (client.trustLevel == null || client.trustLevel.publicKey == null) {
@@ -1,13 +1,11 @@
 package pro.gravit.launchserver.socket.response.update;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import pro.gravit.launcher.events.request.UpdateRequestEvent;
-import pro.gravit.launcher.hasher.HashedDir;
 import pro.gravit.launchserver.auth.protect.interfaces.ProfilesProtectHandler;
-import pro.gravit.launchserver.config.LaunchServerConfig;
 import pro.gravit.launchserver.socket.Client;
+import pro.gravit.launchserver.socket.WebSocketService;
 import pro.gravit.launchserver.socket.response.SimpleResponse;
-import pro.gravit.utils.helper.IOHelper;
 
 public class UpdateResponse extends SimpleResponse {
     public String dirName;
@@ -27,18 +25,12 @@ public class UpdateResponse extends SimpleResponse {
             sendError("Invalid request");
             return;
         }
-        HashedDir dir = server.updatesManager.getUpdate(dirName);
-        if (dir == null) {
+        // UpdateRequestEvent is serialized once per sync and protocol
+        ByteBuf payload = server.updatesManager.getUpdatePayload(dirName, WebSocketService.isBinaryProtocol(ctx.channel()));
+        if (payload == null) {
             sendError(String.format("Directory %s not found", dirName));
             return;
         }
-        String url = server.config.netty.downloadURL.replace("%dirname%", IOHelper.urlEncode(dirName));
-        boolean zip = false;
-        if (server.config.netty.bindings.get(dirName) != null) {
-            LaunchServerConfig.NettyUpdatesBind bind = server.config.netty.bindings.get(dirName);
-            url = bind.url;
-            zip = bind.zip;
-        }
-        sendResult(new UpdateRequestEvent(dir, url, zip));
+        service.sendSerializedResult(ctx, payload, requestUUID);
     }
 }
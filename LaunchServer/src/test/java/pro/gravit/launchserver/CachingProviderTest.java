@@ -0,0 +1,273 @@
+package pro.gravit.launchserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import pro.gravit.launcher.profiles.Texture;
+import pro.gravit.launchserver.auth.core.CachingAuthCoreProvider;
+import pro.gravit.launchserver.auth.core.MemoryAuthCoreProvider;
+import pro.gravit.launchserver.auth.core.User;
+import pro.gravit.launchserver.auth.texture.CachingTextureProvider;
+import pro.gravit.launchserver.auth.texture.TextureProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared tests of CachingAuthCoreProvider and CachingTextureProvider
+ * Backend calls are blocked by latch, so tests do not depend on timing
+ */
+public class CachingProviderTest {
+    private static final UUID UUID_A = UUID.randomUUID();
+
+    public static List<CacheCase> caches() {
+        return Arrays.asList(new UserCacheCase(), new TextureCacheCase());
+    }
+
+    @ParameterizedTest
+    @MethodSource("caches")
+    public void cacheTest(CacheCase cache) throws Exception {
+        cache.backend.open();
+        Object value = cache.get("a");
+        Assertions.assertNotNull(value);
+        Assertions.assertSame(value, cache.get("a"));
+        Assertions.assertEquals(1, cache.backend.calls.get());
+        // Not found values are cached too
+        Assertions.assertNull(cache.get("missing"));
+        Assertions.assertNull(cache.get("missing"));
+        Assertions.assertEquals(2, cache.backend.calls.get());
+        cache.invalidate("a");
+        cache.get("a");
+        Assertions.assertEquals(3, cache.backend.calls.get());
+    }
+
+    @ParameterizedTest
+    @MethodSource("caches")
+    public void singleLoadTest(CacheCase cache) throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < threads; ++i) {
+            results.add(executor.submit(() -> cache.get("a")));
+        }
+        cache.backend.awaitCalls(1);
+        cache.backend.open();
+        Object value = results.get(0).get();
+        for (Future<Object> result : results) {
+            Assertions.assertSame(value, result.get());
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        // Threads came after load completed get cached value
+        Assertions.assertEquals(1, cache.backend.calls.get());
+    }
+
+    @ParameterizedTest
+    @MethodSource("caches")
+    public void invalidateDuringLoadTest(CacheCase cache) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Object> load = executor.submit(() -> cache.get("a"));
+        cache.backend.awaitCalls(1);
+        cache.invalidate("other");
+        cache.backend.open();
+        Object value = load.get();
+        // Invalidation of other key does not drop loaded value
+        Assertions.assertSame(value, cache.get("a"));
+        Assertions.assertEquals(1, cache.backend.calls.get());
+
+        cache.invalidate("a");
+        cache.backend.close();
+        load = executor.submit(() -> cache.get("a"));
+        cache.backend.awaitCalls(2);
+        cache.invalidate("a");
+        cache.backend.open();
+        load.get();
+        // Value loaded before invalidation of its key is not cached
+        cache.get("a");
+        Assertions.assertEquals(3, cache.backend.calls.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void userBatchTest() {
+        UserCacheCase cache = new UserCacheCase();
+        cache.backend.open();
+        User first = cache.cache.getUserByUsername("first");
+        List<User> users = cache.cache.getUsersByUsernames(Arrays.asList("second", "first", null));
+        Assertions.assertEquals(3, users.size());
+        Assertions.assertEquals("second", users.get(0).getUsername());
+        Assertions.assertSame(first, users.get(1));
+        Assertions.assertNull(users.get(2));
+        Assertions.assertSame(users.get(0), cache.cache.getUserByUsername("second"));
+        Assertions.assertSame(first, cache.cache.getUserByUUID(first.getUUID()));
+        Assertions.assertEquals(2, cache.backend.calls.get());
+    }
+
+    @Test
+    public void textureRefreshTest() throws Exception {
+        TextureCacheCase cache = new TextureCacheCase();
+        cache.cache.refreshAfterMillis = 1;
+        cache.backend.open();
+        Texture skin = cache.cache.getSkinTexture(UUID_A, "a", null);
+        long loadTime = System.currentTimeMillis();
+        while (System.currentTimeMillis() <= loadTime + 1) {
+            Thread.onSpinWait();
+        }
+        cache.backend.close();
+        // Old value is returned while new one is loaded in background
+        Assertions.assertSame(skin, cache.cache.getSkinTexture(UUID_A, "a", null));
+        cache.backend.awaitCalls(2);
+        cache.cache.refreshAfterMillis = 0;
+        cache.backend.open();
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            while (cache.cache.getRefreshes() == 0) {
+                Thread.onSpinWait();
+            }
+        });
+        Assertions.assertNotSame(skin, cache.cache.getSkinTexture(UUID_A, "a", null));
+        Assertions.assertEquals(2, cache.backend.calls.get());
+        // Assets are cached separately
+        Assertions.assertNotNull(cache.cache.getAssets(UUID_A, "a", null).get("SKIN"));
+        cache.cache.close();
+    }
+
+    /**
+     * Backend calls wait until latch is opened
+     */
+    private static class Backend {
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile CountDownLatch latch = new CountDownLatch(1);
+
+        private void call() {
+            calls.incrementAndGet();
+            try {
+                if (!latch.await(30, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Backend latch is not opened");
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void open() {
+            latch.countDown();
+        }
+
+        private void close() {
+            latch = new CountDownLatch(1);
+        }
+
+        private void awaitCalls(int count) {
+            Assertions.assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+                while (calls.get() < count) {
+                    Thread.onSpinWait();
+                }
+            });
+        }
+    }
+
+    public abstract static class CacheCase {
+        protected final Backend backend = new Backend();
+
+        /**
+         * @param name "missing" is not found by backend
+         */
+        protected abstract Object get(String name) throws Exception;
+
+        protected abstract void invalidate(String name);
+    }
+
+    private static class UserCacheCase extends CacheCase {
+        private final CachingAuthCoreProvider cache = new CachingAuthCoreProvider();
+
+        private UserCacheCase() {
+            cache.provider = new MemoryAuthCoreProvider() {
+                @Override
+                public User getUserByUsername(String username) {
+                    backend.call();
+                    return "missing".equals(username) ? null : super.getUserByUsername(username);
+                }
+
+                @Override
+                public List<User> getUsersByUsernames(List<String> usernames) {
+                    backend.call();
+                    List<User> users = new ArrayList<>(usernames.size());
+                    for (String username : usernames) {
+                        users.add(super.getUserByUsername(username));
+                    }
+                    return users;
+                }
+            };
+            cache.init(null);
+        }
+
+        @Override
+        protected Object get(String name) {
+            return cache.getUserByUsername(name);
+        }
+
+        @Override
+        protected void invalidate(String name) {
+            cache.invalidate(name);
+        }
+
+        @Override
+        public String toString() {
+            return "CachingAuthCoreProvider";
+        }
+    }
+
+    private static class TextureCacheCase extends CacheCase {
+        private final CachingTextureProvider cache = new CachingTextureProvider();
+
+        private TextureCacheCase() {
+            cache.provider = new TextureProvider() {
+                @Override
+                public Texture getCloakTexture(UUID uuid, String username, String client) {
+                    backend.call();
+                    return null;
+                }
+
+                @Override
+                public Texture getSkinTexture(UUID uuid, String username, String client) {
+                    backend.call();
+                    if ("missing".equals(username)) return null;
+                    return new Texture("https://example.com/skins/" + username + ".png", new byte[0], null);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        private static UUID toUUID(String name) {
+            return UUID.nameUUIDFromBytes(name.getBytes());
+        }
+
+        @Override
+        protected Object get(String name) throws Exception {
+            return cache.getSkinTexture(toUUID(name), name, null);
+        }
+
+        @Override
+        protected void invalidate(String name) {
+            cache.invalidate(toUUID(name));
+        }
+
+        @Override
+        public String toString() {
+            return "CachingTextureProvider";
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package pro.gravit.launchserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pro.gravit.launchserver.helper.ExpiringCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ExpiringCacheTest {
+    @Test
+    public void expireTest() {
+        AtomicLong time = new AtomicLong();
+        ExpiringCache<String, String> cache = new ExpiringCache<>(16, time::get);
+        cache.put("a", "value", 100, cache.stamp());
+        cache.put("b", null, 50, cache.stamp());
+        Assertions.assertEquals("value", cache.get("a").getValue());
+        Assertions.assertNotNull(cache.get("b"));
+        Assertions.assertNull(cache.get("b").getValue());
+        time.set(50);
+        Assertions.assertNotNull(cache.get("a"));
+        Assertions.assertNull(cache.get("b"));
+        time.set(100);
+        Assertions.assertNull(cache.get("a"));
+        cache.removeExpired();
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidateDuringLoadTest() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(16);
+        long stamp = cache.stamp();
+        // Loads of "a" and "b" are in flight, only "a" is invalidated
+        cache.invalidate("a");
+        cache.put("a", "stale", 1000, stamp);
+        cache.put("b", "value", 1000, stamp);
+        Assertions.assertNull(cache.get("a"));
+        Assertions.assertEquals("value", cache.get("b").getValue());
+        // Load started after invalidation is cached
+        cache.put("a", "fresh", 1000, cache.stamp());
+        Assertions.assertEquals("fresh", cache.get("a").getValue());
+        stamp = cache.stamp();
+        cache.invalidateAll();
+        cache.put("b", "stale", 1000, stamp);
+        Assertions.assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void evictionTest() {
+        ExpiringCache<Integer, String> cache = new ExpiringCache<>(4);
+        for (int i = 0; i < 4; ++i) {
+            cache.put(i, "value" + i, 1000, cache.stamp());
+        }
+        Assertions.assertNotNull(cache.get(0));
+        // Full cache keeps caching new values, least recently used one is evicted
+        cache.put(4, "value4", 1000, cache.stamp());
+        Assertions.assertEquals(4, cache.size());
+        Assertions.assertNotNull(cache.get(4));
+        Assertions.assertNotNull(cache.get(0));
+        Assertions.assertNull(cache.get(1));
+    }
+}
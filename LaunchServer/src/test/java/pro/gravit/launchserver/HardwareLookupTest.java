@@ -0,0 +1,234 @@
+package pro.gravit.launchserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pro.gravit.launcher.request.secure.HardwareReportRequest;
+import pro.gravit.launchserver.auth.MySQLSourceConfig;
+import pro.gravit.launchserver.auth.core.MySQLCoreProvider;
+import pro.gravit.launchserver.auth.core.interfaces.UserHardware;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class HardwareLookupTest {
+    private static HardwareReportRequest.HardwareInfo hardware(String hwDiskId, String baseboardSerialNumber, byte[] displayId) {
+        HardwareReportRequest.HardwareInfo info = new HardwareReportRequest.HardwareInfo();
+        info.hwDiskId = hwDiskId;
+        info.baseboardSerialNumber = baseboardSerialNumber;
+        info.displayId = displayId;
+        info.logicalProcessors = 8;
+        info.physicalProcessors = 4;
+        info.processorMaxFreq = 3600;
+        info.totalMemory = 16L * 1024 * 1024 * 1024;
+        return info;
+    }
+
+    private static MySQLCoreProvider provider(HwidTable table) {
+        MySQLCoreProvider provider = new MySQLCoreProvider();
+        provider.mySQLHolder = new MySQLSourceConfig("test", table.source(), false);
+        provider.uuidColumn = "uuid";
+        provider.usernameColumn = "username";
+        provider.accessTokenColumn = "accessToken";
+        provider.passwordColumn = "password";
+        provider.serverIDColumn = "serverID";
+        provider.hardwareIdColumn = "hwidId";
+        provider.table = "users";
+        provider.init(null);
+        return provider;
+    }
+
+    @Test
+    public void fuzzyMatchTest() {
+        MySQLCoreProvider provider = new MySQLCoreProvider();
+        Assertions.assertTrue(provider.hardwareIndexedLookup);
+        HardwareReportRequest.HardwareInfo banned = hardware("S3Z9NB0K123456A", "ABC", new byte[]{1, 2, 3, 4});
+        HardwareReportRequest.HardwareInfo changed = hardware("S3Z9NB0K123456B", "XYZ", new byte[]{5, 6, 7, 8});
+        Assertions.assertNotEquals(banned.hwDiskId, changed.hwDiskId);
+        Assertions.assertNotEquals(banned.baseboardSerialNumber, changed.baseboardSerialNumber);
+        Assertions.assertTrue(provider.isSimilarHardware(banned, changed));
+        HardwareReportRequest.HardwareInfo other = hardware("WD-WCC4N0123456", "XYZ", new byte[]{5, 6, 7, 8});
+        Assertions.assertFalse(provider.isSimilarHardware(banned, other));
+    }
+
+    @Test
+    public void indexedLookupTest() {
+        HwidTable table = new HwidTable(true);
+        MySQLCoreProvider provider = provider(table);
+        UserHardware banned = provider.createHardwareInfo(hardware("S3Z9NB0K123456A", "ABC", new byte[]{1, 2, 3, 4}), new byte[]{1});
+        // Shortlisted by baseboard, but not similar
+        provider.createHardwareInfo(hardware("WD-WCC4N0123456", "XYZ", new byte[]{9, 9, 9, 9}), new byte[]{2});
+        provider.createHardwareInfo(hardware("ST1000DM003-1CH1", "DEF", new byte[]{7, 7, 7, 7}), new byte[]{3});
+        Assertions.assertNotNull(table.rows.get(0).get("displayIdHash"));
+        // hwDiskId, baseboard and display differ, row is selected by hwDiskId start and scored as fuzzy match
+        UserHardware found = provider.getHardwareInfoByData(hardware("S3Z9NB0K123456B", "XYZ", new byte[]{5, 6, 7, 8}));
+        Assertions.assertTrue(table.lastQuery.contains("WHERE"));
+        Assertions.assertEquals(2, table.lastSelected);
+        Assertions.assertNotNull(found);
+        Assertions.assertEquals(banned.getId(), found.getId());
+        // Selected by displayId hash only
+        found = provider.getHardwareInfoByData(hardware("XXXXXXXXXXXXXXXX", "GHI", new byte[]{1, 2, 3, 4}));
+        Assertions.assertEquals(1, table.lastSelected);
+        Assertions.assertNotNull(found);
+        Assertions.assertEquals(banned.getId(), found.getId());
+        Assertions.assertNull(provider.getHardwareInfoByData(hardware("HGST-HTS7210A9E6", "JKL", new byte[]{5, 6, 7, 8})));
+        Assertions.assertEquals(0, table.lastSelected);
+    }
+
+    @Test
+    public void fullScanWithoutKeyColumnsTest() {
+        HwidTable table = new HwidTable(false);
+        MySQLCoreProvider provider = provider(table);
+        UserHardware banned = provider.createHardwareInfo(hardware("S3Z9NB0K123456A", "ABC", new byte[]{1, 2, 3, 4}), new byte[]{1});
+        provider.createHardwareInfo(hardware("WD-WCC4N0123456", "XYZ", new byte[]{9, 9, 9, 9}), new byte[]{2});
+        Assertions.assertFalse(table.rows.get(0).containsKey("displayIdHash"));
+        UserHardware found = provider.getHardwareInfoByData(hardware("S3Z9NB0K123456B", "XYZ", new byte[]{5, 6, 7, 8}));
+        Assertions.assertFalse(table.lastQuery.contains("WHERE"));
+        Assertions.assertNotNull(found);
+        Assertions.assertEquals(banned.getId(), found.getId());
+    }
+
+    /**
+     * In-memory hwids table behind JDBC proxies, supports queries used by MySQLCoreProvider hardware methods
+     */
+    private static class HwidTable {
+        private static final Pattern CONDITION = Pattern.compile("`(\\w+)` = \\?");
+        final List<Map<Object, Object>> rows = new ArrayList<>();
+        final boolean keyColumns;
+        String lastQuery;
+        int lastSelected;
+
+        HwidTable(boolean keyColumns) {
+            this.keyColumns = keyColumns;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(HwidTable.class.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) return false;
+            if (type == int.class) return 0;
+            if (type == long.class) return 0L;
+            return null;
+        }
+
+        DataSource source() {
+            return proxy(DataSource.class, (p, method, args) -> method.getName().equals("getConnection") ? connection() : defaultValue(method.getReturnType()));
+        }
+
+        private Connection connection() {
+            return proxy(Connection.class, (p, method, args) -> switch (method.getName()) {
+                case "prepareStatement" -> statement((String) args[0]);
+                case "getMetaData" -> proxy(DatabaseMetaData.class, (m, metaMethod, metaArgs) -> metaMethod.getName().equals("getColumns")
+                        ? resultSet(keyColumns ? List.of(Map.of("COLUMN_NAME", metaArgs[3])) : List.of())
+                        : defaultValue(metaMethod.getReturnType()));
+                default -> defaultValue(method.getReturnType());
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            Map<Integer, Object> params = new HashMap<>();
+            Object[] generatedId = new Object[1];
+            return proxy(PreparedStatement.class, (p, method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer index) {
+                    Object value = args[1];
+                    params.put(index, value instanceof InputStream stream ? stream.readAllBytes() : value);
+                    return null;
+                }
+                switch (name) {
+                    case "executeUpdate" -> {
+                        generatedId[0] = insert(sql, params);
+                        return 1;
+                    }
+                    case "executeQuery" -> {
+                        return select(sql, params);
+                    }
+                    case "getGeneratedKeys" -> {
+                        return resultSet(List.of(Map.of(1, generatedId[0])));
+                    }
+                    default -> {
+                        return defaultValue(method.getReturnType());
+                    }
+                }
+            });
+        }
+
+        private long insert(String sql, Map<Integer, Object> params) {
+            Assertions.assertTrue(sql.startsWith("INSERT"));
+            String[] columns = sql.substring(sql.indexOf('(') + 1, sql.indexOf(')')).split(", ");
+            String[] values = sql.substring(sql.lastIndexOf('(') + 1, sql.lastIndexOf(')')).split(", ");
+            Map<Object, Object> row = new HashMap<>();
+            int param = 1;
+            for (int i = 0; i < columns.length; ++i) {
+                String column = columns[i].replace("`", "");
+                row.put(column, values[i].equals("?") ? params.get(param++) : Boolean.valueOf(values[i].equals("'1'")));
+            }
+            Assertions.assertEquals(params.size() + 1, param);
+            long id = rows.size() + 1;
+            row.put("id", id);
+            rows.add(row);
+            return id;
+        }
+
+        private ResultSet select(String sql, Map<Integer, Object> params) {
+            lastQuery = sql;
+            List<String> conditions = new ArrayList<>();
+            Matcher matcher = CONDITION.matcher(sql);
+            while (matcher.find()) {
+                conditions.add(matcher.group(1));
+            }
+            List<Map<Object, Object>> selected = new ArrayList<>();
+            for (Map<Object, Object> row : rows) {
+                boolean match = conditions.isEmpty();
+                for (int i = 0; i < conditions.size(); ++i) {
+                    Object value = params.get(i + 1);
+                    match |= value != null && Objects.equals(value, row.get(conditions.get(i)));
+                }
+                if (match) selected.add(row);
+            }
+            lastSelected = selected.size();
+            return resultSet(selected);
+        }
+
+        private ResultSet resultSet(List<? extends Map<?, ?>> selected) {
+            Iterator<? extends Map<?, ?>> iterator = selected.iterator();
+            Object[] current = new Object[1];
+            return proxy(ResultSet.class, (p, method, args) -> {
+                if (method.getName().equals("next")) {
+                    current[0] = iterator.hasNext() ? iterator.next() : null;
+                    return current[0] != null;
+                }
+                if (!method.getName().startsWith("get") || args == null || args.length != 1) {
+                    return defaultValue(method.getReturnType());
+                }
+                Object value = ((Map<?, ?>) current[0]).get(args[0]);
+                if (value == null) return defaultValue(method.getReturnType());
+                return switch (method.getName()) {
+                    case "getInt" -> ((Number) value).intValue();
+                    case "getLong" -> ((Number) value).longValue();
+                    case "getBlob" -> proxy(Blob.class, (b, blobMethod, blobArgs) -> blobMethod.getName().equals("getBinaryStream")
+                            ? new ByteArrayInputStream((byte[]) value) : defaultValue(blobMethod.getReturnType()));
+                    default -> value;
+                };
+            });
+        }
+    }
+}
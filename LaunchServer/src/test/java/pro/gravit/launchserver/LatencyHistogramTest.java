@@ -0,0 +1,59 @@
+package pro.gravit.launchserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pro.gravit.launchserver.helper.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LatencyHistogramTest {
+    @Test
+    public void percentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assertions.assertEquals(0, histogram.getValueAtPercentile(99));
+        for (int i = 1; i <= 1000; ++i) {
+            histogram.record(i * 1000L); // 1..1000 micros
+        }
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(500500, histogram.getSumMicros());
+        Assertions.assertEquals(1000, histogram.getMaxMicros());
+        assertNear(500, histogram.getValueAtPercentile(50));
+        assertNear(990, histogram.getValueAtPercentile(99));
+        Assertions.assertEquals(1000, histogram.getValueAtPercentile(100));
+        Assertions.assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void rangeTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-1);
+        Assertions.assertEquals(0, histogram.getValueAtPercentile(50));
+        Assertions.assertEquals(Long.MAX_VALUE / 1000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; ++i) {
+                    histogram.record(i * 1000L);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(80000, histogram.getCount());
+        assertNear(5000, histogram.getValueAtPercentile(50));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assertions.assertTrue(Math.abs(expected - actual) <= expected / 16);
+    }
+}
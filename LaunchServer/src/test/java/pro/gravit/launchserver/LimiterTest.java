@@ -0,0 +1,154 @@
+package pro.gravit.launchserver;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pro.gravit.launchserver.components.IPLimiter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LimiterTest {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static IPLimiter newLimiter(int rateLimit, int rateLimitMillis) {
+        IPLimiter limiter = new IPLimiter() {
+        };
+        limiter.rateLimit = rateLimit;
+        limiter.rateLimitMillis = rateLimitMillis;
+        return limiter;
+    }
+
+    @Test
+    public void limitTest() {
+        IPLimiter limiter = newLimiter(3, 60 * 1000);
+        Assertions.assertTrue(limiter.check("127.0.0.1"));
+        Assertions.assertTrue(limiter.check("127.0.0.1"));
+        Assertions.assertTrue(limiter.check("127.0.0.1"));
+        Assertions.assertFalse(limiter.check("127.0.0.1"));
+        Assertions.assertTrue(limiter.check("127.0.0.2"));
+        limiter.exclude.add("127.0.0.1");
+        Assertions.assertTrue(limiter.check("127.0.0.1"));
+    }
+
+    @Test
+    public void refillTest() throws InterruptedException {
+        IPLimiter limiter = newLimiter(2, 100);
+        Assertions.assertTrue(limiter.check("127.0.0.1"));
+        Assertions.assertTrue(limiter.check("127.0.0.1"));
+        Assertions.assertFalse(limiter.check("127.0.0.1"));
+        Thread.sleep(150);
+        limiter.garbageCollection();
+        Assertions.assertTrue(limiter.check("127.0.0.1"));
+    }
+
+    @Test
+    public void zeroRateLimitTest() throws InterruptedException {
+        // rateLimit 0 allows one attempt per rateLimitMillis
+        IPLimiter limiter = newLimiter(0, 100);
+        Assertions.assertTrue(limiter.check("127.0.0.1"));
+        Assertions.assertFalse(limiter.check("127.0.0.1"));
+        Thread.sleep(150);
+        Assertions.assertTrue(limiter.check("127.0.0.1"));
+    }
+
+    @Test
+    public void concurrentGarbageCollectionTest() throws InterruptedException {
+        int threads = 8, keys = 2000;
+        IPLimiter limiter = newLimiter(1, 60 * 60 * 1000);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread gc = new Thread(() -> {
+            while (running.get()) limiter.garbageCollection();
+        });
+        gc.start();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; ++i) {
+            int thread = i;
+            executor.execute(() -> {
+                // New entries are idle until the first attempt, garbage collection races with it
+                for (int j = 0; j < keys; ++j) {
+                    String key = thread + "-" + j;
+                    if (limiter.check(key)) accepted.incrementAndGet();
+                    if (limiter.check(key)) accepted.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        running.set(false);
+        gc.join();
+        // Attempt counted in entry removed by garbage collection would allow the second one
+        Assertions.assertEquals(threads * keys, accepted.get());
+    }
+
+    /**
+     * Throughput harness: threads check keys shared with other threads, while limit of every key is exceeded
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {8, 16, 32, 64})
+    public void throughputTest(int threads) throws InterruptedException {
+        int keys = 256, rateLimit = 1000, attempts = 50_000;
+        IPLimiter limiter = newLimiter(rateLimit, 60 * 60 * 1000);
+        LongAdder accepted = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; ++i) {
+            int thread = i;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < attempts; ++j) {
+                    if (limiter.check("10.0.0." + (thread + j) % keys)) accepted.increment();
+                }
+            });
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        long time = System.nanoTime() - startTime;
+        logger.info("{} threads: {} checks/s", threads, (long) threads * attempts * TimeUnit.SECONDS.toNanos(1) / time);
+        // Burst of every key is used, then one attempt per 3.6 s is refilled
+        long burst = (long) keys * rateLimit;
+        long refill = keys * (time / TimeUnit.MILLISECONDS.toNanos(3600) + 1);
+        Assertions.assertTrue(accepted.sum() >= Math.min(burst, (long) threads * attempts));
+        Assertions.assertTrue(accepted.sum() <= burst + refill);
+    }
+
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        int threads = 32;
+        IPLimiter limiter = newLimiter(100, 60 * 60 * 1000);
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; ++i) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 1000; ++j) {
+                    if (limiter.check("127.0.0.1")) accepted.incrementAndGet();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        Assertions.assertEquals(100, accepted.get());
+    }
+}
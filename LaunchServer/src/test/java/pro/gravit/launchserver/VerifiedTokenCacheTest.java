@@ -0,0 +1,98 @@
+package pro.gravit.launchserver;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import pro.gravit.launchserver.helper.LegacySessionHelper;
+import pro.gravit.launchserver.helper.VerifiedTokenCache;
+import pro.gravit.utils.helper.SecurityHelper;
+
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class VerifiedTokenCacheTest {
+    private static final long START_TIME = 1_700_000_000_000L;
+    private static final long EXPIRE_MILLIS = 60 * 1000;
+    private static KeyPair keyPair;
+    private final AtomicLong time = new AtomicLong(START_TIME);
+
+    @BeforeAll
+    public static void prepare() {
+        keyPair = SecurityHelper.genECDSAKeyPair(new SecureRandom());
+    }
+
+    private static String makeToken(String username, UUID uuid) {
+        return Jwts.builder()
+                .setIssuer("LaunchServer")
+                .setSubject(username)
+                .claim("uuid", uuid.toString())
+                .setExpiration(new Date(START_TIME + EXPIRE_MILLIS))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+
+    private VerifiedTokenCache newCache(int maxSize) {
+        JwtParser parser = Jwts.parserBuilder()
+                .requireIssuer("LaunchServer")
+                .setClock(() -> new Date(time.get()))
+                .setSigningKey(keyPair.getPublic())
+                .build();
+        return new VerifiedTokenCache(parser, maxSize, time::get);
+    }
+
+    @Test
+    public void expireTest() {
+        VerifiedTokenCache cache = newCache(16);
+        String token = makeToken("test", UUID.randomUUID());
+        Assertions.assertEquals("test", cache.verify(token).username());
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals("test", cache.verify(token).username());
+        // Cached token is verified again after expiration
+        time.set(START_TIME + EXPIRE_MILLIS + 1000);
+        Assertions.assertThrows(ExpiredJwtException.class, () -> cache.verify(token));
+        cache.removeExpired();
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void capacityTest() {
+        VerifiedTokenCache cache = newCache(4);
+        String last = null;
+        for (int i = 0; i < 10; ++i) {
+            last = makeToken("user" + i, UUID.randomUUID());
+            cache.verify(last);
+            Assertions.assertTrue(cache.size() <= 4);
+        }
+        // Full cache keeps caching new tokens
+        int size = cache.size();
+        cache.verify(last);
+        Assertions.assertEquals(size, cache.size());
+        Assertions.assertEquals("user9", cache.verify(last).username());
+    }
+
+    @Test
+    public void differentTokenTest() {
+        VerifiedTokenCache cache = newCache(16);
+        UUID firstUUID = UUID.randomUUID(), secondUUID = UUID.randomUUID();
+        String first = makeToken("first", firstUUID);
+        String second = makeToken("second", secondUUID);
+        LegacySessionHelper.JwtTokenInfo firstInfo = cache.verify(first);
+        LegacySessionHelper.JwtTokenInfo secondInfo = cache.verify(second);
+        Assertions.assertEquals(firstUUID, firstInfo.uuid());
+        Assertions.assertEquals(secondUUID, secondInfo.uuid());
+        Assertions.assertEquals(firstInfo, cache.verify(first));
+        Assertions.assertEquals(secondInfo, cache.verify(second));
+        // Token with other signature is not taken from cache
+        int signatureStart = first.lastIndexOf('.') + 1;
+        char c = first.charAt(signatureStart);
+        String forged = first.substring(0, signatureStart) + (c == 'A' ? 'B' : 'A') + first.substring(signatureStart + 1);
+        Assertions.assertThrows(JwtException.class, () -> cache.verify(forged));
+    }
+}
@@ -0,0 +1,86 @@
+package pro.gravit.launchserver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pro.gravit.launchserver.socket.handlers.WebAPIRouter;
+
+public class WebAPIRouterTest {
+    private static String match(WebAPIRouter<String> router, String method, String uri) {
+        WebAPIRouter.Match<String> match = router.match(method, uri);
+        return match == null ? null : match.route().handler;
+    }
+
+    @Test
+    public void exactAndPrefixTest() {
+        WebAPIRouter<String> router = new WebAPIRouter<>();
+        router.add(null, "/webapi/", true, "webapi");
+        router.add(null, "/webapi/auth", true, "auth");
+        router.add(null, "/webapi/auth/status", false, "status");
+        Assertions.assertEquals("status", match(router, "GET", "/webapi/auth/status"));
+        Assertions.assertEquals("auth", match(router, "GET", "/webapi/auth/status/more"));
+        Assertions.assertEquals("auth", match(router, "GET", "/webapi/auth?user=1"));
+        Assertions.assertEquals("webapi", match(router, "GET", "/webapi/other"));
+        // Prefix routes match whole segments only
+        Assertions.assertEquals("webapi", match(router, "GET", "/webapi/authx"));
+        Assertions.assertNull(match(router, "GET", "/index.html"));
+    }
+
+    @Test
+    public void rawPrefixTest() {
+        WebAPIRouter<String> router = new WebAPIRouter<>();
+        router.add(null, "/webapi/", true, "webapi");
+        router.add(null, "/webapi/auth/status", false, "status");
+        WebAPIRouter.Route<String> legacy = router.addRawPrefix("/webapi/auth", "legacy");
+        // Raw prefix routes match as string prefix, like legacy servlets
+        Assertions.assertEquals("legacy", match(router, "GET", "/webapi/authx"));
+        Assertions.assertEquals("legacy", match(router, "POST", "/webapi/auth/other?user=1"));
+        Assertions.assertEquals("status", match(router, "GET", "/webapi/auth/status"));
+        Assertions.assertEquals("webapi", match(router, "GET", "/webapi/other"));
+        // Longer prefix route wins over shorter raw prefix
+        router.add(null, "/webapi/auth/token", true, "token");
+        Assertions.assertEquals("token", match(router, "GET", "/webapi/auth/token/1"));
+        // Longest raw prefix wins
+        router.addRawPrefix("/webapi/authxyz", "legacyxyz");
+        Assertions.assertEquals("legacyxyz", match(router, "GET", "/webapi/authxyz/1"));
+        Assertions.assertEquals("legacy", match(router, "GET", "/webapi/authxy"));
+        Assertions.assertTrue(router.remove(legacy));
+        Assertions.assertEquals("webapi", match(router, "GET", "/webapi/authx"));
+    }
+
+    @Test
+    public void malformedParamTest() {
+        WebAPIRouter<String> router = new WebAPIRouter<>();
+        router.add(null, "/users/{uuid}", false, "user");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> router.match("GET", "/users/%zz"));
+    }
+
+    @Test
+    public void paramsTest() {
+        WebAPIRouter<String> router = new WebAPIRouter<>();
+        router.add(null, "/users/{uuid}", false, "user");
+        router.add(null, "/users/{uuid}/skin", false, "skin");
+        router.add(null, "/users/me", false, "me");
+        router.add(null, "/users", true, "users");
+        Assertions.assertEquals("me", match(router, "GET", "/users/me"));
+        WebAPIRouter.Match<String> match = router.match("GET", "/users/a%20b/skin");
+        Assertions.assertEquals("skin", match.route().handler);
+        Assertions.assertEquals("a b", match.params().get("uuid"));
+        Assertions.assertEquals("user", match(router, "GET", "/users/me2"));
+        Assertions.assertEquals("users", match(router, "GET", "/users/1/cape"));
+    }
+
+    @Test
+    public void methodAndRemoveTest() {
+        WebAPIRouter<String> router = new WebAPIRouter<>();
+        WebAPIRouter.Route<String> get = router.add("GET", "/metrics", false, "get");
+        router.add(null, "/metrics", false, "any");
+        Assertions.assertEquals("get", match(router, "GET", "/metrics"));
+        Assertions.assertEquals("any", match(router, "POST", "/metrics"));
+        Assertions.assertTrue(router.remove(get));
+        Assertions.assertFalse(router.remove(get));
+        Assertions.assertEquals("any", match(router, "GET", "/metrics"));
+        // Same method and pattern replaces route
+        router.add(null, "/metrics", false, "replaced");
+        Assertions.assertEquals("replaced", match(router, "GET", "/metrics"));
+    }
+}
@@ -0,0 +1,124 @@
+package pro.gravit.launchserver;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pro.gravit.launcher.events.request.ErrorRequestEvent;
+import pro.gravit.launcher.events.request.UpdateRequestEvent;
+import pro.gravit.launcher.hasher.HashedDir;
+import pro.gravit.launcher.hasher.HashedFile;
+import pro.gravit.launcher.request.WebSocketEvent;
+import pro.gravit.launcher.request.websockets.ClientWebSocketService;
+import pro.gravit.launcher.request.websockets.WebSocketBinaryProtocol;
+import pro.gravit.launcher.serialize.HInput;
+import pro.gravit.launcher.serialize.HOutput;
+import pro.gravit.launchserver.socket.WebSocketService;
+import pro.gravit.utils.ProviderMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class WebSocketBinaryProtocolTest {
+    private static final Gson gson = new Gson();
+    private static final ProviderMap<WebSocketEvent> results = new ProviderMap<>();
+
+    static {
+        results.register("update", UpdateRequestEvent.class);
+        results.register("error", ErrorRequestEvent.class);
+        results.register("custom", CustomEvent.class);
+    }
+
+    private static byte[] write(WebSocketEvent event, boolean requestUUID) throws IOException {
+        ByteArrayOutputStream array = new ByteArrayOutputStream();
+        try (HOutput output = new HOutput(array)) {
+            if (requestUUID) WebSocketBinaryProtocol.events.write(output, gson, event);
+            else WebSocketBinaryProtocol.events.writeBody(output, gson, event);
+        }
+        return array.toByteArray();
+    }
+
+    private static WebSocketEvent read(byte[] bytes) throws IOException {
+        return WebSocketBinaryProtocol.events.read(new HInput(bytes), gson, results);
+    }
+
+    @Test
+    public void binaryBodyTest() throws IOException {
+        HashedDir sub = new HashedDir().patch(Collections.singletonList("file.jar"), new HashedFile(10, new byte[HashedFile.DIGEST_ALGO.bytes]));
+        HashedDir dir = new HashedDir().patch(Collections.singletonList("libraries"), sub);
+        UpdateRequestEvent event = new UpdateRequestEvent(dir, "https://example.com/updates/", true);
+        event.requestUUID = UUID.randomUUID();
+        UpdateRequestEvent result = (UpdateRequestEvent) read(write(event, true));
+        Assertions.assertEquals(event.requestUUID, result.requestUUID);
+        Assertions.assertEquals(event.url, result.url);
+        Assertions.assertTrue(result.zip);
+        HashedDir resultSub = (HashedDir) result.hdir.getEntry("libraries");
+        Assertions.assertEquals(10, resultSub.getEntry("file.jar").size());
+        // Shared payload: requestUUID is appended by sender
+        byte[] body = write(event, false);
+        ByteArrayOutputStream array = new ByteArrayOutputStream();
+        array.write(body);
+        try (HOutput output = new HOutput(array)) {
+            WebSocketBinaryProtocol.writeRequestUUID(output, null);
+        }
+        Assertions.assertNull(((UpdateRequestEvent) read(array.toByteArray())).requestUUID);
+    }
+
+    @Test
+    public void jsonBodyTest() throws IOException {
+        ErrorRequestEvent event = new ErrorRequestEvent("Access denied");
+        event.requestUUID = UUID.randomUUID();
+        byte[] bytes = write(event, true);
+        // Known type is sent by id, not by name
+        Assertions.assertEquals(WebSocketBinaryProtocol.events.getId("error"), bytes[0]);
+        ErrorRequestEvent result = (ErrorRequestEvent) read(bytes);
+        Assertions.assertEquals(event.error, result.error);
+        Assertions.assertEquals(event.requestUUID, result.requestUUID);
+        CustomEvent custom = (CustomEvent) read(write(new CustomEvent("value"), true));
+        Assertions.assertEquals("value", custom.value);
+    }
+
+    @Test
+    public void idTableTest() {
+        // Ids of released launchers: only appending to these lists is allowed
+        List<String> requests = Arrays.asList(
+                "auth", "checkServer", "joinServer", "profiles", "launcher", "updateList", "setProfile", "update",
+                "restoreSession", "batchProfileByUsername", "profileByUsername", "profileByUUID", "getAvailabilityAuth",
+                "exit", "getSecureLevelInfo", "verifySecureLevelKey", "securityReport", "hardwareReport", "serverStatus",
+                "currentUser", "features", "refreshToken", "restore", "additionalData");
+        List<String> events = Arrays.asList(
+                "auth", "checkServer", "joinServer", "launcher", "profileByUsername", "profileByUUID",
+                "batchProfileByUsername", "profiles", "setProfile", "updateList", "error", "update", "getAvailabilityAuth",
+                "notification", "exit", "getSecureLevelInfo", "verifySecureLevelKey", "securityReport", "hardwareReport",
+                "serverStatus", "currentUser", "features", "refreshToken", "restore", "additionalData");
+        Assertions.assertEquals(requests, WebSocketBinaryProtocol.requests.getNames());
+        Assertions.assertEquals(events, WebSocketBinaryProtocol.events.getNames());
+
+        if (WebSocketService.providers.getClass("auth") == null) {
+            WebSocketService.registerResponses();
+        }
+        ClientWebSocketService.registerDefaultResults();
+        for (String type : WebSocketService.providers.getNames()) {
+            Assertions.assertNotEquals(0, WebSocketBinaryProtocol.requests.getId(type), () -> "Request " + type + " has no id");
+        }
+        for (String type : ClientWebSocketService.results.getNames()) {
+            Assertions.assertNotEquals(0, WebSocketBinaryProtocol.events.getId(type), () -> "Event " + type + " has no id");
+        }
+    }
+
+    public static class CustomEvent implements WebSocketEvent {
+        public String value;
+
+        public CustomEvent(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String getType() {
+            return "custom";
+        }
+    }
+}
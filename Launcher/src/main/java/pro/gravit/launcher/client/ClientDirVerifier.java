@@ -0,0 +1,193 @@
+package pro.gravit.launcher.client;
+
+import pro.gravit.launcher.hasher.FileNameMatcher;
+import pro.gravit.launcher.hasher.HashedDir;
+import pro.gravit.launcher.hasher.HashedDirHasher;
+import pro.gravit.launcher.hasher.HashedDirManifest;
+import pro.gravit.launcher.hasher.HashedFileCache;
+import pro.gravit.utils.helper.IOHelper;
+import pro.gravit.utils.helper.LogHelper;
+import pro.gravit.utils.helper.SecurityHelper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Verifies client dirs concurrently before launch
+ * Digests of unchanged files (same size, modification time and file key) are taken from the cache of the last launch,
+ * the resulting HashedDir is compared with the one from LaunchServer exactly as ClientLauncherEntryPoint.verifyHDir does
+ * <p>
+ * Trust model: the cache file is authenticated by HMAC-SHA256 with a random key generated once per install,
+ * a cache edited or copied from another install is ignored and all files are digested.
+ * The key is stored in the launcher dir, so it does not protect from the user of this install: who can read the key
+ * can also restore modification time of a changed file or patch the launcher itself. Verification with the cache
+ * detects damaged and replaced files, not deliberate tampering by the local user. A file replaced with the same size
+ * and restored modification time passes, so the cache is used only for dirs submitted as cached (assets by default),
+ * dirs with code are digested fully on every launch
+ */
+public class ClientDirVerifier implements AutoCloseable {
+    public static final String MAC_ALGORITHM = "HmacSHA256";
+    public static final int KEY_LENGTH = 32;
+    private final Path cacheFile;
+    private final Mac mac;
+    private final Map<String, HashedFileCache> caches = new HashMap<>();
+    private HashedDirManifest manifest;
+    private final ExecutorService executor;
+    private final HashedDirHasher hasher;
+    private final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+    /**
+     * @param cacheFile null - digests are not cached
+     * @param keyFile   key of cache MAC, created if it does not exist
+     */
+    public ClientDirVerifier(Path cacheFile, Path keyFile) {
+        this.mac = cacheFile != null ? initMac(keyFile) : null;
+        this.cacheFile = mac != null ? cacheFile : null;
+        int threads = Math.max(3, Runtime.getRuntime().availableProcessors());
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Client Verifier Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hasher = new HashedDirHasher(executor);
+        if (cacheFile != null) {
+            readCache();
+        }
+    }
+
+    private static Mac initMac(Path keyFile) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(readKey(keyFile), MAC_ALGORITHM));
+            return mac;
+        } catch (IOException | GeneralSecurityException e) {
+            LogHelper.warning("Verify cache is disabled, key %s is not available: %s", keyFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private static byte[] readKey(Path keyFile) throws IOException {
+        if (!IOHelper.isFile(keyFile)) {
+            byte[] key = SecurityHelper.randomBytes(KEY_LENGTH);
+            try {
+                Files.write(keyFile, key, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                return key;
+            } catch (FileAlreadyExistsException ignored) {
+                // Created by concurrent launch
+            }
+        }
+        byte[] key = IOHelper.read(keyFile);
+        if (key.length != KEY_LENGTH)
+            throw new IOException("Invalid key length: " + key.length);
+        return key;
+    }
+
+    private void readCache() {
+        if (!IOHelper.isFile(cacheFile)) {
+            return;
+        }
+        try {
+            // Caches of other dirs are copied to the new file as is, so there is no need to map it
+            manifest = HashedDirManifest.load(cacheFile, mac);
+        } catch (IOException e) {
+            LogHelper.warning("Verify cache %s is corrupted: %s", cacheFile, e.getMessage());
+        }
+    }
+
+    private void writeCache() throws IOException {
+        HashedDirManifest.Writer writer = new HashedDirManifest.Writer();
+        if (manifest != null) {
+            for (String name : manifest.names()) {
+                if (!caches.containsKey(name))
+                    writer.copyFileCache(name, manifest);
+            }
+        }
+        for (Map.Entry<String, HashedFileCache> entry : caches.entrySet()) {
+            writer.putFileCache(entry.getKey(), entry.getValue());
+        }
+        writer.write(cacheFile, mac);
+    }
+
+    private HashedFileCache getCache(Path dir) {
+        String key = dir.toAbsolutePath().normalize().toString();
+        HashedFileCache cache = caches.get(key);
+        if (cache == null && manifest != null) {
+            try {
+                cache = manifest.readFileCache(key);
+            } catch (IOException e) {
+                LogHelper.warning("Verify cache of %s is corrupted: %s", dir, e.getMessage());
+            }
+        }
+        if (cache == null) {
+            cache = new HashedFileCache();
+        }
+        caches.put(key, cache);
+        return cache;
+    }
+
+    /**
+     * Start verification of dir, its result is checked by {@link #verify()}
+     *
+     * @param cached digests of unchanged files are taken from the cache, false - all files are digested
+     */
+    public void submit(Path dir, HashedDir hdir, FileNameMatcher matcher, boolean digest, boolean cached) {
+        HashedFileCache cache = digest && cached ? getCache(dir) : null;
+        tasks.add(CompletableFuture.supplyAsync(() -> {
+            try {
+                return hasher.hash(dir, matcher, true, digest, cache);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor).thenCompose(future -> future).thenAccept(currentHDir ->
+                ClientLauncherEntryPoint.verifyHDir(dir, hdir, currentHDir, matcher)));
+    }
+
+    /**
+     * Wait for all submitted dirs and save cache
+     *
+     * @throws SecurityException if any dir is modified
+     */
+    public void verify() throws IOException {
+        Throwable error = null;
+        for (CompletableFuture<Void> task : tasks) {
+            try {
+                task.join();
+            } catch (CompletionException e) {
+                if (error == null) error = e.getCause();
+                else error.addSuppressed(e.getCause());
+            }
+        }
+        tasks.clear();
+        LogHelper.debug("Verify: %d files digested (%d bytes), %d files taken from cache", hasher.getHashedFiles(), hasher.getHashedBytes(), hasher.getReusedFiles());
+        if (cacheFile != null) {
+            try {
+                writeCache();
+            } catch (IOException e) {
+                LogHelper.warning("Failed to save verify cache %s: %s", cacheFile, e.getMessage());
+            }
+        }
+        if (error instanceof SecurityException) throw (SecurityException) error;
+        if (error instanceof IOException) throw (IOException) error;
+        if (error instanceof RuntimeException) throw (RuntimeException) error;
+        if (error != null) throw new IOException(error);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
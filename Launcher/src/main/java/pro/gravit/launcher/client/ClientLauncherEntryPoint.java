@@ -52,6 +52,10 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class ClientLauncherEntryPoint {
+    public static final String VERIFY_CACHE_FILE = "verifycache.bin";
+    public static final String VERIFY_CACHE_KEY_FILE = "verifycache.key";
+    // Client and java dirs are digested fully on every launch unless this property is true, assets always use cache
+    public static final String VERIFY_CACHE_CLIENT_PROPERTY = "launcher.verifyCacheClient";
     private static ClassLoader classLoader;
 
     private static ClientLauncherProcess.ClientParams readParams(SocketAddress address) throws IOException {
@@ -65,6 +69,12 @@ public class ClientLauncherEntryPoint {
                 boolean isNeedReadJavaDir = input.readBoolean();
                 if (isNeedReadJavaDir)
                     params.javaHDir = new HashedDir(input);
+                // Kept until the client exits
+                Map<String, String> names = new HashMap<>();
+                params.clientHDir.compact(names);
+                params.assetHDir.compact(names);
+                if (params.javaHDir != null)
+                    params.javaHDir.compact(names);
                 return params;
             }
         }
@@ -201,10 +211,14 @@ public class ClientLauncherEntryPoint {
             CommonHelper.newThread("Client Directory Watcher", true, clientWatcher).start();
             if (javaWatcher != null)
                 CommonHelper.newThread("Java Directory Watcher", true, clientWatcher).start();
-            verifyHDir(assetDir, params.assetHDir, assetMatcher, digest);
-            verifyHDir(clientDir, params.clientHDir, clientMatcher, digest);
-            if (javaWatcher != null)
-                verifyHDir(javaDir, params.javaHDir, null, digest);
+            try (ClientDirVerifier verifier = new ClientDirVerifier(DirBridge.dir.resolve(VERIFY_CACHE_FILE), DirBridge.dir.resolve(VERIFY_CACHE_KEY_FILE))) {
+                boolean cacheClient = Boolean.getBoolean(VERIFY_CACHE_CLIENT_PROPERTY);
+                verifier.submit(assetDir, params.assetHDir, assetMatcher, digest, true);
+                verifier.submit(clientDir, params.clientHDir, clientMatcher, digest, cacheClient);
+                if (javaWatcher != null)
+                    verifier.submit(javaDir, params.javaHDir, null, digest, cacheClient);
+                verifier.verify();
+            }
             LauncherEngine.modulesManager.invokeEvent(new ClientProcessLaunchEvent(engine, params));
             launch(profile, params);
         }
@@ -249,6 +263,10 @@ public class ClientLauncherEntryPoint {
 
         // Hash directory and compare (ignore update-only matcher entries, it will break offline-mode)
         HashedDir currentHDir = new HashedDir(dir, matcher, true, digest);
+        verifyHDir(dir, hdir, currentHDir, matcher);
+    }
+
+    public static void verifyHDir(Path dir, HashedDir hdir, HashedDir currentHDir, FileNameMatcher matcher) {
         HashedDir.Diff diff = hdir.diff(currentHDir, matcher);
         if (!diff.isSame()) {
             if (LogHelper.isDebugEnabled()) {
@@ -1,6 +1,7 @@
 package pro.gravit.launcher.request.websockets;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
@@ -8,6 +9,7 @@ import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.EmptyHttpHeaders;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
@@ -40,6 +42,8 @@ public abstract class ClientJSONPoint {
     private static final EventLoopGroup group = new NioEventLoopGroup(threadFactory);
     @LauncherInject("launcher.certificatePinning")
     private static boolean isCertificatePinning;
+    @LauncherInject("launcher.binaryProtocol")
+    private static boolean isBinaryProtocol;
     protected final Bootstrap bootstrap = new Bootstrap();
     private final URI uri;
     public boolean isClosed;
@@ -99,7 +103,7 @@ public abstract class ClientJSONPoint {
         webSocketClientHandler =
                 new WebSocketClientHandler(
                         WebSocketClientHandshakerFactory.newHandshaker(
-                                uri, WebSocketVersion.V13, null, false, EmptyHttpHeaders.INSTANCE, 12800000), this);
+                                uri, WebSocketVersion.V13, getSubprotocol(), false, EmptyHttpHeaders.INSTANCE, 12800000), this);
         ch = bootstrap.connect(uri.getHost(), port).sync().channel();
         webSocketClientHandler.handshakeFuture().sync();
     }
@@ -109,7 +113,7 @@ public abstract class ClientJSONPoint {
         webSocketClientHandler =
                 new WebSocketClientHandler(
                         WebSocketClientHandshakerFactory.newHandshaker(
-                                uri, WebSocketVersion.V13, null, false, EmptyHttpHeaders.INSTANCE, 12800000), this);
+                                uri, WebSocketVersion.V13, getSubprotocol(), false, EmptyHttpHeaders.INSTANCE, 12800000), this);
         ChannelFuture future = bootstrap.connect(uri.getHost(), port);
         future.addListener((l) -> {
             if(l.isSuccess()) {
@@ -127,13 +131,31 @@ public abstract class ClientJSONPoint {
         });
     }
 
+    private static String getSubprotocol() {
+        return isBinaryProtocol ? WebSocketBinaryProtocol.SUBPROTOCOL : null;
+    }
+
+    /**
+     * @return true if server accepted binary protocol during handshake
+     */
+    public boolean isBinaryProtocol() {
+        return webSocketClientHandler != null && webSocketClientHandler.isBinaryProtocol();
+    }
+
     public ChannelFuture send(String text) {
         LogHelper.dev("Send: %s", text);
         return ch.writeAndFlush(new TextWebSocketFrame(text), ch.voidPromise());
     }
 
+    public ChannelFuture sendBinary(ByteBuf binary) {
+        LogHelper.dev("Send binary: %d bytes", binary.readableBytes());
+        return ch.writeAndFlush(new BinaryWebSocketFrame(binary), ch.voidPromise());
+    }
+
     abstract void onMessage(String message);
 
+    abstract void onMessage(ByteBuf message) throws IOException;
+
     abstract void onDisconnect();
 
     abstract void onOpen();
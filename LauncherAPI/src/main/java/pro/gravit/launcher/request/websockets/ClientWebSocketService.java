@@ -2,6 +2,9 @@ package pro.gravit.launcher.request.websockets;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import pro.gravit.launcher.Launcher;
 import pro.gravit.launcher.events.NotificationEvent;
 import pro.gravit.launcher.events.request.*;
@@ -12,7 +15,10 @@ import pro.gravit.launcher.profiles.optional.triggers.OptionalTrigger;
 import pro.gravit.launcher.request.WebSocketEvent;
 import pro.gravit.launcher.request.auth.AuthRequest;
 import pro.gravit.launcher.request.auth.GetAvailabilityAuthRequest;
+import pro.gravit.launcher.serialize.HInput;
+import pro.gravit.launcher.serialize.HOutput;
 import pro.gravit.utils.ProviderMap;
+import pro.gravit.utils.TypeSerializeInterface;
 import pro.gravit.utils.UniversalJsonAdapter;
 import pro.gravit.utils.helper.LogHelper;
 
@@ -61,6 +67,17 @@ public abstract class ClientWebSocketService extends ClientJSONPoint {
         eventHandle(result);
     }
 
+    @Override
+    void onMessage(ByteBuf message) throws IOException {
+        // Malformed event closes connection as in json protocol, pending requests are failed by onDisconnect
+        WebSocketEvent result = WebSocketBinaryProtocol.events.read(new HInput(new ByteBufInputStream(message)), gson, results);
+        if (result == null) {
+            LogHelper.warning("Binary event of unknown type skipped");
+            return;
+        }
+        eventHandle(result);
+    }
+
     public abstract <T extends WebSocketEvent> void eventHandle(T event);
 
     @Override
@@ -80,8 +97,12 @@ public abstract class ClientWebSocketService extends ClientJSONPoint {
 
     }
 
-    @SuppressWarnings("deprecation")
     public void registerResults() {
+        registerDefaultResults();
+    }
+
+    @SuppressWarnings("deprecation")
+    public static synchronized void registerDefaultResults() {
         if(!resultsRegistered) {
             results.register("auth", AuthRequestEvent.class);
             results.register("checkServer", CheckServerRequestEvent.class);
@@ -132,6 +153,10 @@ public abstract class ClientWebSocketService extends ClientJSONPoint {
         if (ch == null || !ch.isActive()) reconnectCallback.onReconnect();
         //if(isClosed() && reconnectCallback != null)
         //    reconnectCallback.onReconnect();
+        if (isBinaryProtocol() && obj instanceof TypeSerializeInterface) {
+            sendBinaryObject((TypeSerializeInterface) obj);
+            return;
+        }
         send(gson.toJson(obj, WebSocketRequest.class));
     }
 
@@ -140,9 +165,24 @@ public abstract class ClientWebSocketService extends ClientJSONPoint {
         if (ch == null || !ch.isActive()) reconnectCallback.onReconnect();
         //if(isClosed() && reconnectCallback != null)
         //    reconnectCallback.onReconnect();
+        if (isBinaryProtocol() && obj instanceof TypeSerializeInterface) {
+            sendBinaryObject((TypeSerializeInterface) obj);
+            return;
+        }
         send(gson.toJson(obj, type));
     }
 
+    private void sendBinaryObject(TypeSerializeInterface obj) throws IOException {
+        ByteBuf buffer = ch.alloc().buffer();
+        try (HOutput output = new HOutput(new ByteBufOutputStream(buffer))) {
+            WebSocketBinaryProtocol.requests.write(output, gson, obj);
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+        sendBinary(buffer);
+    }
+
     @FunctionalInterface
     public interface OnCloseCallback {
         void onClose(int code, String reason, boolean remote);
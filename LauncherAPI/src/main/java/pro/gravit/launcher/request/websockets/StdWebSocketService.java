@@ -104,6 +104,17 @@ public class StdWebSocketService extends ClientWebSocketService implements Reque
         processEventHandlers(webSocketEvent);
     }
 
+    @Override
+    void onDisconnect() {
+        super.onDisconnect();
+        // Responses of pending requests never come after reconnect
+        for (UUID requestUUID : futureMap.keySet()) {
+            @SuppressWarnings("rawtypes")
+            CompletableFuture future = futureMap.remove(requestUUID);
+            if (future != null) future.completeExceptionally(new RequestException("Connection closed"));
+        }
+    }
+
     public <T extends WebSocketEvent> CompletableFuture<T> request(Request<T> request) throws IOException {
         CompletableFuture<T> result = new CompletableFuture<>();
         futureMap.put(request.requestUUID, result);
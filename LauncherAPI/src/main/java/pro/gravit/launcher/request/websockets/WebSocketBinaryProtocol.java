@@ -0,0 +1,170 @@
+package pro.gravit.launcher.request.websockets;
+
+import com.google.gson.Gson;
+import pro.gravit.launcher.events.RequestEvent;
+import pro.gravit.launcher.events.request.UpdateRequestEvent;
+import pro.gravit.launcher.hasher.HashedDir;
+import pro.gravit.launcher.serialize.HInput;
+import pro.gravit.launcher.serialize.HOutput;
+import pro.gravit.utils.ProviderMap;
+import pro.gravit.utils.TypeSerializeInterface;
+import pro.gravit.utils.helper.IOHelper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary encoding of requests and events, selected by websocket subprotocol during handshake
+ * Frame: varInt type id (0 - type name follows), body kind, body
+ * Types with registered codec are written by HOutput, other types as json of their class
+ * Binary body of RequestEvent is followed by requestUUID
+ */
+public final class WebSocketBinaryProtocol {
+    public static final String SUBPROTOCOL = "launcher.binary.v1";
+    public static final int BODY_JSON = 0;
+    public static final int BODY_BINARY = 1;
+    public static final int MAX_TYPE_NAME = 255;
+    // Append only: type id is position in list + 1, launcher and LaunchServer must agree on it
+    // WebSocketBinaryProtocolTest checks that ids of registered types exist and are not changed
+    public static final WebSocketBinaryProtocol requests = new WebSocketBinaryProtocol(Arrays.asList(
+            "auth", "checkServer", "joinServer", "profiles", "launcher", "updateList", "setProfile", "update",
+            "restoreSession", "batchProfileByUsername", "profileByUsername", "profileByUUID", "getAvailabilityAuth",
+            "exit", "getSecureLevelInfo", "verifySecureLevelKey", "securityReport", "hardwareReport", "serverStatus",
+            "currentUser", "features", "refreshToken", "restore", "additionalData"));
+    public static final WebSocketBinaryProtocol events = new WebSocketBinaryProtocol(Arrays.asList(
+            "auth", "checkServer", "joinServer", "launcher", "profileByUsername", "profileByUUID",
+            "batchProfileByUsername", "profiles", "setProfile", "updateList", "error", "update", "getAvailabilityAuth",
+            "notification", "exit", "getSecureLevelInfo", "verifySecureLevelKey", "securityReport", "hardwareReport",
+            "serverStatus", "currentUser", "features", "refreshToken", "restore", "additionalData"));
+
+    static {
+        events.registerCodec("update", new UpdateRequestEventCodec());
+    }
+
+    private final String[] names;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Map<String, Codec<?>> codecs = new ConcurrentHashMap<>();
+
+    private WebSocketBinaryProtocol(List<String> names) {
+        this.names = names.toArray(new String[0]);
+        for (int i = 0; i < this.names.length; ++i) {
+            ids.put(this.names[i], i + 1);
+        }
+    }
+
+    public static void writeRequestUUID(HOutput output, UUID requestUUID) throws IOException {
+        output.writeBoolean(requestUUID != null);
+        if (requestUUID != null) output.writeUUID(requestUUID);
+    }
+
+    public void registerCodec(String type, Codec<?> codec) {
+        codecs.put(type, codec);
+    }
+
+    public boolean hasCodec(String type) {
+        return codecs.containsKey(type);
+    }
+
+    /**
+     * @return type names, type id is index + 1
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * @return numeric id of type, 0 if type is sent by name
+     */
+    public int getId(String type) {
+        Integer id = ids.get(type);
+        return id == null ? 0 : id;
+    }
+
+    public void write(HOutput output, Gson gson, TypeSerializeInterface obj) throws IOException {
+        writeBody(output, gson, obj);
+        if (obj instanceof RequestEvent && hasCodec(obj.getType())) {
+            writeRequestUUID(output, ((RequestEvent) obj).requestUUID);
+        }
+    }
+
+    /**
+     * Write frame without requestUUID of binary RequestEvent, so it can be shared by many requests
+     */
+    @SuppressWarnings("unchecked")
+    public void writeBody(HOutput output, Gson gson, TypeSerializeInterface obj) throws IOException {
+        String type = obj.getType();
+        int id = getId(type);
+        output.writeVarInt(id);
+        if (id == 0) output.writeString(type, MAX_TYPE_NAME);
+        Codec<Object> codec = (Codec<Object>) codecs.get(type);
+        if (codec != null) {
+            output.writeUnsignedByte(BODY_BINARY);
+            codec.write(output, obj);
+        } else {
+            output.writeUnsignedByte(BODY_JSON);
+            output.stream.write(IOHelper.encode(gson.toJson(obj, obj.getClass())));
+        }
+    }
+
+    /**
+     * @param providers classes of json bodies by type name
+     * @return null if type is unknown
+     */
+    public <T> T read(HInput input, Gson gson, ProviderMap<T> providers) throws IOException {
+        int id = input.readVarInt();
+        String type;
+        if (id == 0) type = input.readString(MAX_TYPE_NAME);
+        else if (id <= names.length) type = names[id - 1];
+        else return null;
+        int kind = input.readUnsignedByte();
+        Class<? extends T> clazz = providers.getClass(type);
+        if (clazz == null) return null;
+        switch (kind) {
+            case BODY_JSON:
+                return gson.fromJson(IOHelper.decode(IOHelper.read(input.stream)), clazz);
+            case BODY_BINARY:
+                Codec<?> codec = codecs.get(type);
+                if (codec == null) throw new IOException(String.format("Binary codec of %s not found", type));
+                T result = clazz.cast(codec.read(input));
+                if (result instanceof RequestEvent && input.readBoolean()) {
+                    ((RequestEvent) result).requestUUID = input.readUUID();
+                }
+                return result;
+            default:
+                throw new IOException("Invalid body kind: " + kind);
+        }
+    }
+
+    public interface Codec<T> {
+        void write(HOutput output, T obj) throws IOException;
+
+        T read(HInput input) throws IOException;
+    }
+
+    private static final class UpdateRequestEventCodec implements Codec<UpdateRequestEvent> {
+        @Override
+        public void write(HOutput output, UpdateRequestEvent event) throws IOException {
+            output.writeBoolean(event.hdir != null);
+            if (event.hdir != null) event.hdir.write(output);
+            output.writeBoolean(event.url != null);
+            if (event.url != null) output.writeString(event.url, 0);
+            output.writeBoolean(event.zip);
+            output.writeBoolean(event.fullDownload);
+        }
+
+        @Override
+        public UpdateRequestEvent read(HInput input) throws IOException {
+            HashedDir hdir = input.readBoolean() ? new HashedDir(input) : null;
+            String url = input.readBoolean() ? input.readString(0) : null;
+            UpdateRequestEvent event = new UpdateRequestEvent(hdir, url, input.readBoolean());
+            event.fullDownload = input.readBoolean();
+            return event;
+        }
+    }
+}
@@ -23,6 +23,10 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
         return handshakeFuture;
     }
 
+    public boolean isBinaryProtocol() {
+        return WebSocketBinaryProtocol.SUBPROTOCOL.equals(handshaker.actualSubprotocol());
+    }
+
     @Override
     public void handlerAdded(final ChannelHandlerContext ctx) {
         handshakeFuture = ctx.newPromise();
@@ -74,8 +78,10 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
         } else if (frame instanceof CloseWebSocketFrame)
             ch.close();
         else if (frame instanceof BinaryWebSocketFrame) {
-            // uncomment to print request
-            // logger.info(frame.content().toString());
+            if (LogHelper.isDevEnabled()) {
+                LogHelper.dev("Binary message: %d bytes", frame.content().readableBytes());
+            }
+            clientJSONPoint.onMessage(frame.content());
         }
     }
 
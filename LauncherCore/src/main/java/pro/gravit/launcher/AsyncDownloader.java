@@ -197,17 +197,24 @@ public class AsyncDownloader {
     public static class SizedFile {
         public final String urlPath, filePath;
         public final long size;
+        /**
+         * Expected HashedFile digest, null if file should not be verified
+         */
+        public final byte[] digest;
 
         public SizedFile(String path, long size) {
-            this.urlPath = path;
-            this.filePath = path;
-            this.size = size;
+            this(path, path, size, null);
         }
 
         public SizedFile(String urlPath, String filePath, long size) {
+            this(urlPath, filePath, size, null);
+        }
+
+        public SizedFile(String urlPath, String filePath, long size, byte[] digest) {
             this.urlPath = urlPath;
             this.filePath = filePath;
             this.size = size;
+            this.digest = digest;
         }
     }
 }
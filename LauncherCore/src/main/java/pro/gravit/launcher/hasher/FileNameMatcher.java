@@ -1,52 +1,154 @@
 package pro.gravit.launcher.hasher;
 
+import java.util.Arrays;
 import java.util.Collection;
 
+/**
+ * Matches '/' joined relative path against update, verify and exclusion prefixes
+ * Prefixes are compiled to a character trie, so a path is matched in one pass without allocations
+ */
 public final class FileNameMatcher {
     private static final String[] NO_ENTRIES = new String[0];
+    private static final int UPDATE = 1;
+    private static final int VERIFY = 2;
+    private static final int EXCLUDE = 4;
+    // Matchers for subtrees that can't be distinguished by any rule
+    private static final FileNameMatcher MATCH_NONE = new FileNameMatcher(0);
+    private static final FileNameMatcher MATCH_UPDATE = new FileNameMatcher(UPDATE);
+    private static final FileNameMatcher MATCH_ALL = new FileNameMatcher(UPDATE | VERIFY);
     // Instance
     private final String[] update;
     private final String[] verify;
     private final String[] exclusions;
+    private final Node root = new Node();
 
     public FileNameMatcher(String[] update, String[] verify, String[] exclusions) {
         this.update = update;
         this.verify = verify;
         this.exclusions = exclusions;
+        add(update, UPDATE);
+        add(verify, VERIFY);
+        add(exclusions, EXCLUDE);
     }
 
-    private static boolean anyMatch(String[] entries, Collection<String> path) {
-        //return path.stream().anyMatch(e -> Arrays.stream(entries).anyMatch(p -> p.endsWith(e)));
-        String jpath = String.join("/", path);
+    private FileNameMatcher(int mask) {
+        this.update = null;
+        this.verify = null;
+        this.exclusions = null;
+        root.mask = mask;
+    }
+
+    private static boolean shouldUpdate(int mask) {
+        return (mask & (UPDATE | VERIFY)) != 0 && (mask & EXCLUDE) == 0;
+    }
+
+    private static boolean shouldVerify(int mask) {
+        return (mask & VERIFY) != 0 && (mask & EXCLUDE) == 0;
+    }
+
+    private static FileNameMatcher constant(int mask) {
+        if (shouldVerify(mask)) return MATCH_ALL;
+        return shouldUpdate(mask) ? MATCH_UPDATE : MATCH_NONE;
+    }
+
+    private void add(String[] entries, int flag) {
         for (String e : entries) {
-            /*String[] split = e.split("/");
-            //int index = 0;
-            //for(String p : path)
-            //{
-            //    if(index>=split.length)
-                {
-                    return true;
-                }
-                if(!p.equals(split[index])) {
-                    break;
-                }
-                index++;
-            }*/
-            if (jpath.startsWith(e)) return true;
+            Node node = root;
+            for (int i = 0; i < e.length(); ++i) {
+                node = node.getOrCreate(e.charAt(i));
+            }
+            node.mask |= flag;
         }
-        return false;
     }
 
-    public boolean shouldUpdate(Collection<String> path) {
-        return (anyMatch(update, path) || anyMatch(verify, path)) && !anyMatch(exclusions, path);
+    /**
+     * @return flags of all rules which are prefixes of path
+     */
+    private int match(Collection<String> path) {
+        Node node = root;
+        int mask = node.mask;
+        boolean first = true;
+        for (String element : path) {
+            if (!first) {
+                node = node.get('/');
+                if (node == null) return mask;
+                mask |= node.mask;
+            }
+            first = false;
+            for (int i = 0, length = element.length(); i < length; ++i) {
+                node = node.get(element.charAt(i));
+                if (node == null) return mask;
+                mask |= node.mask;
+            }
+        }
+        return mask;
     }
 
+    public boolean shouldUpdate(Collection<String> path) {
+        return shouldUpdate(match(path));
+    }
 
     public boolean shouldVerify(Collection<String> path) {
-        return anyMatch(verify, path) && !anyMatch(exclusions, path);
+        return shouldVerify(match(path));
+    }
+
+    /**
+     * Matcher for entries inside dir, shared constant matcher if no rule can tell them apart
+     * Tree walkers may switch to it when entering dir, so deep subtrees are not matched path by path
+     */
+    public FileNameMatcher subtree(Collection<String> dirPath) {
+        Node node = root;
+        int mask = node.mask;
+        for (String element : dirPath) {
+            for (int i = 0, length = element.length(); i < length; ++i) {
+                node = node.get(element.charAt(i));
+                if (node == null) return constant(mask);
+                mask |= node.mask;
+            }
+            node = node.get('/');
+            if (node == null) return constant(mask);
+            mask |= node.mask;
+        }
+        return node.isLeaf() ? constant(mask) : this;
     }
 
     public FileNameMatcher verifyOnly() {
+        if (update == null) return constant(root.mask & ~UPDATE);
         return new FileNameMatcher(NO_ENTRIES, verify, exclusions);
     }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_NODES = new Node[0];
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_NODES;
+        private int mask;
+
+        private Node get(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node getOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) return children[index];
+            index = -index - 1;
+            Node node = new Node();
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newKeys[index] = c;
+            newChildren[index] = node;
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+
+        private boolean isLeaf() {
+            return keys.length == 0;
+        }
+    }
 }
@@ -17,7 +17,7 @@ import java.util.Map.Entry;
 
 public final class HashedDir extends HashedEntry {
     @LauncherNetworkAPI
-    private final Map<String, HashedEntry> map = new HashMap<>(32);
+    private Map<String, HashedEntry> map = new HashMap<>(32);
 
     public HashedDir() {
     }
@@ -48,7 +48,11 @@ public final class HashedDir extends HashedEntry {
 
 
     public HashedDir(Path dir, FileNameMatcher matcher, boolean allowSymlinks, boolean digest) throws IOException {
-        IOHelper.walk(dir, new HashFileVisitor(dir, matcher, allowSymlinks, digest), true);
+        IOHelper.walk(dir, new HashFileVisitor(dir, matcher, allowSymlinks, digest, null, null, null), true);
+    }
+
+    HashedDir(Path dir, FileNameMatcher matcher, boolean allowSymlinks, boolean digest, HashedDirHasher hasher, List<HashedDirHasher.PendingFile> pending, HashedFileCache cache) throws IOException {
+        IOHelper.walk(dir, new HashFileVisitor(dir, matcher, allowSymlinks, digest, hasher, pending, cache), true);
     }
 
     public Diff diff(HashedDir other, FileNameMatcher matcher) {
@@ -64,12 +68,64 @@ public final class HashedDir extends HashedEntry {
     }
 
     public void remove(String name) {
-        map.remove(name);
+        mutableMap().remove(name);
+    }
+
+    void putEntry(String name, HashedEntry entry) {
+        mutableMap().put(name, entry);
+    }
+
+    private Map<String, HashedEntry> mutableMap() {
+        if (map instanceof CompactMap)
+            map = new HashMap<>(map);
+        return map;
+    }
+
+    /**
+     * Replace maps of this dir and all subdirs with packed sorted arrays, names are deduplicated through names table
+     * Compacted dir is read in the same way, it's converted back to HashMap on first modification
+     * Already compacted subdirs (e.g. shared by {@link #patch(List, HashedEntry)}) are skipped
+     *
+     * @param names table of names shared by all dirs compacted together
+     * @return this dir
+     */
+    public HashedDir compact(Map<String, String> names) {
+        if (map instanceof CompactMap)
+            return this;
+        for (HashedEntry entry : map.values()) {
+            if (entry instanceof HashedDir)
+                ((HashedDir) entry).compact(names);
+        }
+        map = new CompactMap(map, names);
+        return this;
+    }
+
+    /**
+     * Copy of this dir with entry at path replaced (null entry removes it)
+     * Only dirs on the path are copied, other entries are shared with this dir
+     */
+    public HashedDir patch(List<String> path, HashedEntry entry) {
+        return patch(path, 0, entry);
+    }
+
+    private HashedDir patch(List<String> path, int index, HashedEntry entry) {
+        HashedDir copy = new HashedDir();
+        copy.map.putAll(map);
+        String name = path.get(index);
+        if (index == path.size() - 1) {
+            if (entry == null) copy.map.remove(name);
+            else copy.map.put(name, entry);
+        } else {
+            HashedEntry child = map.get(name);
+            HashedDir childDir = child instanceof HashedDir ? (HashedDir) child : new HashedDir();
+            copy.map.put(name, childDir.patch(path, index + 1, entry));
+        }
+        return copy;
     }
 
     public void moveTo(String elementName, HashedDir target, String targetElementName) {
-        HashedEntry entry = map.remove(elementName);
-        target.map.put(targetElementName, entry);
+        HashedEntry entry = mutableMap().remove(elementName);
+        target.mutableMap().put(targetElementName, entry);
     }
 
     public FindRecursiveResult findRecursive(String path) {
@@ -167,7 +223,7 @@ public final class HashedDir extends HashedEntry {
                     HashedDir dir = (HashedDir) entry;
                     HashedDir otherDir = (HashedDir) otherEntry;
                     if (mismatchList || shouldUpdate) { // Maybe isn't need to go deeper?
-                        HashedDir mismatch = dir.sideDiff(otherDir, matcher, path, mismatchList);
+                        HashedDir mismatch = dir.sideDiff(otherDir, matcher == null ? null : matcher.subtree(path), path, mismatchList);
                         if (!mismatch.isEmpty())
                             diff.map.put(name, mismatch);
                     }
@@ -219,7 +275,7 @@ public final class HashedDir extends HashedEntry {
                     HashedDir dir = (HashedDir) entry;
                     HashedDir otherDir = (HashedDir) otherEntry;
                     if (mismatchList || shouldUpdate) { // Maybe isn't need to go deeper?
-                        HashedDir mismatch = dir.sideCompare(otherDir, matcher, path, mismatchList);
+                        HashedDir mismatch = dir.sideCompare(otherDir, matcher == null ? null : matcher.subtree(path), path, mismatchList);
                         if (!mismatch.isEmpty())
                             diff.map.put(name, mismatch);
                     }
@@ -320,21 +376,108 @@ public final class HashedDir extends HashedEntry {
         }
     }
 
+    /**
+     * Immutable map of sorted names and entries stored in two arrays
+     */
+    private static final class CompactMap extends AbstractMap<String, HashedEntry> {
+        private final String[] names;
+        private final HashedEntry[] entries;
+
+        private CompactMap(Map<String, HashedEntry> map, Map<String, String> table) {
+            names = map.keySet().toArray(new String[0]);
+            Arrays.sort(names);
+            entries = new HashedEntry[names.length];
+            for (int i = 0; i < names.length; ++i) {
+                entries[i] = map.get(names[i]);
+                String name = table.putIfAbsent(names[i], names[i]);
+                if (name != null) names[i] = name;
+            }
+        }
+
+        private int indexOf(Object key) {
+            return key instanceof String ? Arrays.binarySearch(names, key) : -1;
+        }
+
+        @Override
+        public HashedEntry get(Object key) {
+            int index = indexOf(key);
+            return index >= 0 ? entries[index] : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return names.length == 0;
+        }
+
+        @Override
+        public Set<Entry<String, HashedEntry>> entrySet() {
+            return new AbstractSet<Entry<String, HashedEntry>>() {
+                @Override
+                public Iterator<Entry<String, HashedEntry>> iterator() {
+                    return new Iterator<Entry<String, HashedEntry>>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, HashedEntry> next() {
+                            if (index >= names.length)
+                                throw new NoSuchElementException();
+                            Entry<String, HashedEntry> entry = new SimpleImmutableEntry<>(names[index], entries[index]);
+                            index++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return names.length;
+                }
+            };
+        }
+
+        @Override
+        public Collection<HashedEntry> values() {
+            return Collections.unmodifiableList(Arrays.asList(entries));
+        }
+    }
+
     private final class HashFileVisitor extends SimpleFileVisitor<Path> {
         private final Path dir;
-        private final FileNameMatcher matcher;
         private final boolean allowSymlinks;
         private final boolean digest;
+        private final HashedDirHasher hasher;
+        private final List<HashedDirHasher.PendingFile> pending;
+        private final HashedFileCache cache;
         private final Deque<String> path = new LinkedList<>();
         private final Deque<HashedDir> stack = new LinkedList<>();
+        private final Deque<FileNameMatcher> matchers = new LinkedList<>();
         // State
         private HashedDir current = HashedDir.this;
+        private FileNameMatcher matcher;
 
-        private HashFileVisitor(Path dir, FileNameMatcher matcher, boolean allowSymlinks, boolean digest) {
+        private HashFileVisitor(Path dir, FileNameMatcher matcher, boolean allowSymlinks, boolean digest, HashedDirHasher hasher, List<HashedDirHasher.PendingFile> pending, HashedFileCache cache) {
             this.dir = dir;
             this.matcher = matcher;
             this.allowSymlinks = allowSymlinks;
             this.digest = digest;
+            this.hasher = hasher;
+            this.pending = pending;
+            this.cache = cache;
         }
 
         @Override
@@ -347,6 +490,7 @@ public final class HashedDir extends HashedEntry {
             HashedDir parent = stack.removeLast();
             parent.map.put(path.removeLast(), current);
             current = parent;
+            matcher = matchers.removeLast();
 
             // We're done
             return result;
@@ -367,6 +511,9 @@ public final class HashedDir extends HashedEntry {
             stack.add(current);
             current = new HashedDir();
             path.add(IOHelper.getFileName(dir));
+            matchers.add(matcher);
+            if (matcher != null)
+                matcher = matcher.subtree(path);
 
             // We're done
             return result;
@@ -381,7 +528,18 @@ public final class HashedDir extends HashedEntry {
             // Add file (may be unhashed, if exclusion)
             path.add(IOHelper.getFileName(file));
             boolean doDigest = digest && (matcher == null || matcher.shouldUpdate(path));
-            current.map.put(path.removeLast(), new HashedFile(file, attrs.size(), doDigest));
+            String relativePath = doDigest && cache != null ? String.join("/", path) : null;
+            String name = path.removeLast();
+            HashedFile cached = relativePath != null ? cache.lookup(relativePath, attrs) : null;
+            if (cached != null) {
+                current.map.put(name, cached);
+                hasher.reused();
+            } else if (doDigest && hasher != null) {
+                current.map.put(name, null); // Placeholder, replaced by HashedDirHasher when digest is ready, map is not read before that
+                pending.add(hasher.submit(current, name, file, attrs, cache, relativePath));
+            } else {
+                current.map.put(name, new HashedFile(file, attrs.size(), doDigest));
+            }
             return super.visitFile(file, attrs);
         }
     }
@@ -0,0 +1,128 @@
+package pro.gravit.launcher.hasher;
+
+import pro.gravit.utils.helper.IOHelper;
+import pro.gravit.utils.helper.SecurityHelper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds HashedDir with file digests computed concurrently in executor
+ * Directory tree is walked in the caller thread, result is identical to new HashedDir(dir, matcher, allowSymlinks, digest)
+ * With HashedFileCache only new and modified files are digested
+ */
+public final class HashedDirHasher {
+    private static final int DIRECT_BUFFER_SIZE = Math.max(IOHelper.BUFFER_SIZE, 64 * 1024);
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE));
+    private final Executor executor;
+    private final LongAdder totalFiles = new LongAdder();
+    private final LongAdder totalBytes = new LongAdder();
+    private final LongAdder hashedFiles = new LongAdder();
+    private final LongAdder hashedBytes = new LongAdder();
+    private final LongAdder reusedFiles = new LongAdder();
+
+    public HashedDirHasher(Executor executor) {
+        this.executor = executor;
+    }
+
+    public static byte[] digest(Path file) throws IOException {
+        MessageDigest digest = SecurityHelper.newDigest(HashedFile.DIGEST_ALGO);
+        ByteBuffer buffer = BUFFER.get();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ((Buffer) buffer).clear();
+            while (channel.read(buffer) >= 0) {
+                ((Buffer) buffer).flip();
+                digest.update(buffer);
+                ((Buffer) buffer).clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    public CompletableFuture<HashedDir> hash(Path dir, FileNameMatcher matcher, boolean allowSymlinks, boolean digest) throws IOException {
+        return hash(dir, matcher, allowSymlinks, digest, null);
+    }
+
+    public CompletableFuture<HashedDir> hash(Path dir, FileNameMatcher matcher, boolean allowSymlinks, boolean digest, HashedFileCache cache) throws IOException {
+        List<PendingFile> pending = new ArrayList<>();
+        if (cache != null) cache.beginSync();
+        HashedDir hdir = new HashedDir(dir, matcher, allowSymlinks, digest, this, pending, cache);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[pending.size()];
+        for (int i = 0; i < futures.length; ++i) {
+            futures[i] = pending.get(i).future;
+        }
+        return CompletableFuture.allOf(futures).thenApply((v) -> {
+            for (PendingFile file : pending) {
+                file.dir.putEntry(file.name, file.future.join());
+            }
+            if (cache != null) cache.endSync();
+            return hdir;
+        });
+    }
+
+    PendingFile submit(HashedDir dir, String name, Path file, BasicFileAttributes attrs, HashedFileCache cache, String path) {
+        long size = attrs.size();
+        totalFiles.increment();
+        totalBytes.add(size);
+        CompletableFuture<HashedFile> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                HashedFile hashedFile = new HashedFile(size, digest(file));
+                hashedFiles.increment();
+                hashedBytes.add(size);
+                if (cache != null) cache.update(path, attrs, hashedFile);
+                return hashedFile;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+        return new PendingFile(dir, name, future);
+    }
+
+    void reused() {
+        reusedFiles.increment();
+    }
+
+    public long getReusedFiles() {
+        return reusedFiles.sum();
+    }
+
+    public long getTotalFiles() {
+        return totalFiles.sum();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.sum();
+    }
+
+    public long getHashedFiles() {
+        return hashedFiles.sum();
+    }
+
+    public long getHashedBytes() {
+        return hashedBytes.sum();
+    }
+
+    static final class PendingFile {
+        private final HashedDir dir;
+        private final String name;
+        private final CompletableFuture<HashedFile> future;
+
+        private PendingFile(HashedDir dir, String name, CompletableFuture<HashedFile> future) {
+            this.dir = dir;
+            this.name = name;
+            this.future = future;
+        }
+    }
+}
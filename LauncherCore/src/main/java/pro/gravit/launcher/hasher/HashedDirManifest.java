@@ -0,0 +1,299 @@
+package pro.gravit.launcher.hasher;
+
+import pro.gravit.launcher.serialize.HInput;
+import pro.gravit.launcher.serialize.HOutput;
+import pro.gravit.utils.helper.IOHelper;
+
+import javax.crypto.Mac;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary file of named HashedDirs and HashedFileCaches
+ * Directory table at the beginning holds offset and length of every entry, the file is memory-mapped
+ * and entries are deserialized only on request, so unused dirs never get to heap
+ * <p>
+ * Format: magic, version, entries count, table of (name, dir offset, dir length, cache offset, cache length), data
+ * Offsets are relative to the end of the table, length -1 means no entry
+ * Manifest written with MAC is followed by MAC of all its bytes
+ */
+public final class HashedDirManifest {
+    public static final int MAGIC = 0x48444d46;
+    public static final int VERSION = 1;
+    private final ByteBuffer data;
+    private final Map<String, Entry> entries;
+
+    private HashedDirManifest(ByteBuffer data, Map<String, Entry> entries) {
+        this.data = data;
+        this.entries = entries;
+    }
+
+    /**
+     * Map manifest file to memory
+     * Mapped file can't be replaced on Windows until the mapping is garbage collected, use {@link #load(Path)} there
+     */
+    public static HashedDirManifest open(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Manifest is too large: " + size);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return read(buffer);
+    }
+
+    /**
+     * Read manifest file to heap, entries are still deserialized on request
+     */
+    public static HashedDirManifest load(Path file) throws IOException {
+        return read(ByteBuffer.wrap(IOHelper.read(file)));
+    }
+
+    /**
+     * Read manifest file written by {@link Writer#write(Path, Mac)} and check its MAC
+     *
+     * @throws IOException if MAC does not match, the file was not written with the same key
+     */
+    public static HashedDirManifest load(Path file, Mac mac) throws IOException {
+        byte[] bytes = IOHelper.read(file);
+        int length = bytes.length - mac.getMacLength();
+        if (length < 0)
+            throw new IOException("Manifest is too short");
+        mac.update(bytes, 0, length);
+        byte[] expected = new byte[mac.getMacLength()];
+        System.arraycopy(bytes, length, expected, 0, expected.length);
+        if (!MessageDigest.isEqual(mac.doFinal(), expected))
+            throw new IOException("Manifest MAC mismatch");
+        return read(ByteBuffer.wrap(bytes, 0, length));
+    }
+
+    private static HashedDirManifest read(ByteBuffer buffer) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        HInput input = new HInput(new BufferInputStream(buffer));
+        if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            throw new IOException("Unsupported manifest format");
+        int count = input.readLength(0);
+        for (int i = 0; i < count; ++i) {
+            String name = input.readString(0);
+            entries.put(name, new Entry(input.readLong(), input.readInt(), input.readLong(), input.readInt()));
+        }
+        ByteBuffer data = buffer.slice();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (!entry.isValid(entry.dirOffset, entry.dirLength, data.capacity()) || !entry.isValid(entry.cacheOffset, entry.cacheLength, data.capacity()))
+                throw new IOException(String.format("Manifest entry '%s' is out of file bounds", e.getKey()));
+        }
+        return new HashedDirManifest(data, entries);
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public boolean hasDir(String name) {
+        Entry entry = entries.get(name);
+        return entry != null && entry.dirLength >= 0;
+    }
+
+    public boolean hasFileCache(String name) {
+        Entry entry = entries.get(name);
+        return entry != null && entry.cacheLength >= 0;
+    }
+
+    /**
+     * @return deserialized dir or null if there is no such dir
+     */
+    public HashedDir readDir(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null || entry.dirLength < 0)
+            return null;
+        return new HashedDir(new HInput(new BufferInputStream(slice(entry.dirOffset, entry.dirLength))));
+    }
+
+    /**
+     * @return deserialized cache or null if there is no cache for this name
+     */
+    public HashedFileCache readFileCache(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null || entry.cacheLength < 0)
+            return null;
+        return new HashedFileCache(new HInput(new BufferInputStream(slice(entry.cacheOffset, entry.cacheLength))));
+    }
+
+    private ByteBuffer slice(long offset, int length) {
+        ByteBuffer buffer = data.duplicate();
+        ((Buffer) buffer).position((int) offset);
+        ((Buffer) buffer).limit((int) offset + length);
+        return buffer.slice();
+    }
+
+    private static final class Entry {
+        private final long dirOffset;
+        private final int dirLength;
+        private final long cacheOffset;
+        private final int cacheLength;
+
+        private Entry(long dirOffset, int dirLength, long cacheOffset, int cacheLength) {
+            this.dirOffset = dirOffset;
+            this.dirLength = dirLength;
+            this.cacheOffset = cacheOffset;
+            this.cacheLength = cacheLength;
+        }
+
+        private boolean isValid(long offset, int length, int capacity) {
+            return length < 0 || offset >= 0 && offset + length <= capacity;
+        }
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Collects entries and writes them to a new manifest file
+     * Entries of another manifest are copied as raw bytes without deserialization
+     */
+    public static final class Writer {
+        private final Map<String, ByteBuffer[]> entries = new LinkedHashMap<>();
+
+        private ByteBuffer[] get(String name) {
+            ByteBuffer[] entry = entries.get(name);
+            if (entry == null) {
+                entry = new ByteBuffer[2];
+                entries.put(name, entry);
+            }
+            return entry;
+        }
+
+        private static ByteBuffer serialize(HashedDir dir) throws IOException {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (HOutput hOutput = new HOutput(output)) {
+                dir.write(hOutput);
+            }
+            return ByteBuffer.wrap(output.toByteArray());
+        }
+
+        private static ByteBuffer serialize(HashedFileCache cache) throws IOException {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (HOutput hOutput = new HOutput(output)) {
+                cache.write(hOutput);
+            }
+            return ByteBuffer.wrap(output.toByteArray());
+        }
+
+        public Writer putDir(String name, HashedDir dir) throws IOException {
+            get(name)[0] = serialize(dir);
+            return this;
+        }
+
+        public Writer putFileCache(String name, HashedFileCache cache) throws IOException {
+            get(name)[1] = serialize(cache);
+            return this;
+        }
+
+        public Writer copyDir(String name, HashedDirManifest from) {
+            Entry entry = from.entries.get(name);
+            if (entry != null && entry.dirLength >= 0)
+                get(name)[0] = from.slice(entry.dirOffset, entry.dirLength);
+            return this;
+        }
+
+        public Writer copyFileCache(String name, HashedDirManifest from) {
+            Entry entry = from.entries.get(name);
+            if (entry != null && entry.cacheLength >= 0)
+                get(name)[1] = from.slice(entry.cacheOffset, entry.cacheLength);
+            return this;
+        }
+
+        /**
+         * Write manifest to temporary file and move it to file, so readers never see partially written manifest
+         */
+        public void write(Path file) throws IOException {
+            write(file, null);
+        }
+
+        /**
+         * Write manifest followed by MAC of its bytes, such file must be read by {@link #load(Path, Mac)}
+         *
+         * @param mac null - no MAC is written
+         */
+        public void write(Path file, Mac mac) throws IOException {
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            try (HOutput output = new HOutput(table)) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLength(entries.size(), 0);
+                long offset = 0;
+                for (Map.Entry<String, ByteBuffer[]> e : entries.entrySet()) {
+                    output.writeString(e.getKey(), 0);
+                    for (ByteBuffer buffer : e.getValue()) {
+                        output.writeLong(buffer == null ? 0 : offset);
+                        output.writeInt(buffer == null ? -1 : buffer.remaining());
+                        if (buffer != null) offset += buffer.remaining();
+                    }
+                }
+            }
+            Path tempFile = Files.createTempFile(file.toAbsolutePath().getParent(), IOHelper.getFileName(file), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    writeFully(channel, mac, ByteBuffer.wrap(table.toByteArray()));
+                    for (ByteBuffer[] entry : entries.values()) {
+                        for (ByteBuffer buffer : entry) {
+                            if (buffer != null) writeFully(channel, mac, buffer.duplicate());
+                        }
+                    }
+                    if (mac != null) writeFully(channel, null, ByteBuffer.wrap(mac.doFinal()));
+                }
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+
+        private static void writeFully(FileChannel channel, Mac mac, ByteBuffer buffer) throws IOException {
+            if (mac != null) mac.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -60,6 +60,10 @@ public final class HashedFile extends HashedEntry {
     }
 
 
+    public byte[] getDigest() {
+        return digest == null ? null : digest.clone();
+    }
+
     public boolean isSameDigest(byte[] digest) {
         return this.digest == null || digest == null || Arrays.equals(this.digest, digest);
     }
@@ -0,0 +1,106 @@
+package pro.gravit.launcher.hasher;
+
+import pro.gravit.launcher.serialize.HInput;
+import pro.gravit.launcher.serialize.HOutput;
+
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Digests of a directory keyed by relative path ('/' separated)
+ * Cached digest is reused while file size, modification time and file key (inode) are unchanged
+ */
+public final class HashedFileCache {
+    // Files modified so close to sync start may change again without visible mtime change
+    private static final long RACY_WINDOW_MILLIS = 2000;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> visited = ConcurrentHashMap.newKeySet();
+    private volatile long syncStartTime;
+
+    public HashedFileCache() {
+    }
+
+    public HashedFileCache(HInput input) throws IOException {
+        int size = input.readLength(0);
+        for (int i = 0; i < size; ++i) {
+            String path = input.readString(0);
+            long lastModified = input.readLong();
+            String fileKey = input.readBoolean() ? input.readString(0) : null;
+            HashedFile file = new HashedFile(input);
+            entries.put(path, new Entry(file.size, lastModified, fileKey, file));
+        }
+    }
+
+    private static String fileKey(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key == null ? null : key.toString();
+    }
+
+    public void write(HOutput output) throws IOException {
+        output.writeLength(entries.size(), 0);
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            output.writeString(e.getKey(), 0);
+            output.writeLong(entry.lastModified);
+            output.writeBoolean(entry.fileKey != null);
+            if (entry.fileKey != null)
+                output.writeString(entry.fileKey, 0);
+            entry.file.write(output);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    void beginSync() {
+        visited.clear();
+        syncStartTime = System.currentTimeMillis();
+    }
+
+    void endSync() {
+        entries.keySet().retainAll(visited);
+        visited.clear();
+    }
+
+    HashedFile lookup(String path, BasicFileAttributes attrs) {
+        visited.add(path);
+        Entry entry = entries.get(path);
+        if (entry == null || entry.size != attrs.size() || entry.lastModified != attrs.lastModifiedTime().toMillis())
+            return null;
+        String fileKey = fileKey(attrs);
+        if (entry.fileKey == null ? fileKey != null : !entry.fileKey.equals(fileKey))
+            return null;
+        return entry.file;
+    }
+
+    void update(String path, BasicFileAttributes attrs, HashedFile file) {
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        if (lastModified >= syncStartTime - RACY_WINDOW_MILLIS) {
+            entries.remove(path); // Digest again on next sync
+            return;
+        }
+        entries.put(path, new Entry(attrs.size(), lastModified, fileKey(attrs), file));
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+        private final HashedFile file;
+
+        private Entry(long size, long lastModified, String fileKey, HashedFile file) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.file = file;
+        }
+    }
+}
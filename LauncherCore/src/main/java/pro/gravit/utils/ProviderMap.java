@@ -2,8 +2,10 @@ package pro.gravit.utils;
 
 import pro.gravit.utils.helper.VerifyHelper;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -45,6 +47,10 @@ public class ProviderMap<R> {
         return null;
     }
 
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(PROVIDERS.keySet());
+    }
+
     public Class<? extends R> unregister(String name) {
         return PROVIDERS.remove(name);
     }
@@ -2,34 +2,50 @@ package pro.gravit.utils;
 
 import pro.gravit.launcher.AsyncDownloader;
 import pro.gravit.launcher.LauncherInject;
+import pro.gravit.launcher.hasher.HashedDirHasher;
 import pro.gravit.utils.helper.IOHelper;
 import pro.gravit.utils.helper.LogHelper;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
+import java.time.Duration;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class Downloader {
     @LauncherInject("launcher.certificatePinning")
     private static boolean isCertificatePinning;
     @LauncherInject("launcher.noHttp2")
     private static boolean isNoHttp2;
+    // Attempts of one range (resumed from the last written byte) and of one file after failed verification
+    public static final int MAX_ATTEMPTS = Integer.parseInt(System.getProperty("launcher.downloader.attempts", "5"));
+    public static final long RETRY_DELAY_MILLIS = Long.parseLong(System.getProperty("launcher.downloader.retryDelay", "500"));
+    public static final long MAX_RETRY_DELAY_MILLIS = 30 * 1000;
+    // Files bigger than CHUNK_THRESHOLD are downloaded by CHUNK_SIZE ranges, CHUNK_PARALLELISM at once
+    public static final long CHUNK_THRESHOLD = Long.parseLong(System.getProperty("launcher.downloader.chunkThreshold", String.valueOf(64 * 1024 * 1024)));
+    public static final long CHUNK_SIZE = Long.parseLong(System.getProperty("launcher.downloader.chunkSize", String.valueOf(16 * 1024 * 1024)));
+    public static final int CHUNK_PARALLELISM = Integer.parseInt(System.getProperty("launcher.downloader.chunkParallelism", "4"));
+    // Response headers and every next part of body must be received within TIMEOUT_MILLIS
+    public static final long TIMEOUT_MILLIS = Long.parseLong(System.getProperty("launcher.downloader.timeout", "30000"));
     protected final HttpClient client;
     protected final ExecutorService executor;
     protected final LinkedList<DownloadTask> tasks = new LinkedList<>();
     protected CompletableFuture<Void> future;
+    protected volatile boolean isCanceled;
     protected Downloader(HttpClient client, ExecutorService executor) {
         this.client = client;
         this.executor = executor;
@@ -71,6 +87,7 @@ public class Downloader {
     }
 
     public void cancel() {
+        isCanceled = true;
         for (DownloadTask task : tasks) {
             if (!task.isCompleted()) {
                 task.cancel();
@@ -88,34 +105,46 @@ public class Downloader {
         return future;
     }
 
+    /**
+     * Download files, threads files at once
+     * Failed ranges are retried with exponential backoff and resumed from the last written byte,
+     * files with digest are verified right after download and downloaded again on mismatch.
+     * Failure of one file doesn't stop others, the future completes exceptionally after all files are processed
+     */
     public CompletableFuture<Void> downloadFiles(List<AsyncDownloader.SizedFile> files, String baseURL, Path targetDir, DownloadCallback callback, ExecutorService executor, int threads) throws Exception {
         // URI scheme
         URI baseUri = new URI(baseURL);
         Collections.shuffle(files);
         Queue<AsyncDownloader.SizedFile> queue = new ConcurrentLinkedDeque<>(files);
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
         CompletableFuture<Void> future = new CompletableFuture<>();
         AtomicInteger currentThreads = new AtomicInteger(threads);
         ConsumerObject consumerObject = new ConsumerObject();
-        Consumer<HttpResponse<Path>> next = e -> {
-            if (callback != null && e != null) {
-                callback.onComplete(e.body());
+        Consumer<Path> next = path -> {
+            if (callback != null && path != null) {
+                callback.onComplete(path);
             }
-            AsyncDownloader.SizedFile file = queue.poll();
+            AsyncDownloader.SizedFile file = isCanceled ? null : queue.poll();
             if (file == null) {
-                if (currentThreads.decrementAndGet() == 0)
-                    future.complete(null);
+                if (currentThreads.decrementAndGet() == 0) {
+                    Throwable error = isCanceled ? new CancellationException("Download canceled") : errors.poll();
+                    if (error == null) {
+                        future.complete(null);
+                    } else {
+                        errors.forEach(error::addSuppressed);
+                        future.completeExceptionally(error);
+                    }
+                }
                 return;
             }
-            try {
-                DownloadTask task = sendAsync(file, baseUri, targetDir, callback);
-                task.completableFuture.thenAccept(consumerObject.next).exceptionally(ec -> {
-                    future.completeExceptionally(ec);
-                    return null;
-                });
-            } catch (Exception exception) {
-                LogHelper.error(exception);
-                future.completeExceptionally(exception);
-            }
+            downloadFile(file, baseUri, targetDir, callback).whenComplete((result, error) -> {
+                if (error != null) {
+                    Throwable cause = unwrap(error);
+                    LogHelper.error("Download %s failed: %s", file.urlPath, cause);
+                    errors.add(cause);
+                }
+                consumerObject.next.accept(result);
+            });
         };
         consumerObject.next = next;
         for (int i = 0; i < threads; ++i) {
@@ -124,6 +153,190 @@ public class Downloader {
         return future;
     }
 
+    protected CompletableFuture<Path> downloadFile(AsyncDownloader.SizedFile file, URI baseUri, Path targetDir, DownloadCallback callback) {
+        Path path = targetDir.resolve(file.filePath);
+        try {
+            IOHelper.createParentDirs(path);
+            return downloadFile(file, makeURI(baseUri, file.urlPath), path, new Progress(callback), 0);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<Path> downloadFile(AsyncDownloader.SizedFile file, URI uri, Path path, Progress progress, int attempt) {
+        CompletableFuture<Void> download;
+        try {
+            // Partial file is resumed only if it will be verified or was written by previous attempt
+            long existing = IOHelper.exists(path) ? Files.size(path) : 0;
+            long offset = (file.digest != null || attempt > 0) && existing < file.size ? existing : 0;
+            if (file.digest != null && existing == file.size && Arrays.equals(file.digest, HashedDirHasher.digest(path))) {
+                progress.add(existing); // Completed by previous run
+                return CompletableFuture.completedFuture(path);
+            }
+            if (file.size >= CHUNK_THRESHOLD && CHUNK_SIZE > 0) {
+                download = exceptionallyCompose(downloadChunked(uri, path, file.size, offset, progress), e -> {
+                    if (unwrap(e) instanceof RangeNotSupportedException) {
+                        LogHelper.debug("Server doesn't support ranges, download %s in one stream", uri);
+                        return downloadStream(uri, path, 0, progress);
+                    }
+                    return CompletableFuture.failedFuture(e);
+                });
+            } else {
+                download = downloadStream(uri, path, offset, progress);
+            }
+        } catch (IOException e) {
+            download = CompletableFuture.failedFuture(e);
+        }
+        return exceptionallyCompose(download.thenApply(v -> {
+            verify(file, path);
+            return path;
+        }), e -> {
+            Throwable cause = unwrap(e);
+            if (!(cause instanceof VerifyException) || isCanceled || attempt + 1 >= MAX_ATTEMPTS) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            LogHelper.warning("%s, download again", cause.getMessage());
+            progress.rewind();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+            return downloadFile(file, uri, path, progress, attempt + 1);
+        });
+    }
+
+    // CompletableFuture.exceptionallyCompose is available since Java 12 only
+    private static <T> CompletableFuture<T> exceptionallyCompose(CompletableFuture<T> future, Function<Throwable, CompletableFuture<T>> fallback) {
+        return future.handle((result, e) -> e == null ? CompletableFuture.completedFuture(result) : fallback.apply(e))
+                .thenCompose(Function.identity());
+    }
+
+    private static void verify(AsyncDownloader.SizedFile file, Path path) {
+        try {
+            long size = Files.size(path);
+            if (file.size > 0 && size != file.size) {
+                throw new VerifyException(String.format("File %s size mismatch: %d, expected %d", path, size, file.size));
+            }
+            if (file.digest != null && !Arrays.equals(file.digest, HashedDirHasher.digest(path))) {
+                throw new VerifyException(String.format("File %s digest mismatch", path));
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private CompletableFuture<Void> downloadStream(URI uri, Path path, long offset, Progress progress) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        progress.add(offset);
+        return downloadRange(uri, channel, offset, -1, false, progress, 0).thenAccept(end -> {
+            try {
+                channel.truncate(end);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }).whenComplete((v, e) -> IOHelper.close(channel));
+    }
+
+    /**
+     * Download bytes [offset, size) by chunks. On failure file is truncated to the completed prefix,
+     * so the next attempt resumes from its size
+     */
+    private CompletableFuture<Void> downloadChunked(URI uri, Path path, long size, long offset, Progress progress) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(offset);
+        progress.add(offset);
+        List<Long> starts = new ArrayList<>();
+        for (long start = offset; start < size; start = chunkEnd(start, size)) {
+            starts.add(start);
+        }
+        Queue<Long> chunks = new ConcurrentLinkedQueue<>(starts);
+        Set<Long> completed = ConcurrentHashMap.newKeySet();
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.max(1, Math.min(CHUNK_PARALLELISM, chunks.size()))];
+        for (int i = 0; i < workers.length; ++i) {
+            workers[i] = downloadChunks(uri, channel, size, chunks, completed, progress);
+        }
+        return CompletableFuture.allOf(workers).whenComplete((v, e) -> {
+            if (e != null) {
+                chunks.clear();
+                progress.rewind();
+                long prefix = offset;
+                for (Long start : starts) {
+                    if (!completed.contains(start)) break;
+                    prefix = chunkEnd(start, size);
+                }
+                try {
+                    channel.truncate(prefix);
+                } catch (IOException ex) {
+                    LogHelper.debug("Truncate %s failed: %s", path, ex);
+                }
+            }
+            IOHelper.close(channel);
+        });
+    }
+
+    private static long chunkEnd(long start, long size) {
+        return Math.min((start / CHUNK_SIZE + 1) * CHUNK_SIZE, size);
+    }
+
+    private CompletableFuture<Void> downloadChunks(URI uri, FileChannel channel, long size, Queue<Long> chunks, Set<Long> completed, Progress progress) {
+        Long start = chunks.poll();
+        if (start == null || isCanceled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return downloadRange(uri, channel, start, chunkEnd(start, size), true, progress, 0)
+                .thenCompose(v -> {
+                    completed.add(start);
+                    return downloadChunks(uri, channel, size, chunks, completed, progress);
+                });
+    }
+
+    /**
+     * Download bytes [start, end) to channel at the same position, end -1 means up to end of file
+     * Server may answer 200 instead of 206 if requireRange is false, body is written from position 0 then
+     *
+     * @return position after the last written byte
+     */
+    private CompletableFuture<Long> downloadRange(URI uri, FileChannel channel, long start, long end, boolean requireRange, Progress progress, int attempt) {
+        if (isCanceled) {
+            return CompletableFuture.failedFuture(new CancellationException("Download canceled"));
+        }
+        HttpRequest request = makeHttpRequest(uri, start, end);
+        ChannelBodyHandler handler = new ChannelBodyHandler(uri, channel, start, requireRange, progress);
+        return exceptionallyCompose(client.sendAsync(request, handler).thenApply(response -> {
+            int code = response.statusCode();
+            if (code != 200 && code != 206) {
+                throw new CompletionException(new StatusCodeException(uri, code));
+            }
+            return response.body();
+        }), e -> {
+            Throwable cause = unwrap(e);
+            long position = handler.position();
+            if (isCanceled || cause instanceof RangeNotSupportedException || attempt + 1 >= MAX_ATTEMPTS
+                    || (cause instanceof StatusCodeException && !((StatusCodeException) cause).isRetryable())) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            long delay = Math.min(RETRY_DELAY_MILLIS << attempt, MAX_RETRY_DELAY_MILLIS);
+            delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+            LogHelper.debug("Download %s failed at %d: %s, retry in %d ms", uri, position, cause, delay);
+            Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor);
+            return CompletableFuture.supplyAsync(() -> null, delayed)
+                    .thenCompose(v -> downloadRange(uri, channel, position, end, requireRange, progress, attempt + 1));
+        });
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
     protected DownloadTask sendAsync(AsyncDownloader.SizedFile file, URI baseUri, Path targetDir, DownloadCallback callback) throws Exception {
         IOHelper.createParentDirs(targetDir.resolve(file.filePath));
         ProgressTrackingBodyHandler<Path> bodyHandler = makeBodyHandler(targetDir.resolve(file.filePath), callback);
@@ -139,20 +352,36 @@ public class Downloader {
         return ref.task;
     }
 
-    protected HttpRequest makeHttpRequest(URI baseUri, String filePath) throws URISyntaxException {
+    protected URI makeURI(URI baseUri, String filePath) throws URISyntaxException {
         String scheme = baseUri.getScheme();
         String host = baseUri.getHost();
         int port = baseUri.getPort();
         if (port != -1)
             host = host + ":" + port;
         String path = baseUri.getPath();
+        return new URI(scheme, host, path + filePath, "", "");
+    }
+
+    protected HttpRequest makeHttpRequest(URI baseUri, String filePath) throws URISyntaxException {
         return HttpRequest.newBuilder()
                 .GET()
-                .uri(new URI(scheme, host, path + filePath, "", ""))
+                .uri(makeURI(baseUri, filePath))
                 .header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/45.0.2454.85 Safari/537.36")
                 .build();
     }
 
+    protected HttpRequest makeHttpRequest(URI uri, long start, long end) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .GET()
+                .uri(uri)
+                .timeout(Duration.ofMillis(TIMEOUT_MILLIS))
+                .header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/45.0.2454.85 Safari/537.36");
+        if (start > 0 || end >= 0) {
+            builder.header("Range", "bytes=" + start + "-" + (end >= 0 ? String.valueOf(end - 1) : ""));
+        }
+        return builder.build();
+    }
+
     protected ProgressTrackingBodyHandler<Path> makeBodyHandler(Path file, DownloadCallback callback) {
         return new ProgressTrackingBodyHandler<>(HttpResponse.BodyHandlers.ofFile(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE), callback);
     }
@@ -164,7 +393,193 @@ public class Downloader {
     }
 
     private static class ConsumerObject {
-        Consumer<HttpResponse<Path>> next = null;
+        Consumer<Path> next = null;
+    }
+
+    private static class VerifyException extends RuntimeException {
+        public VerifyException(String message) {
+            super(message);
+        }
+    }
+
+    private static class RangeNotSupportedException extends IOException {
+        public RangeNotSupportedException(URI uri) {
+            super(String.format("Server doesn't support ranges: %s", uri));
+        }
+    }
+
+    private static class StatusCodeException extends IOException {
+        private final int code;
+
+        public StatusCodeException(URI uri, int code) {
+            super(String.format("HTTP status %d: %s", code, uri));
+            this.code = code;
+        }
+
+        public boolean isRetryable() {
+            return code >= 500 || code == 408 || code == 429;
+        }
+    }
+
+    /**
+     * Reports downloaded bytes of one file, bytes are taken back when file is downloaded again
+     */
+    private static class Progress {
+        private final DownloadCallback callback;
+        private final AtomicLong reported = new AtomicLong();
+
+        private Progress(DownloadCallback callback) {
+            this.callback = callback;
+        }
+
+        void add(long bytes) {
+            if (bytes == 0) return;
+            reported.addAndGet(bytes);
+            if (callback != null) callback.apply(bytes);
+        }
+
+        void rewind() {
+            add(-reported.get());
+        }
+    }
+
+    /**
+     * Writes 206 (or 200 if allowed) response body to channel at position, other responses are not read
+     */
+    private class ChannelBodyHandler implements HttpResponse.BodyHandler<Long> {
+        private final URI uri;
+        private final FileChannel channel;
+        private final long start;
+        private final boolean requireRange;
+        private final Progress progress;
+        private final AtomicLong position = new AtomicLong();
+
+        private ChannelBodyHandler(URI uri, FileChannel channel, long start, boolean requireRange, Progress progress) {
+            this.uri = uri;
+            this.channel = channel;
+            this.start = start;
+            this.requireRange = requireRange;
+            this.progress = progress;
+            this.position.set(start);
+        }
+
+        long position() {
+            return position.get();
+        }
+
+        @Override
+        public HttpResponse.BodySubscriber<Long> apply(HttpResponse.ResponseInfo responseInfo) {
+            int code = responseInfo.statusCode();
+            if (code == 206) {
+                String contentRange = responseInfo.headers().firstValue("Content-Range").orElse("");
+                if (!contentRange.startsWith("bytes " + start + "-")) {
+                    return new ChannelSubscriber(new IOException("Unexpected Content-Range: " + contentRange));
+                }
+                return new ChannelSubscriber();
+            }
+            if (code == 200) {
+                if (requireRange) {
+                    return new ChannelSubscriber(new RangeNotSupportedException(uri));
+                }
+                // Full body, rewrite file from the beginning
+                progress.add(-start);
+                position.set(0);
+                return new ChannelSubscriber();
+            }
+            return new ChannelSubscriber(null); // Status is checked by caller
+        }
+
+        private class ChannelSubscriber implements HttpResponse.BodySubscriber<Long> {
+            private final CompletableFuture<Long> body = new CompletableFuture<>();
+            private final boolean discard;
+            private final Throwable error;
+            private Flow.Subscription subscription;
+            private volatile long lastReadTime = System.currentTimeMillis();
+
+            private ChannelSubscriber() {
+                this.discard = false;
+                this.error = null;
+            }
+
+            private ChannelSubscriber(Throwable error) {
+                this.discard = true;
+                this.error = error;
+            }
+
+            @Override
+            public CompletionStage<Long> getBody() {
+                return body;
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                if (discard) {
+                    subscription.cancel();
+                    if (error != null) body.completeExceptionally(error);
+                    else body.complete(-1L);
+                    return;
+                }
+                scheduleReadTimeout();
+                subscription.request(1);
+            }
+
+            // HttpClient timeout doesn't cover body, stalled connection is dropped here
+            private void scheduleReadTimeout() {
+                long delay = lastReadTime + TIMEOUT_MILLIS - System.currentTimeMillis();
+                try {
+                    CompletableFuture.delayedExecutor(Math.max(delay, 0), TimeUnit.MILLISECONDS, executor).execute(() -> {
+                        if (body.isDone()) return;
+                        if (System.currentTimeMillis() - lastReadTime >= TIMEOUT_MILLIS) {
+                            subscription.cancel();
+                            body.completeExceptionally(new HttpTimeoutException("Read timed out"));
+                        } else {
+                            scheduleReadTimeout();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    subscription.cancel();
+                    body.completeExceptionally(new CancellationException("Download canceled"));
+                }
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> buffers) {
+                lastReadTime = System.currentTimeMillis();
+                if (body.isDone()) return;
+                if (isCanceled) {
+                    subscription.cancel();
+                    body.completeExceptionally(new CancellationException("Download canceled"));
+                    return;
+                }
+                try {
+                    for (ByteBuffer buffer : buffers) {
+                        int length = buffer.remaining();
+                        long pos = position.get();
+                        while (buffer.hasRemaining()) {
+                            pos += channel.write(buffer, pos);
+                        }
+                        position.set(pos);
+                        progress.add(length);
+                    }
+                } catch (IOException e) {
+                    subscription.cancel();
+                    body.completeExceptionally(e);
+                    return;
+                }
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                body.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                body.complete(position.get());
+            }
+        }
     }
 
     public static class DownloadTask {
@@ -0,0 +1,64 @@
+package pro.gravit.launcher;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pro.gravit.launcher.hasher.FileNameMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+public class FileNameMatcherTest {
+    private static final String[] ELEMENTS = {"mods", "modsx", "config", "libraries", "natives", "a", "ab", "b"};
+
+    private static boolean anyMatch(String[] entries, Collection<String> path) {
+        String jpath = String.join("/", path);
+        for (String e : entries) {
+            if (jpath.startsWith(e)) return true;
+        }
+        return false;
+    }
+
+    private static List<String> randomPath(Random random) {
+        List<String> path = new ArrayList<>();
+        int length = 1 + random.nextInt(4);
+        for (int i = 0; i < length; ++i) {
+            path.add(ELEMENTS[random.nextInt(ELEMENTS.length)]);
+        }
+        return path;
+    }
+
+    private static String[] randomRules(Random random) {
+        String[] rules = new String[random.nextInt(4)];
+        for (int i = 0; i < rules.length; ++i) {
+            String rule = String.join("/", randomPath(random));
+            rules[i] = rule.substring(0, random.nextInt(rule.length() + 1));
+        }
+        return rules;
+    }
+
+    @Test
+    public void matchTest() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; ++i) {
+            String[] update = randomRules(random);
+            String[] verify = randomRules(random);
+            String[] exclusions = randomRules(random);
+            FileNameMatcher matcher = new FileNameMatcher(update, verify, exclusions);
+            for (int j = 0; j < 50; ++j) {
+                List<String> path = randomPath(random);
+                boolean shouldUpdate = (anyMatch(update, path) || anyMatch(verify, path)) && !anyMatch(exclusions, path);
+                boolean shouldVerify = anyMatch(verify, path) && !anyMatch(exclusions, path);
+                Assertions.assertEquals(shouldUpdate, matcher.shouldUpdate(path), path::toString);
+                Assertions.assertEquals(shouldVerify, matcher.shouldVerify(path), path::toString);
+                // Matcher of any parent dir gives the same answer
+                for (int k = 0; k < path.size(); ++k) {
+                    FileNameMatcher subtree = matcher.subtree(path.subList(0, k));
+                    Assertions.assertEquals(shouldUpdate, subtree.shouldUpdate(path), path::toString);
+                    Assertions.assertEquals(shouldVerify, subtree.shouldVerify(path), path::toString);
+                }
+            }
+        }
+    }
+}
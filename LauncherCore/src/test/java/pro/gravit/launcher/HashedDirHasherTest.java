@@ -0,0 +1,162 @@
+package pro.gravit.launcher;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pro.gravit.launcher.hasher.HashedDir;
+import pro.gravit.launcher.hasher.HashedDirHasher;
+import pro.gravit.launcher.hasher.HashedDirManifest;
+import pro.gravit.launcher.hasher.HashedFileCache;
+import pro.gravit.launcher.serialize.HOutput;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class HashedDirHasherTest {
+    @TempDir
+    public Path dir;
+
+    private static byte[] serialize(HashedDir hdir) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (HOutput hOutput = new HOutput(output)) {
+            hdir.write(hOutput);
+        }
+        return output.toByteArray();
+    }
+
+    @Test
+    public void parallelHashTest() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 8; ++i) {
+            Path subDir = Files.createDirectories(dir.resolve("dir" + i).resolve("sub"));
+            for (int j = 0; j < 16; ++j) {
+                byte[] data = new byte[random.nextInt(256 * 1024)];
+                random.nextBytes(data);
+                Files.write(subDir.resolve("file" + j), data);
+            }
+        }
+        HashedDir expected = new HashedDir(dir, null, true, true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            HashedDirHasher hasher = new HashedDirHasher(executor);
+            HashedDir actual = hasher.hash(dir, null, true, true).get();
+            Assertions.assertArrayEquals(serialize(expected), serialize(actual));
+            Assertions.assertEquals(8 * 16, hasher.getHashedFiles());
+            Assertions.assertEquals(expected.size(), hasher.getHashedBytes());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void incrementalHashTest() throws Exception {
+        FileTime oldTime = FileTime.fromMillis(System.currentTimeMillis() - 60 * 1000);
+        for (int i = 0; i < 8; ++i) {
+            Path file = dir.resolve("file" + i);
+            Files.write(file, new byte[]{(byte) i});
+            Files.setLastModifiedTime(file, oldTime);
+        }
+        HashedFileCache cache = new HashedFileCache();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            HashedDirHasher hasher = new HashedDirHasher(executor);
+            hasher.hash(dir, null, true, true, cache).get();
+            Assertions.assertEquals(8, hasher.getHashedFiles());
+            Assertions.assertEquals(8, cache.size());
+
+            Files.write(dir.resolve("file0"), new byte[]{1, 2});
+            Files.setLastModifiedTime(dir.resolve("file0"), oldTime);
+            Files.delete(dir.resolve("file1"));
+            hasher = new HashedDirHasher(executor);
+            HashedDir actual = hasher.hash(dir, null, true, true, cache).get();
+            Assertions.assertEquals(1, hasher.getHashedFiles());
+            Assertions.assertEquals(6, hasher.getReusedFiles());
+            Assertions.assertEquals(7, cache.size());
+            Assertions.assertArrayEquals(serialize(new HashedDir(dir, null, true, true)), serialize(actual));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void compactTest() throws Exception {
+        Random random = new Random(2);
+        for (int i = 0; i < 4; ++i) {
+            Path subDir = Files.createDirectories(dir.resolve("dir" + i));
+            for (int j = 0; j < 8; ++j) {
+                byte[] data = new byte[random.nextInt(1024)];
+                random.nextBytes(data);
+                Files.write(subDir.resolve("file" + j), data);
+            }
+        }
+        HashedDir expected = new HashedDir(dir, null, true, true);
+        HashedDir actual = new HashedDir(dir, null, true, true).compact(new HashMap<>());
+        Assertions.assertTrue(expected.diff(actual, null).isSame());
+        Assertions.assertTrue(actual.diff(expected, null).isSame());
+        Assertions.assertEquals(expected.size(), actual.size());
+        Assertions.assertSame(actual.getEntry("dir1"), actual.resolve(Arrays.asList("dir1")));
+        Assertions.assertNotNull(actual.resolve(Arrays.asList("dir2", "file3")));
+        Assertions.assertNull(actual.resolve(Arrays.asList("dir2", "missing")));
+
+        // Modification of compacted dir
+        actual.remove("dir0");
+        Assertions.assertNull(actual.getEntry("dir0"));
+        Assertions.assertEquals(3, actual.map().size());
+    }
+
+    @Test
+    public void manifestTest() throws Exception {
+        Path content = Files.createDirectories(dir.resolve("content"));
+        for (int i = 0; i < 8; ++i) {
+            Files.write(content.resolve("file" + i), new byte[]{(byte) i});
+        }
+        HashedDir hdir = new HashedDir(content, null, true, true);
+        HashedFileCache cache = new HashedFileCache();
+        Path file = dir.resolve("manifest.bin");
+        new HashedDirManifest.Writer().putDir("a", hdir).putFileCache("a", cache).putDir("b", new HashedDir()).write(file);
+
+        HashedDirManifest manifest = HashedDirManifest.open(file);
+        Assertions.assertEquals(2, manifest.names().size());
+        Assertions.assertArrayEquals(serialize(hdir), serialize(manifest.readDir("a")));
+        Assertions.assertTrue(manifest.readDir("b").isEmpty());
+        Assertions.assertNotNull(manifest.readFileCache("a"));
+        Assertions.assertNull(manifest.readFileCache("b"));
+        Assertions.assertNull(manifest.readDir("c"));
+
+        // Raw copy of entries without deserialization
+        new HashedDirManifest.Writer().copyDir("a", manifest).copyFileCache("a", manifest).write(file);
+        manifest = HashedDirManifest.load(file);
+        Assertions.assertEquals(1, manifest.names().size());
+        Assertions.assertArrayEquals(serialize(hdir), serialize(manifest.readDir("a")));
+        Assertions.assertTrue(manifest.hasFileCache("a"));
+    }
+
+    @Test
+    public void manifestMacTest() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(new byte[32], "HmacSHA256"));
+        Path file = dir.resolve("manifest.bin");
+        new HashedDirManifest.Writer().putFileCache("a", new HashedFileCache()).write(file, mac);
+        Assertions.assertTrue(HashedDirManifest.load(file, mac).hasFileCache("a"));
+
+        // Modified file and file written with other key are rejected
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        Assertions.assertThrows(IOException.class, () -> HashedDirManifest.load(file, mac));
+        Mac otherMac = Mac.getInstance("HmacSHA256");
+        otherMac.init(new SecretKeySpec(new byte[]{1}, "HmacSHA256"));
+        new HashedDirManifest.Writer().putFileCache("a", new HashedFileCache()).write(file, otherMac);
+        Assertions.assertThrows(IOException.class, () -> HashedDirManifest.load(file, mac));
+    }
+}